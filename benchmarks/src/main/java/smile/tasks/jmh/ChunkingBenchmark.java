@@ -0,0 +1,107 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import smile.tasks.ChunkingTaskQueue;
+import smile.tasks.ResultHandler;
+import smile.tasks.SimpleTaskQueue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of a {@link smile.tasks.SimpleTaskQueue} with a {@link smile.tasks.ChunkingTaskQueue}
+ * for tiny tasks, which take about a microsecond or less.
+ *
+ * @author Andre Kullmann
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ChunkingBenchmark implements ResultHandler<Long> {
+
+    private static final int BATCH = 10000;
+
+    @Param( { "simple", "chunking" } )
+    public String queue;
+
+    @Param( { "empty", "cpu" } )
+    public String work;
+
+    @Param( { "1", "2", "4" } )
+    public int threads;
+
+    private SimpleTaskQueue<Long> simple;
+
+    private ChunkingTaskQueue<Long> chunking;
+
+    private Callable<Long> task;
+
+    private long sum = 0;
+
+    @Setup( Level.Trial )
+    public void setup() {
+        if( "simple".equals( queue ) ) {
+            simple = new SimpleTaskQueue<Long>( "jmh", 1024, threads, this );
+        } else if( "chunking".equals( queue ) ) {
+            chunking = new ChunkingTaskQueue<Long>( "jmh", threads * 4, threads, this );
+        } else {
+            throw new IllegalArgumentException( "unknown queue: " + queue );
+        }
+        task = Work.of( work );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        if( simple != null ) {
+            simple.cancel();
+        }
+        if( chunking != null ) {
+            chunking.cancel();
+        }
+    }
+
+    @Override
+    public void onResult( Long result ) {
+        sum += result;
+    }
+
+    @Override
+    public void onException( Exception e ) {
+        throw new IllegalStateException( e );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( BATCH )
+    public long batch() {
+        if( simple != null ) {
+            for( int i=0; i<BATCH; i++ ) {
+                simple.submit( task );
+            }
+            simple.await();
+            // await closes a simple queue
+            simple.open();
+        } else {
+            for( int i=0; i<BATCH; i++ ) {
+                chunking.submit( task );
+            }
+            chunking.await();
+        }
+        return sum;
+    }
+}
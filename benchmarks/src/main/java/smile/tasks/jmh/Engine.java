@@ -0,0 +1,215 @@
+package smile.tasks.jmh;
+
+import smile.tasks.AbstractTaskQueue;
+import smile.tasks.DistributedTaskQueue;
+import smile.tasks.ResultHandler;
+import smile.tasks.SimpleTaskQueue;
+import smile.threads.DaemonThreadFactory;
+import smile.threads.WaitStrategy;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The queue engine under test, the owner thread submits the tasks and handles the results. All engines bound the
+ * tasks in flight by the capacity, so they are comparable.
+ *
+ * @author Andre Kullmann
+ */
+abstract class Engine {
+
+    /**
+     * Sum of all handled results, read by the benchmarks so the results can't be eliminated.
+     */
+    protected long sum = 0;
+
+    /**
+     * @param name simple, recycling ( a simple queue which reuses its futures ), distributed or executor
+     * @param capacity the max count of tasks in flight
+     * @param threads the count of worker threads
+     * @return the engine
+     */
+    static Engine create( String name, int capacity, int threads ) {
+
+        if( "simple".equals( name ) || "recycling".equals( name ) || "distributed".equals( name ) ) {
+            return new TaskQueueEngine( name, capacity, threads );
+        }
+        if( "executor".equals( name ) ) {
+            return new ExecutorEngine( capacity, threads );
+        }
+
+        throw new IllegalArgumentException( "unknown engine: " + name );
+    }
+
+    /**
+     * Submits the task, waits for a free slot if capacity tasks are in flight.
+     */
+    abstract void submit( Callable<Long> task );
+
+    /**
+     * Submits the task count times, one submit after the other if the engine has no bulk submit.
+     */
+    void submitAll( Callable<Long> task, int count ) {
+        for( int i=0; i<count; i++ ) {
+            submit( task );
+        }
+    }
+
+    /**
+     * Waits until all submitted tasks are handled.
+     */
+    abstract void await();
+
+    /**
+     * Stops the worker threads.
+     */
+    abstract void close();
+
+    /**
+     * @return {@link #sum}
+     */
+    long getSum() {
+        return sum;
+    }
+
+    /**
+     * {@link smile.tasks.SimpleTaskQueue}, with or without recycling, or {@link smile.tasks.DistributedTaskQueue}.
+     */
+    private static class TaskQueueEngine extends Engine implements ResultHandler<Long> {
+
+        private final AbstractTaskQueue<Long> queue;
+
+        TaskQueueEngine( String name, int capacity, int threads ) {
+            this.queue = "distributed".equals( name )
+                    ? new DistributedTaskQueue<Long>( "jmh", capacity, threads, this )
+                    : new SimpleTaskQueue<Long>( "jmh", capacity, threads, WaitStrategy.PARK, "recycling".equals( name ), this );
+        }
+
+        @Override
+        public void onResult( Long result ) {
+            sum += result;
+        }
+
+        @Override
+        public void onException( Exception e ) {
+            throw new IllegalStateException( e );
+        }
+
+        @Override
+        void submit( Callable<Long> task ) {
+            queue.submit( task );
+        }
+
+        @Override
+        void submitAll( Callable<Long> task, int count ) {
+            queue.submitAll( new Repeat( task, count ) );
+        }
+
+        @Override
+        void await() {
+            queue.await();
+            if( queue instanceof SimpleTaskQueue ) {
+                // await closes a simple queue
+                ( (SimpleTaskQueue<Long>) queue ).open();
+            }
+        }
+
+        @Override
+        void close() {
+            queue.cancel();
+        }
+    }
+
+    /**
+     * Returns the same task count times, without a collection.
+     */
+    private static class Repeat implements Iterator<Callable<Long>> {
+
+        private final Callable<Long> task;
+
+        private int remaining;
+
+        Repeat( Callable<Long> task, int count ) {
+            this.task      = task;
+            this.remaining = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Callable<Long> next() {
+            if( remaining <= 0 ) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return task;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The baseline, a fixed thread pool with a {@link java.util.concurrent.CompletionService}.
+     */
+    private static class ExecutorEngine extends Engine {
+
+        private final int capacity;
+
+        private final ExecutorService pool;
+
+        private final CompletionService<Long> completions;
+
+        private int inFlight = 0;
+
+        ExecutorEngine( int capacity, int threads ) {
+            this.capacity    = capacity;
+            this.pool        = Executors.newFixedThreadPool( threads, new DaemonThreadFactory( "jmh Worker" ) );
+            this.completions = new ExecutorCompletionService<Long>( pool );
+        }
+
+        private void handleOne() {
+            try {
+                sum += completions.take().get();
+                inFlight--;
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( e );
+            } catch( ExecutionException e ) {
+                throw new IllegalStateException( e.getCause() );
+            }
+        }
+
+        @Override
+        void submit( Callable<Long> task ) {
+            if( inFlight == capacity ) {
+                handleOne();
+            }
+            completions.submit( task );
+            inFlight++;
+        }
+
+        @Override
+        void await() {
+            while( inFlight > 0 ) {
+                handleOne();
+            }
+        }
+
+        @Override
+        void close() {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import smile.tasks.ResultHandler;
+import smile.tasks.SimpleTaskQueue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link smile.tasks.AbstractTaskQueue#enableMetrics()} per task, the difference of the average time per task
+ * with and without metrics. Empty tasks stress the owner thread, which records the metrics.
+ *
+ * @author Andre Kullmann
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class MetricsBenchmark implements ResultHandler<Long> {
+
+    private static final int BATCH = 10000;
+
+    @Param( { "false", "true" } )
+    public boolean metrics;
+
+    @Param( { "empty", "cpu" } )
+    public String work;
+
+    @Param( { "1", "4" } )
+    public int threads;
+
+    @Param( { "16", "1024" } )
+    public int capacity;
+
+    private SimpleTaskQueue<Long> queue;
+
+    private Callable<Long> task;
+
+    private long sum = 0;
+
+    @Setup( Level.Trial )
+    public void setup() {
+        queue = new SimpleTaskQueue<Long>( "jmh", capacity, threads, this );
+        if( metrics ) {
+            queue.enableMetrics();
+        }
+        task = Work.of( work );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        queue.cancel();
+    }
+
+    @Override
+    public void onResult( Long result ) {
+        sum += result;
+    }
+
+    @Override
+    public void onException( Exception e ) {
+        throw new IllegalStateException( e );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( BATCH )
+    public long batch() {
+        for( int i=0; i<BATCH; i++ ) {
+            queue.submit( task );
+        }
+        queue.await();
+        // await closes a simple queue
+        queue.open();
+        return sum;
+    }
+}
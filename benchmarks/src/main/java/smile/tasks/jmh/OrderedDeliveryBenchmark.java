@@ -0,0 +1,126 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import smile.tasks.ResultHandler;
+import smile.tasks.SimpleTaskQueue;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares the throughput of {@link smile.tasks.SimpleTaskQueue} in ordered and unordered mode
+ * ( see {@link smile.tasks.AbstractTaskQueue#setOrdered(boolean)} ) with skewed task durations: most tasks are
+ * short, slowPercent of them are a hundred times longer and block the head of the reorder buffer.
+ *
+ * @author Andre Kullmann
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class OrderedDeliveryBenchmark implements ResultHandler<Integer> {
+
+    private static final int BATCH = 2000;
+
+    private static final long SHORT_NANOS = TimeUnit.MICROSECONDS.toNanos( 50 );
+
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos( 5 );
+
+    @Param( { "false", "true" } )
+    public boolean ordered;
+
+    @Param( { "0", "1", "5" } )
+    public int slowPercent;
+
+    @Param( { "16" } )
+    public int threads;
+
+    @Param( { "256" } )
+    public int capacity;
+
+    private SimpleTaskQueue<Integer> queue;
+
+    private Task[] tasks;
+
+    private int next;
+
+    private static class Task implements Callable<Integer> {
+
+        private final int n;
+
+        private final long nanos;
+
+        private Task( int n, long nanos ) {
+            this.n     = n;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            LockSupport.parkNanos( nanos );
+            return n;
+        }
+    }
+
+    @Setup( Level.Trial )
+    public void setup() {
+
+        queue = new SimpleTaskQueue<Integer>( "jmh", capacity, threads, this );
+        queue.setOrdered( ordered );
+
+        Random random = new Random( 42 );
+
+        tasks = new Task[BATCH];
+        for( int i=0; i<BATCH; i++ ) {
+            tasks[i] = new Task( i, random.nextInt( 100 ) < slowPercent ? SLOW_NANOS : SHORT_NANOS );
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        queue.cancel();
+    }
+
+    @Override
+    public void onResult( Integer result ) {
+        if( ordered && result != next ) {
+            throw new IllegalStateException( "expected " + next + " but got " + result );
+        }
+        next = result + 1;
+    }
+
+    @Override
+    public void onException( Exception e ) {
+        throw new IllegalStateException( e );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( BATCH )
+    public int batch() {
+        next = 0;
+        for( Task task : tasks ) {
+            queue.submit( task );
+        }
+        queue.await();
+        // await closes a simple queue
+        queue.open();
+        return next;
+    }
+}
@@ -0,0 +1,149 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import smile.tasks.Function;
+import smile.tasks.ResultHandler;
+import smile.tasks.SimpleTaskQueue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link smile.tasks.AbstractTaskQueue#parallelMap(Object[], Object[], Function)} with a submit per
+ * element, where each result is written to an output array at the index of its element. The score is the average
+ * time per element.
+ *
+ * @author Andre Kullmann
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ParallelMapBenchmark {
+
+    private static final int ELEMENTS = 100000;
+
+    @Param( { "submit", "parallelMap" } )
+    public String mode;
+
+    @Param( { "1", "2", "4" } )
+    public int threads;
+
+    private final Integer[] input = new Integer[ELEMENTS];
+
+    private final Integer[] output = new Integer[ELEMENTS];
+
+    private SimpleTaskQueue<IndexedResult> submitQueue;
+
+    private SimpleTaskQueue<Integer> mapQueue;
+
+    private static int work( int value ) {
+        int x = value;
+        for( int i=0; i<300; i++ ) {
+            x += i * i ^ x;
+        }
+        return x;
+    }
+
+    private static final Function<Integer, Integer> WORK = new Function<Integer, Integer>() {
+        @Override
+        public Integer apply( Integer value ) throws Exception {
+            return work( value );
+        }
+    };
+
+    private static class IndexedResult {
+
+        private final int index;
+
+        private final Integer value;
+
+        private IndexedResult( int index, Integer value ) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    @Setup( Level.Trial )
+    public void setup() {
+
+        for( int i=0; i<ELEMENTS; i++ ) {
+            input[i] = i;
+        }
+
+        if( "submit".equals( mode ) ) {
+            submitQueue = new SimpleTaskQueue<IndexedResult>( "jmh", 1024, threads, new ResultHandler<IndexedResult>() {
+
+                @Override
+                public void onResult( IndexedResult result ) {
+                    output[result.index] = result.value;
+                }
+
+                @Override
+                public void onException( Exception e ) {
+                    throw new IllegalStateException( e );
+                }
+            } );
+        } else if( "parallelMap".equals( mode ) ) {
+            mapQueue = new SimpleTaskQueue<Integer>( "jmh", 1024, threads, null );
+        } else {
+            throw new IllegalArgumentException( "unknown mode: " + mode );
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+
+        for( int i=0; i<ELEMENTS; i++ ) {
+            if( output[i] != work( input[i] ) )
+                throw new IllegalStateException( "wrong result at index " + i );
+        }
+
+        if( submitQueue != null ) {
+            submitQueue.cancel();
+        }
+        if( mapQueue != null ) {
+            mapQueue.cancel();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( ELEMENTS )
+    public Integer[] map() {
+
+        if( mapQueue != null ) {
+            return mapQueue.parallelMap( input, output, WORK );
+        }
+
+        for( int i=0; i<ELEMENTS; i++ ) {
+            final int index = i;
+            submitQueue.submit( new Callable<IndexedResult>() {
+                @Override
+                public IndexedResult call() throws Exception {
+                    return new IndexedResult( index, work( input[index] ) );
+                }
+            } );
+        }
+
+        submitQueue.await();
+        // await closes a simple queue
+        submitQueue.open();
+
+        return output;
+    }
+}
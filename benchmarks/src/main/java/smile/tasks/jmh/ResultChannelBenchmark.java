@@ -0,0 +1,164 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import smile.threads.MpscRingBuffer;
+import smile.threads.WaitStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the result channel of {@link smile.tasks.SimpleTaskQueue}, {@link smile.threads.MpscRingBuffer} with each
+ * {@link smile.threads.WaitStrategy}, against the former {@link java.util.concurrent.LinkedBlockingQueue}, bounded by
+ * the same capacity. Producer threads ( the workers ) put elements all the time, the benchmark thread ( the owner
+ * thread ) takes them, so the score is elements per second. The linked channel ignores the wait strategy.
+ *
+ * @author Andre Kullmann
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ResultChannelBenchmark {
+
+    @Param( { "ring", "linked" } )
+    public String channel;
+
+    @Param( { "SPIN", "YIELD", "PARK" } )
+    public WaitStrategy waitStrategy;
+
+    @Param( { "1", "4" } )
+    public int producers;
+
+    @Param( { "1024" } )
+    public int capacity;
+
+    private Channel queue;
+
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    private volatile boolean stopped = false;
+
+    private interface Channel {
+
+        void put( Object element ) throws InterruptedException;
+
+        Object take() throws InterruptedException;
+
+        Object poll();
+    }
+
+    private static Channel linkedBlockingQueue( int capacity ) {
+
+        final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>( capacity );
+
+        return new Channel() {
+
+            @Override
+            public void put( Object element ) throws InterruptedException {
+                queue.put( element );
+            }
+
+            @Override
+            public Object take() throws InterruptedException {
+                return queue.take();
+            }
+
+            @Override
+            public Object poll() {
+                return queue.poll();
+            }
+        };
+    }
+
+    private static Channel ringBuffer( int capacity, WaitStrategy waitStrategy ) {
+
+        final MpscRingBuffer<Object> buffer = new MpscRingBuffer<Object>( capacity, waitStrategy );
+
+        return new Channel() {
+
+            @Override
+            public void put( Object element ) {
+                buffer.put( element );
+            }
+
+            @Override
+            public Object take() throws InterruptedException {
+                return buffer.take();
+            }
+
+            @Override
+            public Object poll() {
+                return buffer.poll();
+            }
+        };
+    }
+
+    @Setup( Level.Trial )
+    public void setup() {
+
+        if( "ring".equals( channel ) ) {
+            queue = ringBuffer( capacity, waitStrategy );
+        } else if( "linked".equals( channel ) ) {
+            queue = linkedBlockingQueue( capacity );
+        } else {
+            throw new IllegalArgumentException( "unknown channel: " + channel );
+        }
+
+        final Object element = new Object();
+
+        for( int p=0; p<producers; p++ ) {
+            Thread thread = new Thread( new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        while( !stopped ) {
+                            queue.put( element );
+                        }
+                    } catch( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "jmh Producer " + p );
+            thread.setDaemon( true );
+            thread.start();
+            threads.add( thread );
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws InterruptedException {
+
+        stopped = true;
+
+        // a producer may wait for a free slot
+        for( Thread thread : threads ) {
+            while( thread.isAlive() ) {
+                queue.poll();
+                thread.join( 1 );
+            }
+        }
+    }
+
+    @Benchmark
+    public Object take() throws InterruptedException {
+        return queue.take();
+    }
+}
@@ -0,0 +1,81 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link smile.tasks.AbstractTaskQueue#submit(java.util.concurrent.Callable)} in a loop with
+ * {@link smile.tasks.AbstractTaskQueue#submitAll(java.util.Iterator)}, tasks per second. Tiny tasks show the overhead
+ * per task on the owner thread.
+ *
+ * @author Andre Kullmann
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SubmitAllBenchmark {
+
+    private static final int BATCH = 10000;
+
+    @Param( { "simple", "distributed" } )
+    public String engine;
+
+    @Param( { "false", "true" } )
+    public boolean bulk;
+
+    @Param( { "empty", "cpu" } )
+    public String work;
+
+    @Param( { "1", "4" } )
+    public int threads;
+
+    @Param( { "1024" } )
+    public int capacity;
+
+    private Engine queue;
+
+    private Callable<Long> task;
+
+    @Setup( Level.Trial )
+    public void setup() {
+        queue = Engine.create( engine, capacity, threads );
+        task  = Work.of( work );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        queue.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( BATCH )
+    public long batch() {
+        if( bulk ) {
+            queue.submitAll( task, BATCH );
+        } else {
+            for( int i=0; i<BATCH; i++ ) {
+                queue.submit( task );
+            }
+        }
+        queue.await();
+        return queue.getSum();
+    }
+}
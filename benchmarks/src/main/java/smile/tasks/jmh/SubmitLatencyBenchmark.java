@@ -0,0 +1,67 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single submit on the owner thread in the steady state. If capacity tasks are in flight the submit
+ * includes the wait for a free slot and the handling of the finished results, like in a real producer loop, so the
+ * high percentiles show the back pressure.
+ *
+ * @author Andre Kullmann
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.SampleTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SubmitLatencyBenchmark {
+
+    @Param( { "simple", "recycling", "distributed", "executor" } )
+    public String engine;
+
+    @Param( { "empty", "cpu", "blocking" } )
+    public String work;
+
+    @Param( { "1", "2", "4" } )
+    public int threads;
+
+    @Param( { "16", "1024" } )
+    public int capacity;
+
+    private Engine queue;
+
+    private Callable<Long> task;
+
+    @Setup( Level.Trial )
+    public void setup() {
+        queue = Engine.create( engine, capacity, threads );
+        task  = Work.of( work );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        queue.await();
+        queue.close();
+    }
+
+    @Benchmark
+    public void submit() {
+        queue.submit( task );
+    }
+}
@@ -0,0 +1,73 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end throughput, tasks per second: a batch of tasks is submitted and all results are handled. With the gc
+ * profiler ( -prof gc ) gc.alloc.rate.norm is the allocation per task.
+ *
+ * @author Andre Kullmann
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ThroughputBenchmark {
+
+    private static final int BATCH = 10000;
+
+    @Param( { "simple", "recycling", "distributed", "executor" } )
+    public String engine;
+
+    @Param( { "empty", "cpu", "blocking" } )
+    public String work;
+
+    @Param( { "1", "2", "4" } )
+    public int threads;
+
+    @Param( { "16", "1024" } )
+    public int capacity;
+
+    private Engine queue;
+
+    private Callable<Long> task;
+
+    @Setup( Level.Trial )
+    public void setup() {
+        queue = Engine.create( engine, capacity, threads );
+        task  = Work.of( work );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        queue.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( BATCH )
+    public long batch() {
+        for( int i=0; i<BATCH; i++ ) {
+            queue.submit( task );
+        }
+        queue.await();
+        return queue.getSum();
+    }
+}
@@ -0,0 +1,70 @@
+package smile.tasks.jmh;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The task types of the benchmarks.
+ *
+ * @author Andre Kullmann
+ */
+final class Work {
+
+    /**
+     * Cpu tokens of a cpu bound task, about one microsecond.
+     */
+    private static final long CPU_TOKENS = 256;
+
+    /**
+     * Park time of a blocking task, e.g. a remote call.
+     */
+    private static final long BLOCKING_NANOS = TimeUnit.MICROSECONDS.toNanos( 50 );
+
+    private static final Callable<Long> EMPTY = new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+            return 1L;
+        }
+    };
+
+    private static final Callable<Long> CPU = new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+            Blackhole.consumeCPU( CPU_TOKENS );
+            return 1L;
+        }
+    };
+
+    private static final Callable<Long> BLOCKING = new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+            LockSupport.parkNanos( BLOCKING_NANOS );
+            return 1L;
+        }
+    };
+
+    private Work() {
+    }
+
+    /**
+     * @param name empty, cpu or blocking
+     * @return the task
+     */
+    static Callable<Long> of( String name ) {
+
+        if( "empty".equals( name ) ) {
+            return EMPTY;
+        }
+        if( "cpu".equals( name ) ) {
+            return CPU;
+        }
+        if( "blocking".equals( name ) ) {
+            return BLOCKING;
+        }
+
+        throw new IllegalArgumentException( "unknown work: " + name );
+    }
+}
@@ -0,0 +1,204 @@
+package smile.tasks;
+
+import smile.threads.MpscRingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+
+/**
+ * Base class for the queue implementations whose workers publish each finished {@link smile.tasks.TaskQueueFuture}
+ * to a {@link smile.threads.MpscRingBuffer}. The owner thread, the thread which creates the queue, is the only
+ * consumer of the ring buffer and the only thread which can handle results.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ abstract class AbstractRingBufferTaskQueue<T> extends AbstractTaskQueue<T> {
+
+    private final MpscRingBuffer<Future<T>> resultQueue;
+
+    /**
+     * Reused buffer for {@link smile.threads.MpscRingBuffer#drainTo(java.util.Collection)}, only used on owner thread.
+     */
+    private final List<Future<T>> drained = new ArrayList<Future<T>>();
+
+    private final Thread ownerThread;
+
+    /**
+     * The handled futures for the next submits in recycling mode, null if each submit creates a new future.
+     */
+    private final ArrayBlockingQueue<RecyclableFuture<T>> pool;
+
+    /*package private*/ AbstractRingBufferTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            ExecutorService workerPool,
+            MpscRingBuffer<Future<T>> resultQueue,
+            ResultHandler<T> resultHandler) {
+
+        this(name, capacity, threads, workerPool, resultQueue, false, resultHandler);
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param threads count of worker threads
+     * @param workerPool the thread poll which will be used.
+     * @param resultQueue the workers publish the finished futures to this ring buffer, should hold at least capacity futures.
+     * @param recycling true to reuse the futures, see {@link smile.tasks.RecyclableFuture}
+     * @param resultHandler will be called for each result or exception.
+     */
+    /*package private*/ AbstractRingBufferTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            ExecutorService workerPool,
+            MpscRingBuffer<Future<T>> resultQueue,
+            boolean recycling,
+            ResultHandler<T> resultHandler) {
+
+        super(name, capacity, threads, workerPool, resultHandler);
+
+        this.resultQueue = resultQueue;
+        this.ownerThread = Thread.currentThread();
+        this.pool        = recycling ? new ArrayBlockingQueue<RecyclableFuture<T>>(capacity) : null;
+    }
+
+    /**
+     * @return true if the futures are reused after their results are handled
+     */
+    public boolean isRecycling() {
+        return pool != null;
+    }
+
+    /**
+     * @return {@link #resultQueue}
+     */
+    /*package private*/ MpscRingBuffer<Future<T>> getResultQueue() {
+        return resultQueue;
+    }
+
+    /**
+     * @return {@link #ownerThread}
+     */
+    private Thread getOwnerThread() {
+        return ownerThread;
+    }
+
+    /**
+     * @return true if {@link Thread#currentThread()} is equals {@link #getOwnerThread()}
+     */
+    @Override
+    public boolean canHandleResult() {
+        return Thread.currentThread() == getOwnerThread();
+    }
+
+    /**
+     * @param callable to be execute
+     * @return a {@link smile.tasks.TaskQueueFuture} which reports its completion to {@link #getResultQueue()},
+     * in recycling mode a {@link smile.tasks.RecyclableFuture} from the pool
+     */
+    @Override
+    protected RunnableFuture<T> newTaskFor(Callable<T> callable) {
+
+        if (pool == null) {
+            return new TaskQueueFuture<T>(callable, getResultQueue(), sample());
+        }
+
+        RecyclableFuture<T> future = pool.poll();
+
+        if (future == null) {
+            future = new RecyclableFuture<T>(getResultQueue());
+        }
+
+        return future.reset(callable, sample());
+    }
+
+    /**
+     * Puts the handled future back to the pool in recycling mode.
+     *
+     * @param future a handled future
+     */
+    @Override
+    protected void recycle(Future<T> future) {
+
+        if (pool != null && future instanceof RecyclableFuture) {
+
+            RecyclableFuture<T> recyclable = (RecyclableFuture<T>) future;
+
+            if (recyclable.isRecyclable()) {
+                recyclable.clear();
+                pool.offer(recyclable);
+            }
+        }
+    }
+
+    /**
+     * @return true if the result handler is a {@link smile.tasks.BatchResultHandler}
+     */
+    private boolean isBatchResultHandler() {
+        return getResultHandler() instanceof BatchResultHandler;
+    }
+
+    @Override
+    public void purge() {
+
+        checkCanHandleResult();
+
+        if (isBatchResultHandler()) {
+
+            if (getResultQueue().drainTo(drained) > 0) {
+                handleDrained();
+            }
+
+        } else {
+
+            for (Future<T> future = getResultQueue().poll(); future != null; future = getResultQueue().poll()) {
+
+                handleFuture(future);
+            }
+        }
+    }
+
+    @Override
+    public void awaitOneResult() {
+
+        //checkOwnerThread();
+
+        Future<T> future;
+        try {
+            future = getResultQueue().take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        if (isBatchResultHandler()) {
+
+            drained.add(future);
+            getResultQueue().drainTo(drained);
+
+            handleDrained();
+
+        } else {
+
+            handleFuture(future);
+        }
+    }
+
+    /**
+     * Hands all {@link #drained} futures to {@link #handleFutures(java.util.List)} and clears the buffer.
+     */
+    private void handleDrained() {
+        try {
+            handleFutures(drained);
+        } finally {
+            drained.clear();
+        }
+    }
+}
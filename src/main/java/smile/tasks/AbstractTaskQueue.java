@@ -1,13 +1,45 @@
 package smile.tasks;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import smile.tasks.journal.TaskJournal;
+import smile.tasks.metrics.ForwardingProbe;
+import smile.tasks.metrics.TaskQueueMetrics;
+import smile.tasks.metrics.TaskQueueProbe;
+import smile.tasks.metrics.TaskQueueStats;
+import smile.threads.HashedWheelTimer;
+import smile.threads.ResizableSemaphore;
+import smile.threads.WeightedSemaphore;
+
 /**
  * This is the base class for queue implementations which follows the pattern: {@link smile.tasks}
  *
@@ -21,16 +53,121 @@ public abstract class AbstractTaskQueue<T> {
 
     private final ExecutorService workerPool;
 
-    private final int capacity;
+    /**
+     * The current limit, only changed by the owner thread in adaptive mode.
+     */
+    private volatile int capacity;
+
+    /**
+     * The current count of worker threads, only changed by the owner thread in adaptive mode.
+     */
+    private volatile int threads;
+
+    /**
+     * The configured capacity, upper bound for the adaptive limit.
+     */
+    private final int maxCapacity;
+
+    /**
+     * The configured count of worker threads, upper bound in adaptive mode.
+     */
+    private final int maxThreads;
 
-    private final int threads;
+    private final ResizableSemaphore semaphore;
 
-    private final Semaphore semaphore;
+    /**
+     * Not null in adaptive mode, see {@link #setAdaptiveLimit(AdaptiveLimit)}.
+     */
+    private volatile AdaptiveLimit adaptiveLimit;
 
     private final String name;
 
     private final ResultHandler<T> resultHandler;
 
+    /**
+     * If true the results are delivered in submit order, see {@link #setOrdered(boolean)}.
+     */
+    private boolean ordered = false;
+
+    /**
+     * The submitted but not yet delivered futures in submit order, only used in ordered mode and on owner thread.
+     * It's bounded by the capacity, because the permit of a future is released when the future is delivered.
+     */
+    private final ArrayDeque<Future<T>> reorderBuffer = new ArrayDeque<Future<T>>();
+
+    /**
+     * Reused buffer for the futures delivered in one batch in ordered mode, only used on owner thread.
+     */
+    private final List<Future<T>> inOrder = new ArrayList<Future<T>>();
+
+    /**
+     * Serial lanes for {@link #submit(Object, java.util.concurrent.Callable)}.
+     */
+    private final TaskLanes lanes;
+
+    /**
+     * The slots of the ranges of {@link #parallelMap(Object[], Object[], Function)} which wait in the worker pool.
+     */
+    private final Semaphore ranges;
+
+    /**
+     * The futures cancelled by the timer of {@link #submit(java.util.concurrent.Callable, long, java.util.concurrent.TimeUnit)},
+     * removed when the {@link java.util.concurrent.TimeoutException} is delivered.
+     */
+    private final Set<Future<?>> timedOut = Collections.newSetFromMap( new ConcurrentHashMap<Future<?>, Boolean>() );
+
+    /**
+     * Not null if the queue records its tasks, see {@link #setJournal(smile.tasks.journal.TaskJournal)}.
+     */
+    private volatile TaskJournal journal;
+
+    /**
+     * The ids of the futures submitted by {@link #submitOnce(long, java.util.concurrent.Callable)} and not yet
+     * delivered, only used on owner thread.
+     */
+    private final Map<Future<T>, Long> journaled = new HashMap<Future<T>, Long>();
+
+    /**
+     * Not null if the queue has a memory budget, see {@link #setMemoryBudget(long)}.
+     */
+    private WeightedSemaphore memoryBudget;
+
+    /**
+     * The weights of the futures submitted by {@link #submit(java.util.concurrent.Callable, long)} and not yet
+     * handled, only used on owner thread.
+     */
+    private final Map<Future<T>, Long> weights = new HashMap<Future<T>, Long>();
+
+    /**
+     * Not null if the admission watches the heap, see {@link #setHeapPressureThrottle(HeapPressureThrottle)}.
+     */
+    private volatile HeapPressureThrottle heapPressureThrottle;
+
+    /**
+     * Not null if the queue reports its events, see {@link #setProbe(smile.tasks.metrics.TaskQueueProbe)}.
+     */
+    private volatile TaskQueueProbe probe;
+
+    /**
+     * Sample rate of the probe minus one, a power of two minus one.
+     */
+    private volatile int sampleMask = 0;
+
+    /**
+     * Counts the created tasks for sampling. Submits on other threads may race, which is precise enough for sampling.
+     */
+    private int sampleCounter = 0;
+
+    /**
+     * Not null if the metrics are enabled, see {@link #enableMetrics()}.
+     */
+    private volatile TaskQueueMetrics metrics;
+
+    /**
+     * The name of the registered {@link smile.tasks.metrics.TaskQueueMXBean}, only used on owner thread.
+     */
+    private ObjectName objectName;
+
     /**
      *
      * @param name the queue name
@@ -49,9 +186,13 @@ public abstract class AbstractTaskQueue<T> {
         this.name          = name;
         this.capacity      = capacity;
         this.threads       = threads;
-        this.semaphore     = new Semaphore(capacity);
+        this.maxCapacity   = capacity;
+        this.maxThreads    = threads;
+        this.semaphore     = new ResizableSemaphore(capacity);
         this.workerPool    = workerPool;
         this.resultHandler = resultHandler;
+        this.lanes         = new TaskLanes(workerPool, threads);
+        this.ranges        = new Semaphore(ParallelMap.slots(threads));
     }
 
     /**
@@ -97,95 +238,1444 @@ public abstract class AbstractTaskQueue<T> {
     }
 
     /**
-     * @return true if the results can be handled, in most cases these method checks if the current thread is the owner.
+     * @return the current capacity, in adaptive mode the current limit, otherwise the configured capacity.
      */
-    public abstract boolean canHandleResult();
+    public int getLimit() {
+        return getCapacity();
+    }
 
     /**
-     * @throws RuntimeException if {@link #canHandleResult()} returns false.
+     * @return {@link #adaptiveLimit}, null if the queue is not adaptive.
      */
-    protected void checkCanHandleResult() {
-        if( !canHandleResult() )
-            throw new RuntimeException( "illegal thread access." );
+    public AdaptiveLimit getAdaptiveLimit() {
+        return adaptiveLimit;
     }
 
     /**
+     * In adaptive mode the capacity and the count of worker threads are adjusted at runtime, based on the measured
+     * execution time and throughput of the tasks ( see {@link smile.tasks.AdaptiveLimit} ).
+     * The configured capacity and count of threads are the upper bounds. The count of worker threads is kept in
+     * the configured ratio to the limit, it's only changed if the worker pool is a
+     * {@link java.util.concurrent.ThreadPoolExecutor}. The current limit is returned by {@link #getLimit()}.
      *
-     * @param callable to be execute
-     * @return the result of {@link java.util.concurrent.ExecutorService#submit(java.util.concurrent.Callable)}
-     * @throws java.util.concurrent.RejectedExecutionException
+     * @param adaptiveLimit the limit algorithm, null to switch back to the configured capacity and threads
+     * @return this
+     * @throws UnsupportedOperationException if the worker pool is a {@link smile.tasks.SerializingExecutorService},
+     * which can't serialize the timing wrapper of the callables
      */
-    public Future<T> submit(final Callable<T> callable) {
+    public AbstractTaskQueue<T> setAdaptiveLimit(AdaptiveLimit adaptiveLimit) {
 
-        if (canHandleResult()) {
+        checkCanHandleResult();
 
-            if (getWorkerPool().isShutdown()) {
+        if (adaptiveLimit != null) {
+            checkCanRunLocal("adaptive limit");
+        }
 
-                await();
+        this.adaptiveLimit = adaptiveLimit;
 
-                throw new RejectedExecutionException();
+        if (adaptiveLimit == null) {
+            resize(maxCapacity);
+        }
+
+        return this;
+    }
+
+    /**
+     * Called on owner thread, asks the {@link #adaptiveLimit} for a new limit.
+     */
+    private void adapt() {
+
+        AdaptiveLimit limit = adaptiveLimit;
+
+        if (limit == null) {
+            return;
+        }
+
+        int inFlight = getCapacity() - getSemaphore().availablePermits();
+        int newLimit = limit.update(getCapacity(), maxCapacity, inFlight);
+
+        if (newLimit != getCapacity()) {
+            resize(newLimit);
+        }
+    }
+
+    /**
+     * Changes the count of permits and worker threads. Only called on owner thread.
+     *
+     * @param newCapacity the new capacity, between 1 and {@link #maxCapacity}
+     */
+    private void resize(int newCapacity) {
+
+        semaphore.resize(newCapacity - getCapacity());
+        this.capacity = newCapacity;
 
+        int newThreads = Math.max(1, Math.min(maxThreads, (int) Math.ceil((double) newCapacity * maxThreads / maxCapacity)));
+
+        if (newThreads != getThreads() && getWorkerPool() instanceof ThreadPoolExecutor) {
+
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) getWorkerPool();
+
+            // the core pool size must never be greater than the maximum pool size
+            if (newThreads > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(newThreads);
+                pool.setCorePoolSize(newThreads);
             } else {
+                pool.setCorePoolSize(newThreads);
+                pool.setMaximumPoolSize(newThreads);
+            }
 
-                purge();
+            this.threads = newThreads;
+        }
+    }
+
+    /**
+     * @return {@link #heapPressureThrottle}, null if the admission doesn't watch the heap.
+     */
+    public HeapPressureThrottle getHeapPressureThrottle() {
+        return heapPressureThrottle;
+    }
+
+    /**
+     * While the given throttle is on, the heap is almost full after garbage collection, the owner thread handles
+     * finished results before it submits the next task and all other threads wait, each submit at most the max
+     * pause of the throttle ( see {@link smile.tasks.HeapPressureThrottle} ).
+     *
+     * @param heapPressureThrottle the throttle, null to admit tasks regardless of the heap
+     * @return this
+     */
+    public AbstractTaskQueue<T> setHeapPressureThrottle(HeapPressureThrottle heapPressureThrottle) {
+
+        checkCanHandleResult();
+
+        this.heapPressureThrottle = heapPressureThrottle;
+
+        return this;
+    }
+
+    /**
+     * Waits while the {@link #heapPressureThrottle} is on, at most its max pause. The owner thread handles finished
+     * results while it waits.
+     */
+    private void throttle() {
+
+        HeapPressureThrottle throttle = heapPressureThrottle;
+
+        if (throttle == null || !throttle.isThrottled()) {
+            return;
+        }
 
-                while (!getSemaphore().tryAcquire()) {
+        long start    = System.nanoTime();
+        long deadline = start + throttle.getMaxPauseNanos();
+
+        try {
+            for (long remaining = throttle.getMaxPauseNanos(); throttle.isThrottled() && remaining > 0; remaining = deadline - System.nanoTime()) {
+                if (canHandleResult() && getSemaphore().availablePermits() < getCapacity()) {
                     awaitOneResult();
+                } else {
+                    throttle.awaitRelief(remaining, TimeUnit.NANOSECONDS);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
 
-        } else {
+        // the throttle is only switched by collections, which may not come while admission is slowed down
+        throttle.recheck();
 
-            try {
-                getSemaphore().acquire();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(e);
-            }
+        if (canHandleResult()) {
+            blocked(start);
         }
+    }
 
-        //System.out.println( System.currentTimeMillis() );
-        return getWorkerPool().submit(callable);
+    /**
+     * @return {@link #probe}, null if the queue doesn't report its events.
+     */
+    public TaskQueueProbe getProbe() {
+        return probe;
+    }
 
+    /**
+     * Sets the probe which gets the events of this queue, each task is timed. Only tasks submitted after this call
+     * are timed.
+     *
+     * @param probe the probe, null to stop reporting
+     * @return this
+     * @see #setProbe(smile.tasks.metrics.TaskQueueProbe, int)
+     */
+    public AbstractTaskQueue<T> setProbe(TaskQueueProbe probe) {
+        return setProbe(probe, 1);
     }
 
     /**
-     * Will wait until the queue is empty, all submitted {@link java.util.concurrent.Callable} are executed.
+     * Sets the probe which gets the events of this queue. The outcome of each task is reported, but only one of
+     * sampleRate tasks is timed, because each timestamp costs about 20 to 40 nanoseconds. Only tasks submitted after
+     * this call are timed.
+     *
+     * @param probe the probe, null to stop reporting
+     * @param sampleRate one of sampleRate tasks is timed, a power of two
      * @return this
-     * @throws java.lang.RuntimeException {@link #checkCanHandleResult()} is invoked.
+     * @see #enableMetrics()
      */
-    public AbstractTaskQueue<T> await() {
+    public AbstractTaskQueue<T> setProbe(TaskQueueProbe probe, int sampleRate) {
 
         checkCanHandleResult();
 
-        //System.out.println(" await " + getSemaphore().availablePermits() + " => " + getCapacity() );
+        if (sampleRate < 1 || Integer.bitCount(sampleRate) != 1) {
+            throw new IllegalArgumentException("sampleRate must be a power of two: " + sampleRate);
+        }
 
-        //int size = getCapacity() - getSemaphore().availablePermits();
+        this.sampleMask = sampleRate - 1;
+        this.probe      = probe;
 
-        while (!getSemaphore().tryAcquire( getCapacity() )) {
-            //System.out.println(" await " + getSemaphore().availablePermits() + " => " + getCapacity() );
-            awaitOneResult();
+        return this;
+    }
+
+    /**
+     * @return one of sampleRate tasks is timed, see {@link #setProbe(smile.tasks.metrics.TaskQueueProbe, int)}
+     */
+    public int getSampleRate() {
+        return sampleMask + 1;
+    }
+
+    /**
+     * @return true if the next task should be timed for the {@link #probe}
+     */
+    /*package private*/ boolean sample() {
+        TaskQueueProbe p = probe;
+        return p != null && (++sampleCounter & sampleMask) == 0 && p.isEnabled();
+    }
+
+    /**
+     * Enables the metrics, one of 8 tasks is timed, see {@link #enableMetrics(int)}.
+     *
+     * @return this
+     */
+    public AbstractTaskQueue<T> enableMetrics() {
+        return enableMetrics(8);
+    }
+
+    /**
+     * Sets a {@link smile.tasks.metrics.TaskQueueMetrics} as probe and registers a
+     * {@link smile.tasks.metrics.TaskQueueMXBean} with the name {@code smile.tasks:type=TaskQueue,name=<queue name>}.
+     * The metrics are returned by {@link #stats()}. The bean is registered until {@link #disableMetrics()} or
+     * {@link #cancel()} is called.
+     *
+     * @param sampleRate one of sampleRate tasks is timed, a power of two, see {@link #setProbe(smile.tasks.metrics.TaskQueueProbe, int)}
+     * @return this
+     */
+    public AbstractTaskQueue<T> enableMetrics(int sampleRate) {
+
+        checkCanHandleResult();
+
+        if (metrics != null) {
+            return this;
         }
 
-        getSemaphore().release( getCapacity() );
+        TaskQueueMetrics m = new TaskQueueMetrics();
+        setProbe(m, sampleRate);
+        this.metrics = m;
+
+        try {
+            ObjectName name = new ObjectName("smile.tasks:type=TaskQueue,name=" + ObjectName.quote(getName()));
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                name = new ObjectName("smile.tasks:type=TaskQueue,name=" + ObjectName.quote(getName() + "@" + Integer.toHexString(System.identityHashCode(this))));
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new TaskQueueMonitor(this), name);
+            this.objectName = name;
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "can't register the mbean of queue " + getName(), e);
+        }
 
         return this;
     }
 
     /**
-     * Must wait until on result is available. And will invoke the control flow for the received result ( {@link smile.tasks.ResultHandler})
+     * Removes the probe and unregisters the {@link smile.tasks.metrics.TaskQueueMXBean} of {@link #enableMetrics()}.
+     * If the metrics are the next probe of a {@link smile.tasks.metrics.ForwardingProbe}, e.g. of a java flight
+     * recorder probe, they are removed from the chain and the other probes stay.
+     *
+     * @return this
      */
-    public abstract void awaitOneResult();
+    public AbstractTaskQueue<T> disableMetrics() {
+
+        checkCanHandleResult();
+
+        if (metrics == null) {
+            return this;
+        }
+
+        setProbe(without(probe, metrics), getSampleRate());
+
+        this.metrics = null;
+
+        unregister();
+
+        return this;
+    }
 
     /**
-     * Shutdown this queue and skip all unfinished {@link java.util.concurrent.Callable}.
-     * The queue can't be open again.
+     * @param probe a probe or a chain of {@link smile.tasks.metrics.ForwardingProbe} objects
+     * @param removed the probe to remove
+     * @return the chain without the removed probe
      */
-    public void cancel() {
+    private static TaskQueueProbe without(TaskQueueProbe probe, TaskQueueProbe removed) {
 
-        List<Runnable> list = getWorkerPool().shutdownNow();
+        if (probe == removed) {
+            return null;
+        }
 
-        getSemaphore().release( list.size() );
+        if (probe instanceof ForwardingProbe) {
+            ForwardingProbe forwarding = (ForwardingProbe) probe;
+            TaskQueueProbe next = without(forwarding.getNext(), removed);
+            return next == forwarding.getNext() ? probe : forwarding.withNext(next);
+        }
+
+        return probe;
+    }
+
+    private void unregister() {
+
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOGGER.log(Level.FINE, "can't unregister " + objectName, e);
+        }
+
+        this.objectName = null;
+    }
+
+    /**
+     * @return the {@link javax.management.ObjectName} of the registered {@link smile.tasks.metrics.TaskQueueMXBean},
+     * null if the metrics are not enabled
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * @return a snapshot of the metrics, see {@link #enableMetrics()}
+     * @throws IllegalStateException if the metrics are not enabled
+     */
+    public TaskQueueStats stats() {
+
+        TaskQueueMetrics m = metrics;
+
+        if (m == null) {
+            throw new IllegalStateException("metrics are not enabled.");
+        }
+
+        return m.snapshot(getName(), getLimit(), getLength(), getThreads());
+    }
+
+    /**
+     * @return count of submitted tasks whose result is not handled yet
+     */
+    public int getLength() {
+        return getCapacity() - getSemaphore().availablePermits();
+    }
+
+    /**
+     * Reports a rejected submit to the {@link #probe}.
+     */
+    private void rejected() {
+        TaskQueueProbe p = probe;
+        if (p != null) {
+            p.onRejected();
+        }
+    }
+
+    /**
+     * Reports the time the owner thread was blocked in a submit to the {@link #probe}.
+     *
+     * @param startNanos when the owner thread started to wait
+     */
+    private void blocked(long startNanos) {
+        TaskQueueProbe p = probe;
+        if (p != null) {
+            p.onSubmitBlocked(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Reports the outcome and the durations of a handled future to the probe.
+     *
+     * @param p the probe
+     * @param future a handled future
+     */
+    private void record(TaskQueueProbe p, Future<T> future) {
+
+        if (future.isCancelled()) {
+            p.onCancelled(1);
+            return;
+        }
+
+        long queueWait = -1;
+        long execution = -1;
+
+        if (future instanceof TimedTask) {
+            TimedTask task = (TimedTask) future;
+            queueWait = task.getQueueWaitNanos();
+            execution = task.getExecutionNanos();
+        }
+
+        try {
+            future.get();
+            p.onCompleted(queueWait, execution);
+        } catch (Exception e) {
+            p.onFailed(queueWait, execution);
+        }
+    }
+
+    /**
+     * @return {@link #ordered}
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * In ordered mode the {@link smile.tasks.ResultHandler} is invoked strictly in submit order, regardless in which
+     * order the {@link java.util.concurrent.Callable} objects finish. Finished results wait in a reorder buffer until
+     * all results submitted before are delivered. Because the permit of a task is only released on delivery, the
+     * reorder buffer is bounded by the capacity: if a slow task at the head of the queue holds back enough results,
+     * {@link #submit(java.util.concurrent.Callable)} blocks until it's finished.
+     *
+     * In ordered mode {@link #submit(java.util.concurrent.Callable)} can only be called on the owner thread.
+     *
+     * @param ordered true to deliver the results in submit order, false to deliver in completion order ( default )
+     * @return this
+     * @throws IllegalStateException if the queue is not empty
+     */
+    public AbstractTaskQueue<T> setOrdered(boolean ordered) {
+
+        checkCanHandleResult();
+
+        if (getSemaphore().availablePermits() != getCapacity()) {
+            throw new IllegalStateException("the queue is not empty.");
+        }
+
+        this.ordered = ordered;
+
+        return this;
+    }
+
+    /**
+     * @return {@link #journal}, null if the queue doesn't record its tasks.
+     */
+    public TaskJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal used by {@link #submitOnce(long, java.util.concurrent.Callable)}. The journal is not closed
+     * by the queue.
+     *
+     * @param journal the journal, null to stop recording
+     * @return this
+     */
+    public AbstractTaskQueue<T> setJournal(TaskJournal journal) {
+
+        checkCanHandleResult();
+
+        this.journal = journal;
+
+        return this;
+    }
+
+    /**
+     * @return the memory budget, 0 if the queue has no memory budget.
+     */
+    public long getMemoryBudget() {
+        WeightedSemaphore budget = memoryBudget;
+        return budget == null ? 0 : budget.getBudget();
+    }
+
+    /**
+     * @return the part of the memory budget which is not taken by the tasks in flight, 0 if the queue has no memory budget.
+     */
+    public long getAvailableMemoryBudget() {
+        WeightedSemaphore budget = memoryBudget;
+        return budget == null ? 0 : budget.availablePermits();
+    }
+
+    /**
+     * Limits the in flight tasks submitted by {@link #submit(java.util.concurrent.Callable, long)} by the sum of
+     * their weights, e.g. their payload size in bytes, in addition to the capacity. The weight of a task is taken
+     * on submit and given back when its result is handled. Set the capacity high enough, so many small tasks can
+     * be in flight within the budget.
+     *
+     * @param budget the maximum sum of the weights of the tasks in flight, 0 to remove the budget
+     * @return this
+     * @throws IllegalStateException if the queue is not empty
+     */
+    public AbstractTaskQueue<T> setMemoryBudget(long budget) {
+
+        checkCanHandleResult();
+
+        if (!weights.isEmpty()) {
+            throw new IllegalStateException("the queue is not empty.");
+        }
+
+        this.memoryBudget = budget > 0 ? new WeightedSemaphore(budget) : null;
+
+        return this;
+    }
+
+    /**
+     * @throws IllegalStateException if the queue is ordered and the current thread is not the owner.
+     */
+    private void checkCanSubmit() {
+        if (isOrdered() && !canHandleResult()) {
+            throw new IllegalStateException("an ordered queue accepts submits only on the owner thread.");
+        }
+    }
+
+    /**
+     * @return true if the results can be handled, in most cases these method checks if the current thread is the owner.
+     */
+    public abstract boolean canHandleResult();
+
+    /**
+     * @throws RuntimeException if {@link #canHandleResult()} returns false.
+     */
+    protected void checkCanHandleResult() {
+        if( !canHandleResult() )
+            throw new RuntimeException( "illegal thread access." );
+    }
+
+    /**
+     * Keyed and timed submits, the adaptive limit and the parallel maps hand tasks of this queue to the worker pool,
+     * which a {@link smile.tasks.SerializingExecutorService} can't execute.
+     *
+     * @param operation the name of the operation, for the message
+     * @throws UnsupportedOperationException if the worker pool is a {@link smile.tasks.SerializingExecutorService}
+     */
+    private void checkCanRunLocal(String operation) {
+        if (workerPool instanceof SerializingExecutorService) {
+            throw new UnsupportedOperationException(operation + " is not supported by " + workerPool.getClass().getSimpleName()
+                    + ", it only executes the serializable callable of a " + CallableTask.class.getSimpleName());
+        }
+    }
+
+    /**
+     *
+     * @param callable to be execute
+     * @return the result of {@link java.util.concurrent.ExecutorService#submit(java.util.concurrent.Callable)}
+     * @throws java.util.concurrent.RejectedExecutionException
+     */
+    public Future<T> submit(final Callable<T> callable) {
+
+        checkCanSubmit();
+
+        admit();
+
+        //System.out.println( System.currentTimeMillis() );
+        return dispatch(callable);
+
+    }
+
+    /**
+     * Like {@link #submit(java.util.concurrent.Callable)}, but the callable has to finish within the given timeout,
+     * measured from submit. A callable past its deadline is cancelled, a running callable is interrupted, and a
+     * {@link java.util.concurrent.TimeoutException} is passed to {@link smile.tasks.ResultHandler#onException(Exception)}.
+     * The deadlines are managed by one shared {@link smile.threads.HashedWheelTimer}, so a timeout costs no extra thread.
+     *
+     * @param callable to be execute
+     * @param timeout the maximum time to wait for the result
+     * @param unit the unit of timeout
+     * @return the future of the callable
+     * @throws UnsupportedOperationException if the worker pool is a {@link smile.tasks.SerializingExecutorService},
+     * which can't serialize the deadline
+     * @throws java.util.concurrent.RejectedExecutionException
+     */
+    public Future<T> submit(final Callable<T> callable, long timeout, TimeUnit unit) {
+
+        checkCanRunLocal("timed submit");
+
+        checkCanSubmit();
+
+        admit();
+
+        Deadline deadline = new Deadline(callable);
+
+        Future<T> future = dispatch(deadline);
+
+        if (future instanceof RecyclableFuture) {
+            // the deadline may cancel the future after its result is handled
+            ((RecyclableFuture<T>) future).keep();
+        }
+
+        deadline.start(future, timeout, unit);
+
+        return future;
+    }
+
+    /**
+     * Like {@link #submit(java.util.concurrent.Callable)}, but the callable also takes the given weight from the
+     * memory budget ( see {@link #setMemoryBudget(long)} ). While the budget is exhausted finished results are
+     * handled. A weight greater than the budget is clamped to the budget, so the callable takes the whole budget: it
+     * waits until the whole budget is free, and no other weighted task is admitted until its result is handled.
+     * Can only be called on the owner thread.
+     *
+     * @param callable to be execute
+     * @param weight the expected memory use of the callable and its result, e.g. in bytes
+     * @return the future of the callable
+     * @throws IllegalStateException if no memory budget is set
+     * @throws java.util.concurrent.RejectedExecutionException
+     */
+    public Future<T> submit(final Callable<T> callable, long weight) {
+
+        checkCanHandleResult();
+
+        WeightedSemaphore budget = memoryBudget;
+
+        if (budget == null) {
+            throw new IllegalStateException("no memory budget set.");
+        }
+
+        checkCanSubmit();
+
+        if (!budget.tryAcquire(weight)) {
+
+            long start = System.nanoTime();
+
+            do {
+                awaitOneResult();
+            } while (!budget.tryAcquire(weight));
+
+            blocked(start);
+        }
+
+        Future<T> future;
+
+        try {
+            admit();
+            future = dispatch(callable);
+        } catch (RuntimeException e) {
+            budget.release(weight);
+            throw e;
+        }
+
+        weights.put(future, weight);
+
+        return future;
+    }
+
+    /**
+     * Gives the weight of the given handled future back to the memory budget.
+     *
+     * @param future a future whose result is handled, or an unstarted task of {@link #cancel()}
+     */
+    private void releaseWeight(Object future) {
+
+        if (weights.isEmpty()) {
+            return;
+        }
+
+        Long weight = weights.remove(future);
+
+        if (weight != null) {
+            memoryBudget.release(weight);
+        }
+    }
+
+    /**
+     * Like {@link #submit(java.util.concurrent.Callable)}, but the callable is skipped if the {@link #getJournal() journal}
+     * has the given id as completed, e.g. because it's finished in an earlier run of a batch job which crashed.
+     * The id is recorded as completed after the {@link smile.tasks.ResultHandler} has handled the result, and as
+     * failed after an exception is handled, so a failed callable is executed again by the next run.
+     * Can only be called on the owner thread.
+     *
+     * @param id the stable id of the callable, equal in all runs
+     * @param callable to be execute
+     * @return the future of the callable, null if the callable is already completed
+     * @throws IllegalStateException if no journal is set
+     * @throws java.util.concurrent.RejectedExecutionException
+     */
+    public Future<T> submitOnce(long id, final Callable<T> callable) {
+
+        checkCanHandleResult();
+
+        TaskJournal journal = getJournal();
+
+        if (journal == null) {
+            throw new IllegalStateException("no journal set.");
+        }
+
+        if (journal.isCompleted(id)) {
+            return null;
+        }
+
+        checkCanSubmit();
+
+        admit();
+
+        journal.submitted(id);
+
+        Future<T> future = dispatch(callable);
+
+        journaled.put(future, id);
+
+        return future;
+    }
+
+    /**
+     * Cancels its future if the timeout expires, and cancels the timeout if the callable finishes in time.
+     */
+    private class Deadline implements Callable<T>, Runnable {
+
+        private final Callable<T> callable;
+
+        private volatile Future<T> future;
+
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        private volatile boolean finished = false;
+
+        private Deadline(Callable<T> callable) {
+            this.callable = callable;
+        }
+
+        private void start(Future<T> future, long timeout, TimeUnit unit) {
+
+            this.future  = future;
+            this.timeout = HashedWheelTimer.getShared().newTimeout(this, timeout, unit);
+
+            // the callable may have finished before the timeout was created
+            if (finished) {
+                this.timeout.cancel();
+            }
+        }
+
+        @Override
+        public T call() throws Exception {
+            try {
+                return callable.call();
+            } finally {
+                finished = true;
+                HashedWheelTimer.Timeout t = timeout;
+                if (t != null) {
+                    t.cancel();
+                }
+            }
+        }
+
+        /**
+         * Called by the timer thread.
+         */
+        @Override
+        public void run() {
+            timedOut.add(future);
+            if (!future.cancel(true)) {
+                timedOut.remove(future);
+            }
+        }
+    }
+
+    /**
+     * Submits the given {@link java.util.concurrent.Callable} to the lane of the given key. All callables with the
+     * same key are executed one after the other in submit order, callables with different keys are executed in
+     * parallel. No worker thread waits for a lane, a lane only occupies a worker while one of its callables runs.
+     * Keys are striped over a fixed count of lanes, so different keys can share one lane.
+     * The capacity is shared with {@link #submit(java.util.concurrent.Callable)}.
+     *
+     * @param key e.g. an account or a file, must implement {@link Object#hashCode()}
+     * @param callable to be execute
+     * @return the future of the callable
+     * @throws UnsupportedOperationException if the worker pool is a {@link smile.tasks.SerializingExecutorService},
+     * which can't execute the lanes
+     * @throws java.util.concurrent.RejectedExecutionException
+     * @see #getLaneDepth(Object)
+     */
+    public Future<T> submit(final Object key, final Callable<T> callable) {
+
+        checkCanRunLocal("keyed submit");
+
+        checkCanSubmit();
+
+        admit();
+
+        return dispatch(key, callable);
+    }
+
+    /**
+     * @param key see {@link #submit(Object, java.util.concurrent.Callable)}
+     * @return count of queued and running callables in the lane of the given key
+     */
+    public int getLaneDepth(Object key) {
+        return lanes.depth(key);
+    }
+
+    /**
+     * @return count of queued and running callables for each lane
+     */
+    public int[] getLaneDepths() {
+        return lanes.depths();
+    }
+
+    /**
+     * Acquires one permit. On the owner thread finished results are handled while waiting, all other threads
+     * block in {@link #acquire()}.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the worker pool is shutdown
+     */
+    private void admit() {
+
+        if (canHandleResult()) {
+
+            if (getWorkerPool().isShutdown()) {
+
+                await();
+
+                rejected();
+
+                throw new RejectedExecutionException();
+
+            } else {
+
+                purge();
+
+                adapt();
+
+                throttle();
+
+                if (!getSemaphore().tryAcquire()) {
+
+                    long start = System.nanoTime();
+
+                    do {
+                        awaitOneResult();
+                    } while (!getSemaphore().tryAcquire());
+
+                    blocked(start);
+                }
+            }
+
+        } else {
+
+            throttle();
+
+            try {
+                acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Submits all given {@link java.util.concurrent.Callable} objects, see {@link #submitAll(java.util.Iterator)}.
+     *
+     * @param callables to be execute
+     * @return count of submitted {@link java.util.concurrent.Callable} objects
+     * @throws java.util.concurrent.RejectedExecutionException
+     */
+    public int submitAll(Collection<? extends Callable<T>> callables) {
+        return submitAll(callables.iterator());
+    }
+
+    /**
+     * Bulk version of {@link #submit(java.util.concurrent.Callable)}. Instead of one permit per {@link java.util.concurrent.Callable}
+     * all available permits are taken at once ( see {@link #acquirePermits()} ) and the next chunk of callables is handed
+     * to the worker pool without touching the semaphore again. Finished results are handled between the chunks.
+     *
+     * @param callables to be execute, the iterator is consumed lazily
+     * @return count of submitted {@link java.util.concurrent.Callable} objects
+     * @throws java.util.concurrent.RejectedExecutionException
+     */
+    public int submitAll(Iterator<? extends Callable<T>> callables) {
+
+        checkCanSubmit();
+
+        int count = 0;
+
+        while (callables.hasNext()) {
+
+            int permits = acquirePermits();
+            int used    = 0;
+
+            try {
+                while (used < permits && callables.hasNext()) {
+                    Callable<T> next = callables.next();
+                    // a rejected dispatch releases its permit itself
+                    used++;
+                    dispatch(next);
+                }
+            } finally {
+                if (used < permits) {
+                    getSemaphore().release(permits - used);
+                }
+            }
+
+            count += used;
+        }
+
+        return count;
+    }
+
+    /**
+     * Applies the function to each element of the list on the workers of this queue and returns the results in the
+     * order of the list, see {@link #parallelMap(Object[], Object[], Function)}.
+     *
+     * @param input the elements, a list without random access is copied first
+     * @param function applied to each element
+     * @return the results, the result of each element at its index
+     * @throws RuntimeException if the function failed for an element, the cause is the exception of the function
+     * @throws UnsupportedOperationException if the worker pool is a {@link smile.tasks.SerializingExecutorService}
+     */
+    public <A, B> List<B> parallelMap(List<A> input, Function<? super A, ? extends B> function) {
+
+        checkCanRunLocal("parallelMap");
+
+        List<A> elements = input instanceof RandomAccess ? input : new ArrayList<A>(input);
+
+        Object[] output = new Object[elements.size()];
+
+        new ParallelMap<A, B>(getWorkerPool(), ranges, elements, output, function, grain(elements.size())).run();
+
+        @SuppressWarnings("unchecked")
+        List<B> result = (List<B>) Arrays.asList(output);
+
+        return result;
+    }
+
+    /**
+     * Bulk map without a task per element. The index range of the input is split recursively into ranges, the
+     * ranges are executed by the worker pool and each result is written to the output at the index of its element,
+     * so the order is kept and no {@link java.util.concurrent.Future} is created. The calling thread maps a range
+     * too and returns when all ranges are finished.
+     *
+     * The ranges bypass the permits and the {@link smile.tasks.ResultHandler}, so it can be called by any thread,
+     * but not by a task of this queue, which could wait for ranges queued behind it. The worker pool must execute
+     * the ranges in this jvm, a {@link smile.tasks.SerializingExecutorService}, e.g. of a
+     * {@link smile.tasks.ProcessTaskQueue}, is rejected. At most four ranges per worker thread wait in the worker pool
+     * at a time, the other ranges are mapped by the splitting thread. A worker pool with a bounded queue needs this
+     * room besides the capacity, the recycling {@link smile.tasks.SimpleTaskQueue} reserves it.
+     *
+     * @param input the elements
+     * @param output gets the results, at least as long as the input
+     * @param function applied to each element
+     * @return output
+     * @throws RuntimeException if the function failed for an element, the cause is the exception of the function,
+     * or a {@link java.util.concurrent.CancellationException} if the queue is cancelled while the ranges wait
+     * @throws UnsupportedOperationException if the worker pool is a {@link smile.tasks.SerializingExecutorService}
+     */
+    public <A, B> B[] parallelMap(A[] input, B[] output, Function<? super A, ? extends B> function) {
+
+        checkCanRunLocal("parallelMap");
+
+        new ParallelMap<A, B>(getWorkerPool(), ranges, Arrays.asList(input), output, function, grain(input.length)).run();
+
+        return output;
+    }
+
+    /**
+     * @param size count of elements
+     * @return the size of the ranges of {@link #parallelMap(Object[], Object[], Function)}, about four ranges per thread
+     */
+    private int grain(int size) {
+        return Math.max(1, size / (getThreads() * 4));
+    }
+
+    /**
+     * Takes as many permits as currently available, but at least one. On the owner thread finished results are
+     * handled while waiting, on all other threads it blocks until one permit is available.
+     *
+     * @return count of acquired permits, always greater than zero
+     * @throws java.util.concurrent.RejectedExecutionException if the worker pool is shutdown
+     */
+    private int acquirePermits() {
+
+        if (canHandleResult()) {
+
+            if (getWorkerPool().isShutdown()) {
+
+                await();
+
+                rejected();
+
+                throw new RejectedExecutionException();
+            }
+
+            purge();
+
+            adapt();
+
+            throttle();
+
+            // the adaptive limit can leave the semaphore negative, drainPermits() would forget this debt
+            int permits = semaphore.drainAvailablePermits();
+
+            if (permits == 0) {
+
+                long start = System.nanoTime();
+
+                do {
+                    awaitOneResult();
+                    purge();
+                    permits = semaphore.drainAvailablePermits();
+                } while (permits == 0);
+
+                blocked(start);
+            }
+
+            return permits;
+
+        } else {
+
+            throttle();
+
+            try {
+                acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+
+            return 1 + semaphore.drainAvailablePermits();
+        }
+    }
+
+    /**
+     * Blocks until one permit is available. Used by all threads which can't handle results ( see {@link #canHandleResult()} ).
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    protected void acquire() throws InterruptedException {
+        getSemaphore().acquire();
+    }
+
+    /**
+     * Calls {@link #execute(java.util.concurrent.Callable)} and in ordered mode appends the future to the reorder buffer.
+     *
+     * @param callable to be execute, the permit is already acquired, it is released if the callable is rejected.
+     * @return the result of {@link #execute(java.util.concurrent.Callable)}
+     */
+    private Future<T> dispatch(Callable<T> callable) {
+
+        Future<T> future;
+
+        try {
+            future = execute(timed(callable));
+        } catch (RejectedExecutionException e) {
+            getSemaphore().release();
+            rejected();
+            throw e;
+        }
+
+        if (isOrdered()) {
+            reorderBuffer.add(future);
+        }
+
+        return future;
+    }
+
+    /**
+     * Creates the task for {@link #submit(Object, java.util.concurrent.Callable)}, puts it into the lane of the key
+     * and in ordered mode appends it to the reorder buffer.
+     *
+     * @param key the lane key
+     * @param callable to be execute, the permit is already acquired, it is released if the callable is rejected.
+     * @return the task
+     */
+    private Future<T> dispatch(Object key, Callable<T> callable) {
+
+        RunnableFuture<T> task = newTaskFor(timed(callable));
+
+        try {
+            lanes.execute(key, task);
+        } catch (RejectedExecutionException e) {
+            getSemaphore().release();
+            rejected();
+            throw e;
+        }
+
+        if (isOrdered()) {
+            reorderBuffer.add(task);
+        }
+
+        return task;
+    }
+
+    /**
+     * @param callable to be execute
+     * @return in adaptive mode a callable which measures the execution time, otherwise the given callable
+     */
+    private Callable<T> timed(Callable<T> callable) {
+        AdaptiveLimit limit = adaptiveLimit;
+        return limit == null ? callable : limit.timed(callable);
+    }
+
+    /**
+     * Creates the task which runs the given {@link java.util.concurrent.Callable} on a worker. Implementations
+     * return a task which reports its completion to the owner thread.
+     *
+     * @param callable to be execute
+     * @return a new task
+     */
+    protected RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new FutureTask<T>(callable);
+    }
+
+    /**
+     * Hands the given {@link java.util.concurrent.Callable} to the worker pool, the permit is already acquired.
+     *
+     * @param callable to be execute
+     * @return the task created by {@link #newTaskFor(java.util.concurrent.Callable)}
+     */
+    protected Future<T> execute(Callable<T> callable) {
+
+        RunnableFuture<T> task = newTaskFor(callable);
+
+        getWorkerPool().execute(task);
+
+        return task;
+    }
+
+    /**
+     * Will wait until the queue is empty, all submitted {@link java.util.concurrent.Callable} are executed.
+     * @return this
+     * @throws java.lang.RuntimeException {@link #checkCanHandleResult()} is invoked.
+     */
+    public AbstractTaskQueue<T> await() {
+
+        checkCanHandleResult();
+
+        //System.out.println(" await " + getSemaphore().availablePermits() + " => " + getCapacity() );
+
+        //int size = getCapacity() - getSemaphore().availablePermits();
+
+        while (!getSemaphore().tryAcquire( getCapacity() )) {
+            //System.out.println(" await " + getSemaphore().availablePermits() + " => " + getCapacity() );
+            awaitOneResult();
+        }
+
+        getSemaphore().release( getCapacity() );
+
+        return this;
+    }
+
+    /**
+     * Must wait until on result is available. And will invoke the control flow for the received result ( {@link smile.tasks.ResultHandler})
+     */
+    public abstract void awaitOneResult();
+
+    /**
+     * Releases the permit of the given finished {@link java.util.concurrent.Future} and invokes the {@link smile.tasks.ResultHandler}.
+     * In ordered mode all results which are next in submit order are delivered instead.
+     * This should only be called on owner thread.
+     *
+     * @param future a finished future
+     */
+    protected void handleFuture(Future<T> future) {
+
+        if (isOrdered()) {
+            deliverInOrder();
+            return;
+        }
+
+        getSemaphore().release();
+
+        releaseWeight(future);
+
+        deliverOne(future);
+
+        recycle(future);
+    }
+
+    /**
+     * Releases the permits of all given finished {@link java.util.concurrent.Future} objects in one call and invokes
+     * the {@link smile.tasks.ResultHandler}. If the handler is a {@link smile.tasks.BatchResultHandler} it's called
+     * once for all results and once for all exceptions.
+     * In ordered mode all results which are next in submit order are delivered instead.
+     * This should only be called on owner thread.
+     *
+     * @param futures finished futures, the list is not modified
+     */
+    protected void handleFutures(List<Future<T>> futures) {
+
+        if (isOrdered()) {
+            deliverInOrder();
+            return;
+        }
+
+        if (futures.isEmpty()) {
+            return;
+        }
+
+        getSemaphore().release(futures.size());
+
+        for (int i = 0; i < futures.size(); i++) {
+            releaseWeight(futures.get(i));
+        }
+
+        deliverAll(futures);
+
+        for (int i = 0; i < futures.size(); i++) {
+            recycle(futures.get(i));
+        }
+    }
+
+    /**
+     * Called on owner thread after the result of the given future is handled, the queue doesn't use the future
+     * anymore. Implementations can reuse it for a later submit. Not called in ordered mode.
+     *
+     * @param future a handled future
+     */
+    protected void recycle(Future<T> future) {
+    }
+
+    /**
+     * Delivers the finished futures at the head of the reorder buffer and releases their permits.
+     * A finished future can be delivered before its own completion is received, the completion is ignored then.
+     */
+    private void deliverInOrder() {
+
+        if (getResultHandler() instanceof BatchResultHandler) {
+
+            while (!reorderBuffer.isEmpty() && reorderBuffer.peekFirst().isDone()) {
+                inOrder.add(reorderBuffer.pollFirst());
+            }
+
+            if (inOrder.isEmpty()) {
+                return;
+            }
+
+            getSemaphore().release(inOrder.size());
+
+            for (int i = 0; i < inOrder.size(); i++) {
+                releaseWeight(inOrder.get(i));
+            }
+
+            try {
+                deliverAll(inOrder);
+            } finally {
+                inOrder.clear();
+            }
+
+        } else {
+
+            while (!reorderBuffer.isEmpty() && reorderBuffer.peekFirst().isDone()) {
+
+                getSemaphore().release();
+
+                Future<T> future = reorderBuffer.pollFirst();
+
+                releaseWeight(future);
+
+                deliverOne(future);
+            }
+        }
+    }
+
+    /**
+     * Calls {@link #deliver(java.util.concurrent.Future)}, reports the future to the probe and records it in the journal.
+     *
+     * @param future a finished future, the permit is already released
+     */
+    private void deliverOne(Future<T> future) {
+
+        TaskQueueProbe p = probe;
+
+        if (p == null) {
+            deliver(future);
+        } else if (future instanceof TimedTask && ((TimedTask) future).isTimed()) {
+            long start = System.nanoTime();
+            deliver(future);
+            p.onResultsHandled(1, System.nanoTime() - start);
+            record(p, future);
+        } else {
+            deliver(future);
+            record(p, future);
+        }
+
+        journal(future);
+    }
+
+    /**
+     * Invokes the {@link smile.tasks.ResultHandler} for the given finished futures, the permits are already released.
+     *
+     * @param futures finished futures
+     */
+    @SuppressWarnings("unchecked")
+    private void deliverAll(List<Future<T>> futures) {
+
+        TaskQueueProbe p = probe;
+
+        boolean timed = p != null && p.isEnabled();
+
+        long start = timed ? System.nanoTime() : 0;
+
+        if (getResultHandler() instanceof BatchResultHandler) {
+
+            BatchResultHandler<T> handler = (BatchResultHandler<T>) getResultHandler();
+
+            List<T> results = new ArrayList<T>(futures.size());
+            List<Exception> exceptions = null;
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(getResult(futures.get(i)));
+                } catch (Exception e) {
+                    if (exceptions == null) {
+                        exceptions = new ArrayList<Exception>();
+                    }
+                    exceptions.add(e);
+                }
+            }
+
+            if (!results.isEmpty()) {
+                handler.onResults(results);
+            }
+
+            if (exceptions != null) {
+                handler.onExceptions(exceptions);
+            }
+
+        } else {
+
+            for (int i = 0; i < futures.size(); i++) {
+                deliver(futures.get(i));
+            }
+        }
+
+        if (timed) {
+            p.onResultsHandled(futures.size(), System.nanoTime() - start);
+        }
+
+        if (p != null) {
+            for (int i = 0; i < futures.size(); i++) {
+                record(p, futures.get(i));
+            }
+        }
+
+        if (!journaled.isEmpty()) {
+            for (int i = 0; i < futures.size(); i++) {
+                journal(futures.get(i));
+            }
+        }
+    }
+
+    /**
+     * Records the outcome of a delivered future of {@link #submitOnce(long, java.util.concurrent.Callable)} in the journal.
+     *
+     * @param future a delivered future
+     */
+    private void journal(Future<T> future) {
+
+        if (journaled.isEmpty()) {
+            return;
+        }
+
+        Long id = journaled.remove(future);
+
+        if (id == null) {
+            return;
+        }
+
+        TaskJournal journal = getJournal();
+
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            future.get();
+            journal.completed(id);
+        } catch (Exception e) {
+            journal.failed(id);
+        }
+    }
+
+    /**
+     * Invokes the {@link smile.tasks.ResultHandler} with the result or the exception of the given future,
+     * the permit is already released.
+     *
+     * @param future a finished future
+     */
+    protected void deliver(Future<T> future) {
+        try {
+            T result = getResult(future);
+            getResultHandler().onResult(result);
+        } catch (Exception e) {
+            getResultHandler().onException(e);
+        }
+    }
+
+    /**
+     * @param future a finished future
+     * @return the result of the given future
+     * @throws java.util.concurrent.TimeoutException if the future was cancelled by its deadline
+     * ( see {@link #submit(java.util.concurrent.Callable, long, java.util.concurrent.TimeUnit)} )
+     * @throws Exception the exception of {@link java.util.concurrent.Future#get()}
+     */
+    protected T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            if (!timedOut.isEmpty() && timedOut.remove(future)) {
+                throw new TimeoutException("task cancelled by its deadline.");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Shutdown this queue and skip all unfinished {@link java.util.concurrent.Callable}.
+     * The queue can't be open again.
+     */
+    public void cancel() {
+
+        List<Runnable> list = new ArrayList<Runnable>();
+
+        for( Runnable unstarted : getWorkerPool().shutdownNow() ) {
+            if( unstarted instanceof ParallelMap.Range ) {
+                // a range holds no permit, the waiting parallelMap fails
+                ( (ParallelMap<?, ?>.Range) unstarted ).cancel();
+            } else if( !( unstarted instanceof TaskLanes.Lane ) ) {
+                // a scheduled lane holds no permit, its tasks are returned by lanes.clear()
+                list.add( unstarted );
+            }
+        }
+
+        // the unstarted tasks of the lanes
+        list.addAll( lanes.clear() );
+
+        timedOut.clear();
+
+        journaled.clear();
+
+        getSemaphore().release( list.size() );
+
+        for( Runnable unstarted : list ) {
+            releaseWeight( unstarted );
+        }
+
+        TaskQueueProbe p = probe;
+        if( p != null && !list.isEmpty() ) {
+            p.onCancelled( list.size() );
+        }
+
+        if( canHandleResult() ) {
+            unregister();
+        }
+
+        if( isOrdered() ) {
+            // the unstarted tasks will never finish, they must not block the reorder buffer
+            Set<Object> unstarted = Collections.newSetFromMap( new IdentityHashMap<Object, Boolean>() );
+            unstarted.addAll( list );
+            for( Iterator<Future<T>> i = reorderBuffer.iterator(); i.hasNext(); ) {
+                if( unstarted.contains( i.next() ) ) {
+                    i.remove();
+                }
+            }
+        }
 
         // TODO is this a good solution ?
         for( int i=0; i<list.size(); i++ ) {
@@ -224,7 +1714,7 @@ public abstract class AbstractTaskQueue<T> {
         sb.append("name: \"").append(getName()).append("\", ");
         sb.append("capacity: ").append(getCapacity()).append(", ");
         sb.append("workers: ").append(getThreads()).append(", ");
-        sb.append("length: ").append(getCapacity() - getSemaphore().availablePermits());
+        sb.append("length: ").append(getLength());
         return sb.append(" ]").toString();
     }
 
@@ -0,0 +1,199 @@
+package smile.tasks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive concurrency limit for {@link smile.tasks.AbstractTaskQueue}, see
+ * {@link smile.tasks.AbstractTaskQueue#setAdaptiveLimit(AdaptiveLimit)}.
+ *
+ * The workers measure the execution time of each task. The owner thread compares the average execution time of the
+ * last window ( short latency ) with a slowly moving average ( long latency ), like a gradient limit:
+ * if tasks get slower, e.g. because a database is under load, the limit is reduced proportionally; if they are as
+ * fast as usual the limit grows by the square root of the limit. The limit is not raised while less than half of
+ * it is used.
+ *
+ * @author Andre Kullmann
+ */
+public class AdaptiveLimit {
+
+    /**
+     * Weight of a new short latency in the long latency average.
+     */
+    private static final double LONG_WINDOW = 1.0 / 600;
+
+    /**
+     * Weight of a new limit.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * Minimal duration of a sample window.
+     */
+    private static final long MIN_WINDOW_NANOS = 10000000L;
+
+    /**
+     * Maximal duration of a sample window.
+     */
+    private static final long MAX_WINDOW_NANOS = 1000000000L;
+
+    private final int minLimit;
+
+    private final double tolerance;
+
+    private final AtomicLong sampleNanos = new AtomicLong();
+
+    private final AtomicLong sampleCount = new AtomicLong();
+
+    // the following fields are only accessed by the owner thread
+
+    private long windowStart = System.nanoTime();
+
+    private double limit = -1;
+
+    private double longLatency = -1;
+
+    private volatile double shortLatency = -1;
+
+    private volatile double throughput = 0;
+
+    public AdaptiveLimit() {
+        this(1, 1.5);
+    }
+
+    /**
+     * @param minLimit the limit is never reduced below this value
+     * @param tolerance how much slower than usual tasks can get before the limit is reduced, e.g. 1.5 means 50% slower.
+     */
+    public AdaptiveLimit(int minLimit, double tolerance) {
+
+        if (minLimit < 1) {
+            throw new IllegalArgumentException("minLimit: " + minLimit);
+        }
+
+        if (tolerance < 1) {
+            throw new IllegalArgumentException("tolerance: " + tolerance);
+        }
+
+        this.minLimit  = minLimit;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return {@link #minLimit}
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * @return average execution time in nanoseconds of the last window, -1 if no window is finished
+     */
+    public double getLatencyNanos() {
+        return shortLatency;
+    }
+
+    /**
+     * @return finished tasks per second of the last window
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Wraps the given callable, the wrapper measures the execution time.
+     *
+     * @param callable to be execute
+     * @param <V> result type
+     * @return a callable which measures the execution time of the given callable
+     */
+    /*package private*/ <V> Callable<V> timed(final Callable<V> callable) {
+
+        return new Callable<V>() {
+
+            @Override
+            public V call() throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return callable.call();
+                } finally {
+                    sampleNanos.addAndGet(System.nanoTime() - start);
+                    sampleCount.incrementAndGet();
+                }
+            }
+        };
+    }
+
+    /**
+     * Called by the owner thread. If the current sample window is complete a new limit is calculated.
+     *
+     * @param currentLimit the current limit
+     * @param maxLimit the limit is never raised above this value
+     * @param inFlight count of submitted but not handled tasks
+     * @return the new limit, maybe equals to the current limit
+     */
+    /*package private*/ int update(int currentLimit, int maxLimit, int inFlight) {
+
+        long now     = System.nanoTime();
+        long elapsed = now - windowStart;
+        long count   = sampleCount.get();
+
+        if (count == 0 || elapsed < MIN_WINDOW_NANOS || (count < currentLimit && elapsed < MAX_WINDOW_NANOS)) {
+            return currentLimit;
+        }
+
+        long nanos = sampleNanos.getAndSet(0);
+        count      = sampleCount.getAndSet(0);
+        windowStart = now;
+
+        if (count == 0) {
+            return currentLimit;
+        }
+
+        if (limit < 0) {
+            limit = currentLimit;
+        }
+
+        double latency = (double) nanos / count;
+
+        shortLatency = latency;
+        throughput   = count * 1e9 / elapsed;
+
+        if (longLatency < 0) {
+            longLatency = latency;
+        } else {
+            longLatency = longLatency * (1 - LONG_WINDOW) + latency * LONG_WINDOW;
+        }
+
+        // the load is gone, recover faster than the long window allows
+        if (longLatency / latency > 2) {
+            longLatency = longLatency * 0.95;
+        }
+
+        // the limit is not used, so the measurement says nothing about a higher limit
+        if (inFlight < limit / 2) {
+            return currentLimit;
+        }
+
+        double gradient  = Math.max(0.5, Math.min(1.0, tolerance * longLatency / latency));
+        double queueSize = Math.sqrt(limit);
+        double newLimit  = limit * gradient + queueSize;
+
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+
+        limit = newLimit;
+
+        return (int) newLimit;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[ class: ").append(getClass().getSimpleName()).append(", ");
+        sb.append("limit: ").append((int) limit).append(", ");
+        sb.append("latency: ").append((long) shortLatency).append(" ns, ");
+        sb.append("throughput: ").append((long) throughput).append("/s");
+        return sb.append(" ]").toString();
+    }
+}
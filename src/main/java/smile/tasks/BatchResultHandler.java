@@ -0,0 +1,26 @@
+package smile.tasks;
+
+import java.util.List;
+
+/**
+ * Optional extension of {@link smile.tasks.ResultHandler}. If the queue's result handler implements this interface,
+ * all results which are available on one wakeup of the owner thread are handed over in one call. So a handler which
+ * writes rows to a file or a database can do one write per batch instead of one per task.
+ *
+ * The per result methods of {@link smile.tasks.ResultHandler} are not called by the queue implementations which
+ * support batches. Within one batch first the results and then the exceptions are handed over.
+ *
+ * @author Andre Kullmann
+ */
+public interface BatchResultHandler<T> extends ResultHandler<T> {
+
+    /**
+     * @param results never empty, in completion order
+     */
+    public void onResults( List<T> results );
+
+    /**
+     * @param exceptions never empty, in completion order
+     */
+    public void onExceptions( List<Exception> exceptions );
+}
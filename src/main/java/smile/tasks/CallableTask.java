@@ -0,0 +1,35 @@
+package smile.tasks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.RunnableFuture;
+
+/**
+ * The task which a queue hands to its worker pool. Besides running it in the current thread, an
+ * {@link java.util.concurrent.ExecutorService} can take the {@link java.util.concurrent.Callable} and execute it
+ * somewhere else, e.g. on another server, and complete the task with the result.
+ *
+ * @see smile.tasks.remote.RemoteExecutorService
+ *
+ * @author Andre Kullmann
+ */
+public interface CallableTask<V> extends RunnableFuture<V> {
+
+    /**
+     * @return the submitted callable, maybe wrapped by the queue
+     */
+    public Callable<V> getCallable();
+
+    /**
+     * Completes the task with the given result, ignored if the task is already done.
+     *
+     * @param result the result of {@link #getCallable()}
+     */
+    public void complete( V result );
+
+    /**
+     * Completes the task with the given exception, ignored if the task is already done.
+     *
+     * @param cause the exception thrown by {@link #getCallable()} or the transport
+     */
+    public void completeExceptionally( Throwable cause );
+}
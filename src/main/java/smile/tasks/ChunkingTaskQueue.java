@@ -0,0 +1,341 @@
+package smile.tasks;
+
+import smile.threads.WaitStrategy;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A task queue for tiny tasks, which take only a few microseconds. For such tasks the cost of a submit ( permit,
+ * worker queue, result queue ) is greater than the work. This queue groups the submitted
+ * {@link java.util.concurrent.Callable} objects into chunks, each chunk is executed as one task by a
+ * {@link smile.tasks.SimpleTaskQueue} and returns the results of all its callables as one result to the owner
+ * thread. The {@link smile.tasks.ResultHandler} still gets each result and each exception one by one, on the owner
+ * thread, in submit order within a chunk.
+ *
+ * The chunk size adapts to the tasks: the workers measure the execution time of each chunk, and the chunk size is
+ * chosen so a chunk takes about the target chunk time, between 1 and the max chunk size.
+ *
+ * A chunk is only submitted if it's full, so a chunk which is not full waits for {@link #flush()} or
+ * {@link #await()}. The chunks are reused, so in the steady state the queue allocates nothing per task.
+ * Like the other queues it must only be used by the owner thread.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <T> The result type of the submitted {@link java.util.concurrent.Callable} objects.
+ */
+public class ChunkingTaskQueue<T> {
+
+    /**
+     * Weight of the last chunk in the average execution time of a task.
+     */
+    private static final double SMOOTHING = 0.25;
+
+    /**
+     * Callables which are executed one after the other by one worker.
+     */
+    /*package private*/ static class Chunk<T> implements Callable<Chunk<T>> {
+
+        private Callable<T>[] callables;
+
+        /**
+         * The result or the exception of each callable.
+         */
+        private Object[] results;
+
+        private boolean[] failed;
+
+        private int size = 0;
+
+        /**
+         * Written by the worker.
+         */
+        private long executionNanos;
+
+        @SuppressWarnings("unchecked")
+        private Chunk(int capacity) {
+            this.callables = (Callable<T>[]) new Callable<?>[capacity];
+            this.results   = new Object[capacity];
+            this.failed    = new boolean[capacity];
+        }
+
+        private void add(Callable<T> callable) {
+            if (size == callables.length) {
+                int capacity = size * 2;
+                callables = Arrays.copyOf(callables, capacity);
+                results   = Arrays.copyOf(results, capacity);
+                failed    = Arrays.copyOf(failed, capacity);
+            }
+            callables[size++] = callable;
+        }
+
+        @Override
+        public Chunk<T> call() throws Exception {
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < size; i++) {
+                try {
+                    results[i] = callables[i].call();
+                } catch (Exception e) {
+                    results[i] = e;
+                    failed[i]  = true;
+                }
+            }
+
+            executionNanos = System.nanoTime() - start;
+
+            return this;
+        }
+
+        /**
+         * Drops the callables and the results, so the chunk can be reused.
+         */
+        private void clear() {
+            Arrays.fill(callables, 0, size, null);
+            Arrays.fill(results, 0, size, null);
+            Arrays.fill(failed, 0, size, false);
+            size = 0;
+        }
+    }
+
+    /**
+     * Passes the results of a chunk one by one to the {@link #resultHandler} and adapts the chunk size.
+     */
+    private class ChunkResultHandler implements ResultHandler<Chunk<T>> {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onResult(Chunk<T> chunk) {
+
+            adapt(chunk);
+
+            try {
+                for (int i = 0; i < chunk.size; i++) {
+                    if (chunk.failed[i]) {
+                        resultHandler.onException((Exception) chunk.results[i]);
+                    } else {
+                        resultHandler.onResult((T) chunk.results[i]);
+                    }
+                }
+            } finally {
+                chunk.clear();
+                free.push(chunk);
+            }
+        }
+
+        /**
+         * The whole chunk failed, e.g. with an {@link java.lang.Error}.
+         */
+        @Override
+        public void onException(Exception e) {
+            resultHandler.onException(e);
+        }
+    }
+
+    private final SimpleTaskQueue<Chunk<T>> queue;
+
+    private final ResultHandler<T> resultHandler;
+
+    private final long targetChunkNanos;
+
+    private final int maxChunkSize;
+
+    // the following fields are only accessed by the owner thread
+
+    /**
+     * The handled chunks for reuse.
+     */
+    private final ArrayDeque<Chunk<T>> free = new ArrayDeque<Chunk<T>>();
+
+    /**
+     * The chunk which gets the next callables, null if no callable is submitted since the last chunk was submitted.
+     */
+    private Chunk<T> current;
+
+    private int chunkSize = 1;
+
+    /**
+     * Average execution time of one callable, -1 until the first chunk is handled.
+     */
+    private double taskNanos = -1;
+
+    public ChunkingTaskQueue(
+            int capacity,
+            int threads,
+            ResultHandler<T> resultHandler) {
+        this("Smile Queue", capacity, threads, resultHandler);
+    }
+
+    public ChunkingTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            ResultHandler<T> resultHandler) {
+        this(name, capacity, threads, 100, TimeUnit.MICROSECONDS, 1024, resultHandler);
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity count of chunks in flight, e.g. a few per thread
+     * @param threads count of worker threads
+     * @param targetChunkTime the chunk size is adapted so a chunk takes about this time
+     * @param unit the unit of targetChunkTime
+     * @param maxChunkSize the max count of callables in a chunk
+     * @param resultHandler will be called for each result or exception.
+     */
+    public ChunkingTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            long targetChunkTime,
+            TimeUnit unit,
+            int maxChunkSize,
+            ResultHandler<T> resultHandler) {
+
+        if (maxChunkSize < 1) {
+            throw new IllegalArgumentException("maxChunkSize must be greater than zero: " + maxChunkSize);
+        }
+
+        this.resultHandler    = resultHandler;
+        this.targetChunkNanos = unit.toNanos(targetChunkTime);
+        this.maxChunkSize     = maxChunkSize;
+        this.queue            = new SimpleTaskQueue<Chunk<T>>(name, capacity, threads, WaitStrategy.PARK, true, new ChunkResultHandler());
+    }
+
+    /**
+     * @return the queue which executes the chunks, e.g. for {@link smile.tasks.AbstractTaskQueue#enableMetrics()}
+     */
+    public AbstractTaskQueue<?> getQueue() {
+        return queue;
+    }
+
+    public String getName() {
+        return queue.getName();
+    }
+
+    /**
+     * @return {@link #resultHandler}
+     */
+    public ResultHandler<T> getResultHandler() {
+        return resultHandler;
+    }
+
+    /**
+     * @return {@link #chunkSize}, the count of callables of the next chunk
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return {@link #maxChunkSize}
+     */
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    /**
+     * @return {@link #taskNanos}, the average execution time of one callable, -1 if no chunk is handled yet
+     */
+    public double getTaskNanos() {
+        return taskNanos;
+    }
+
+    /**
+     * Adds the given callable to the current chunk, a full chunk is submitted.
+     *
+     * @param callable to be execute
+     * @return this
+     * @throws java.util.concurrent.RejectedExecutionException
+     */
+    public ChunkingTaskQueue<T> submit(Callable<T> callable) {
+
+        queue.checkCanHandleResult();
+
+        if (current == null) {
+            current = free.isEmpty() ? new Chunk<T>(chunkSize) : free.pop();
+        }
+
+        current.add(callable);
+
+        if (current.size >= chunkSize) {
+            flush();
+        }
+
+        return this;
+    }
+
+    /**
+     * Submits the current chunk, even if it's not full.
+     *
+     * @return this
+     */
+    public ChunkingTaskQueue<T> flush() {
+
+        queue.checkCanHandleResult();
+
+        Chunk<T> chunk = current;
+
+        if (chunk != null && chunk.size > 0) {
+            // the submit can handle results, which must not see the chunk as current
+            current = null;
+            queue.submit(chunk);
+        }
+
+        return this;
+    }
+
+    /**
+     * Called on owner thread, updates the average execution time of a callable and the chunk size.
+     *
+     * @param chunk a finished chunk
+     */
+    private void adapt(Chunk<T> chunk) {
+
+        if (chunk.size == 0) {
+            return;
+        }
+
+        double nanos = (double) chunk.executionNanos / chunk.size;
+
+        taskNanos = taskNanos < 0 ? nanos : taskNanos + (nanos - taskNanos) * SMOOTHING;
+
+        chunkSize = (int) Math.max(1, Math.min(maxChunkSize, targetChunkNanos / Math.max(taskNanos, 1)));
+    }
+
+    /**
+     * Submits the current chunk and waits until all submitted callables are executed and their results are handled.
+     * The queue can be used again afterwards.
+     *
+     * @return this
+     */
+    public ChunkingTaskQueue<T> await() {
+
+        flush();
+
+        queue.await();
+
+        // the simple queue is closed by await
+        queue.open();
+
+        return this;
+    }
+
+    /**
+     * Shutdown this queue and skip all unfinished callables, the callables of the current chunk are dropped.
+     */
+    public void cancel() {
+
+        current = null;
+
+        queue.cancel();
+    }
+
+    @Override
+    public String toString() {
+        return "[ class: " + getClass().getSimpleName() + ", name: " + getName() + ", chunkSize: " + chunkSize + ", taskNanos: " + (long) taskNanos + " ]";
+    }
+}
@@ -0,0 +1,69 @@
+package smile.tasks;
+
+import smile.tasks.remote.DirectoryExecutorService;
+import smile.threads.MpscRingBuffer;
+import smile.threads.WaitStrategy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This implementation of {@link smile.tasks.AbstractTaskQueue} shares one backlog with other jvm processes on the same
+ * host through a directory ( see {@link smile.tasks.remote.DirectoryExecutorService} ). The worker threads of each
+ * queue on the directory execute the tasks of all queues, the results go back to the queue which submitted the task.
+ * The callables and their results must be {@link java.io.Serializable}.
+ *
+ * If a process crashes, one of the others puts its claimed tasks back into the backlog.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <T> The result type of the submitted {@link java.util.concurrent.Callable} objects.
+ */
+public class DirectoryTaskQueue<T> extends AbstractRingBufferTaskQueue<T> {
+
+    public DirectoryTaskQueue(
+            int capacity,
+            File directory,
+            int threads,
+            ResultHandler<T> resultHandler) throws IOException {
+
+        this( "Smile Directory Queue", capacity, directory, threads, 10, TimeUnit.SECONDS, resultHandler );
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param directory the shared directory
+     * @param threads count of worker threads in this process, 0 if this process only submits tasks
+     * @param staleTimeout a process without heartbeat for this time is treated as crashed
+     * @param unit the unit of staleTimeout
+     * @param resultHandler will be called for each result or exception.
+     * @throws IOException if the directory can't be used
+     */
+    public DirectoryTaskQueue(
+            String name,
+            int capacity,
+            File directory,
+            int threads,
+            long staleTimeout,
+            TimeUnit unit,
+            ResultHandler<T> resultHandler) throws IOException {
+
+        super(name,
+                capacity,
+                Math.max( 1, threads ),
+                new DirectoryExecutorService( directory, threads, staleTimeout, unit ),
+                new MpscRingBuffer<Future<T>>( capacity, WaitStrategy.PARK ),
+                resultHandler);
+    }
+
+    /**
+     * @return {@link smile.tasks.AbstractTaskQueue#getWorkerPool()}
+     */
+    @Override
+    public DirectoryExecutorService getWorkerPool() {
+        return (DirectoryExecutorService) super.getWorkerPool();
+    }
+}
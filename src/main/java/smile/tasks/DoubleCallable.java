@@ -0,0 +1,24 @@
+package smile.tasks;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A {@link java.util.concurrent.Callable} with a primitive double result. Submitted to a
+ * {@link smile.tasks.DoubleTaskQueue} the result is passed to {@link smile.tasks.DoubleResultHandler#onResult(double)}
+ * without boxing. Other queues call {@link #call()}, which boxes the result.
+ *
+ * @author Andre Kullmann
+ */
+public abstract class DoubleCallable implements Callable<Double> {
+
+    /**
+     * @return the result
+     * @throws Exception if unable to compute a result
+     */
+    public abstract double callDouble() throws Exception;
+
+    @Override
+    public final Double call() throws Exception {
+        return callDouble();
+    }
+}
@@ -0,0 +1,13 @@
+package smile.tasks;
+
+/**
+ * The counterpart of {@link smile.tasks.ResultHandler} for a {@link smile.tasks.DoubleTaskQueue}.
+ *
+ * @author Andre Kullmann
+ */
+public interface DoubleResultHandler {
+
+    public void onResult( double result );
+
+    public void onException( Exception e );
+}
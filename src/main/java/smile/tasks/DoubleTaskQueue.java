@@ -0,0 +1,100 @@
+package smile.tasks;
+
+import smile.threads.WaitStrategy;
+
+import java.util.concurrent.Future;
+
+/**
+ * A {@link smile.tasks.SimpleTaskQueue} for tasks with a double result, e.g. sums or scores. The result of a submitted
+ * {@link smile.tasks.DoubleCallable} is kept in a primitive slot of its future and passed to
+ * {@link smile.tasks.DoubleResultHandler#onResult(double)}, so it's never boxed. The futures are recycled ( see
+ * {@link smile.tasks.SimpleTaskQueue#SimpleTaskQueue(String, int, int, smile.threads.WaitStrategy, boolean, ResultHandler)} ),
+ * so the submit to result path allocates nothing in the steady state.
+ *
+ * Any other {@link java.util.concurrent.Callable} of Double can be submitted too, e.g. if it's wrapped by a deadline or
+ * the adaptive limit, its result is unboxed before it's passed to the handler.
+ *
+ * @author Andre Kullmann
+ */
+public class DoubleTaskQueue extends SimpleTaskQueue<Double> {
+
+    /**
+     * Unboxes the results which don't come from a primitive slot.
+     */
+    private static class UnboxingResultHandler implements ResultHandler<Double> {
+
+        private final DoubleResultHandler handler;
+
+        private UnboxingResultHandler(DoubleResultHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onResult(Double result) {
+            handler.onResult(result);
+        }
+
+        @Override
+        public void onException(Exception e) {
+            handler.onException(e);
+        }
+    }
+
+    private final DoubleResultHandler doubleResultHandler;
+
+    public DoubleTaskQueue(
+            int capacity,
+            int threads,
+            DoubleResultHandler resultHandler) {
+        this("Smile Queue", capacity, threads, resultHandler);
+    }
+
+    public DoubleTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            DoubleResultHandler resultHandler) {
+        this(name, capacity, threads, WaitStrategy.PARK, resultHandler);
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param threads count of worker threads
+     * @param waitStrategy how the owner thread waits in {@link #awaitOneResult()}
+     * @param resultHandler will be called for each result or exception.
+     */
+    public DoubleTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            WaitStrategy waitStrategy,
+            DoubleResultHandler resultHandler) {
+
+        super(name, capacity, threads, waitStrategy, true, new UnboxingResultHandler(resultHandler));
+
+        this.doubleResultHandler = resultHandler;
+    }
+
+    /**
+     * @return {@link #doubleResultHandler}
+     */
+    public DoubleResultHandler getDoubleResultHandler() {
+        return doubleResultHandler;
+    }
+
+    /**
+     * Passes the result of a {@link smile.tasks.DoubleCallable} without boxing, all other futures are delivered by
+     * {@link smile.tasks.AbstractTaskQueue#deliver(java.util.concurrent.Future)}.
+     *
+     * @param future a finished future
+     */
+    @Override
+    protected void deliver(Future<Double> future) {
+        if (future instanceof RecyclableFuture && ((RecyclableFuture<Double>) future).isDouble()) {
+            doubleResultHandler.onResult(((RecyclableFuture<Double>) future).getDouble());
+        } else {
+            super.deliver(future);
+        }
+    }
+}
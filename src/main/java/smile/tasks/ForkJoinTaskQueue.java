@@ -0,0 +1,254 @@
+package smile.tasks;
+
+import smile.threads.MpscRingBuffer;
+import smile.threads.WaitStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implementation of {@link smile.tasks.AbstractTaskQueue} on a work-stealing {@link java.util.concurrent.ForkJoinPool}.
+ * Each worker has its own deque, so there is no single work queue all workers contend on.
+ *
+ * The submitted {@link java.util.concurrent.Callable} objects run on a {@link java.util.concurrent.ForkJoinWorkerThread},
+ * so they can fork subtasks ( {@link java.util.concurrent.ForkJoinTask#fork()}, {@link java.util.concurrent.RecursiveTask} )
+ * which are stolen by idle workers. Subtasks don't take a permit of the queue, only the submitted callable does.
+ * So a full queue never blocks a subtask and a task can always join its subtasks.
+ * If {@link #submit(java.util.concurrent.Callable)} is called on a worker thread of this queue and the queue is full,
+ * the worker blocks with {@link java.util.concurrent.ForkJoinPool#managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)},
+ * so the pool can activate a spare worker meanwhile.
+ *
+ * The {@link smile.tasks.ResultHandler} is invoked on the owner thread, like with {@link smile.tasks.SimpleTaskQueue}.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <T> The result type of the submitted {@link java.util.concurrent.Callable} objects.
+ */
+public class ForkJoinTaskQueue<T> extends AbstractRingBufferTaskQueue<T> {
+
+    public ForkJoinTaskQueue(
+            int capacity,
+            int threads,
+            ResultHandler<T> resultHandler) {
+        this("Smile Queue", capacity, threads, resultHandler);
+    }
+
+    public ForkJoinTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            ResultHandler<T> resultHandler) {
+        this(name, capacity, threads, WaitStrategy.PARK, resultHandler);
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param threads parallelism of the {@link java.util.concurrent.ForkJoinPool}
+     * @param waitStrategy how the owner thread waits in {@link #awaitOneResult()}
+     * @param resultHandler will be called for each result or exception.
+     */
+    public ForkJoinTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            WaitStrategy waitStrategy,
+            ResultHandler<T> resultHandler) {
+
+        super(name,
+                capacity,
+                threads,
+                new TaskQueueForkJoinPool(threads, name),
+                new MpscRingBuffer<Future<T>>(capacity, waitStrategy),
+                resultHandler);
+    }
+
+    @Override
+    public TaskQueueForkJoinPool getWorkerPool() {
+        return (TaskQueueForkJoinPool) super.getWorkerPool();
+    }
+
+    /**
+     * @return true if {@link Thread#currentThread()} is a worker of this queue.
+     */
+    private boolean isWorkerThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ForkJoinWorkerThread
+                && ((ForkJoinWorkerThread) thread).getPool() == getWorkerPool();
+    }
+
+    /**
+     * Submits the given {@link java.util.concurrent.ForkJoinTask}, it's invoked on a worker thread and its result is
+     * handled like the result of a {@link java.util.concurrent.Callable}.
+     *
+     * @param task to be execute
+     * @return the future of the task
+     * @see #submit(java.util.concurrent.Callable)
+     */
+    public Future<T> submit(final ForkJoinTask<T> task) {
+
+        return submit(new Callable<T>() {
+
+            @Override
+            public T call() throws Exception {
+                return task.invoke();
+            }
+        });
+    }
+
+    /**
+     * On a worker thread of this queue the semaphore is acquired as managed block, so the pool can compensate the
+     * blocked worker.
+     */
+    @Override
+    protected void acquire() throws InterruptedException {
+
+        if (!isWorkerThread()) {
+            super.acquire();
+            return;
+        }
+
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+            private boolean acquired = false;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!acquired) {
+                    getSemaphore().acquire();
+                    acquired = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (!acquired) {
+                    acquired = getSemaphore().tryAcquire();
+                }
+                return acquired;
+            }
+        });
+    }
+
+    @Override
+    protected Future<T> execute(Callable<T> callable) {
+
+        RunnableFuture<T> future = newTaskFor(callable);
+
+        getWorkerPool().execute(future);
+
+        return future;
+    }
+
+    /**
+     * Runs a {@link java.lang.Runnable} as {@link java.util.concurrent.ForkJoinTask}, e.g. a task of
+     * {@link #newTaskFor(java.util.concurrent.Callable)}, a lane or a range of a parallel map, so it can be unwrapped
+     * again by {@link smile.tasks.ForkJoinTaskQueue.TaskQueueForkJoinPool#shutdownNow()}.
+     *
+     * @author Andre Kullmann
+     */
+    private static final class TaskAdapter extends ForkJoinTask<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Runnable task;
+
+        private TaskAdapter(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public Void getRawResult() {
+            return null;
+        }
+
+        @Override
+        protected void setRawResult(Void value) {
+        }
+
+        @Override
+        protected boolean exec() {
+            task.run();
+            return true;
+        }
+    }
+
+    /**
+     * {@link java.util.concurrent.ForkJoinPool} with named daemon workers. {@link #shutdownNow()} returns the
+     * submitted but not started tasks like {@link java.util.concurrent.ThreadPoolExecutor#shutdownNow()} does,
+     * so {@link smile.tasks.AbstractTaskQueue#cancel()} can release their permits.
+     *
+     * @author Andre Kullmann
+     */
+    public static class TaskQueueForkJoinPool extends ForkJoinPool {
+
+        public TaskQueueForkJoinPool(int threads, final String name) {
+
+            super(threads, new ForkJoinWorkerThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger(1);
+
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                    };
+                    thread.setName(name + "-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+
+            }, null, false);
+        }
+
+        /**
+         * Each {@link java.lang.Runnable} is wrapped in a {@link smile.tasks.ForkJoinTaskQueue.TaskAdapter}, so
+         * {@link #shutdownNow()} can return it.
+         *
+         * @param task to be execute
+         */
+        @Override
+        public void execute(Runnable task) {
+            if (task instanceof ForkJoinTask) {
+                execute((ForkJoinTask<?>) task);
+            } else {
+                execute(new TaskAdapter(task));
+            }
+        }
+
+        /**
+         * Unstarted subtasks are cancelled, so tasks joining them will finish.
+         *
+         * @return the submitted tasks which are not started
+         */
+        @Override
+        public List<Runnable> shutdownNow() {
+
+            shutdown();
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            drainTasksTo(tasks);
+
+            List<Runnable> unstarted = new ArrayList<Runnable>();
+
+            for (ForkJoinTask<?> task : tasks) {
+                if (task instanceof TaskAdapter) {
+                    unstarted.add(((TaskAdapter) task).task);
+                } else {
+                    task.cancel(false);
+                }
+            }
+
+            super.shutdownNow();
+
+            return unstarted;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package smile.tasks;
+
+/**
+ * A function from A to B, see {@link smile.tasks.AbstractTaskQueue#parallelMap(java.util.List, Function)}.
+ * The counterpart of {@code java.util.function.Function}, which doesn't exist in Java 7.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <A> the type of the input
+ * @param <B> the type of the result
+ */
+public interface Function<A, B> {
+
+    /**
+     * Called on a worker thread.
+     *
+     * @param a the input
+     * @return the result
+     * @throws Exception if unable to compute a result
+     */
+    public B apply( A a ) throws Exception;
+}
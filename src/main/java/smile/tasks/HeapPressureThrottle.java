@@ -0,0 +1,376 @@
+package smile.tasks;
+
+import java.io.Closeable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Heap pressure throttle for {@link smile.tasks.AbstractTaskQueue}, see
+ * {@link smile.tasks.AbstractTaskQueue#setHeapPressureThrottle(HeapPressureThrottle)}.
+ *
+ * The occupancy is the heap usage after the last garbage collection of the tenured pools, the pools which support
+ * usage thresholds. It's checked after each garbage collection, and the collection usage threshold of each pool is
+ * set to the high water mark, so the jvm also reports when it's exceeded. If the occupancy reaches the high water
+ * mark the throttle is on until the occupancy falls below the low water mark.
+ *
+ * While the throttle is on, a queue handles finished results instead of submitting new tasks, so the memory of the
+ * results can be collected. If the heap doesn't recover, each submit waits at most the max pause, so admission is
+ * slowed down but never stopped. When the pause expires the current usage is checked too ( see {@link #recheck()} ),
+ * because with the slowed down admission the old generation may not be collected again for a long time.
+ *
+ * Each change is logged and passed to the {@link smile.tasks.HeapPressureThrottle.Listener} objects.
+ * One throttle can be shared by many queues.
+ *
+ * The collection usage thresholds are a setting of the whole jvm, so a throttle overwrites the thresholds of other
+ * throttles and of other code, e.g. a monitoring agent. {@link #close()} restores the thresholds the pools had before,
+ * so close several throttles in the reverse order of their creation.
+ *
+ * @author Andre Kullmann
+ */
+public class HeapPressureThrottle implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger( HeapPressureThrottle.class.getName() );
+
+    /**
+     * The notification type of {@code com.sun.management.GarbageCollectionNotificationInfo}.
+     */
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+    /**
+     * Gets each change of a {@link smile.tasks.HeapPressureThrottle}, e.g. to raise an alert.
+     * Called on the jvm notification thread.
+     */
+    public interface Listener {
+
+        /**
+         * @param occupancy the heap occupancy, between 0 and 1, which reached the high water mark
+         */
+        void onThrottle(double occupancy);
+
+        /**
+         * @param occupancy the heap occupancy, between 0 and 1, which fell below the low water mark
+         * @param throttledMillis how long the throttle was on
+         */
+        void onResume(double occupancy, long throttledMillis);
+    }
+
+    private final double highWaterMark;
+
+    private final double lowWaterMark;
+
+    private final long maxPauseNanos;
+
+    private final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+
+    /**
+     * The collection usage threshold of each of the {@link #pools} before this throttle set it, restored by
+     * {@link #close()}.
+     */
+    private final List<Long> previousThresholds = new ArrayList<Long>();
+
+    private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private final NotificationListener notificationListener = new NotificationListener() {
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            String type = notification.getType();
+            if (GC_NOTIFICATION.equals(type) || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+                check();
+            }
+        }
+    };
+
+    private volatile boolean throttled = false;
+
+    private volatile double occupancy = 0;
+
+    // the following fields are guarded by this
+
+    private long throttledSince;
+
+    private int throttleCount = 0;
+
+    private long throttledNanos = 0;
+
+    public HeapPressureThrottle() {
+        this(0.85, 0.70, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts to watch the heap.
+     *
+     * @param highWaterMark the throttle is switched on at this occupancy, e.g. 0.85
+     * @param lowWaterMark the throttle is switched off below this occupancy, e.g. 0.70
+     * @param maxPause how long a submit waits at most while the throttle is on
+     * @param unit the unit of maxPause
+     */
+    public HeapPressureThrottle(double highWaterMark, double lowWaterMark, long maxPause, TimeUnit unit) {
+        this(highWaterMark, lowWaterMark, maxPause, unit, true);
+    }
+
+    /**
+     * @param highWaterMark the throttle is switched on at this occupancy
+     * @param lowWaterMark the throttle is switched off below this occupancy
+     * @param maxPause how long a submit waits at most while the throttle is on
+     * @param unit the unit of maxPause
+     * @param watch false to neither set the thresholds nor listen to the garbage collections, e.g. for a test which
+     *              switches the throttle with {@link #update(double)}
+     */
+    /*package private*/ HeapPressureThrottle(double highWaterMark, double lowWaterMark, long maxPause, TimeUnit unit, boolean watch) {
+
+        if (highWaterMark <= 0 || highWaterMark > 1) {
+            throw new IllegalArgumentException("highWaterMark: " + highWaterMark);
+        }
+
+        if (lowWaterMark <= 0 || lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException("lowWaterMark: " + lowWaterMark);
+        }
+
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark  = lowWaterMark;
+        this.maxPauseNanos = unit.toNanos(maxPause);
+
+        if (!watch) {
+            return;
+        }
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && pool.isCollectionUsageThresholdSupported()) {
+                pools.add(pool);
+                previousThresholds.add(pool.getCollectionUsageThreshold());
+                long max = max(pool);
+                if (max > 0) {
+                    pool.setCollectionUsageThreshold((long) (max * highWaterMark));
+                }
+            }
+        }
+
+        Object memory = ManagementFactory.getMemoryMXBean();
+        if (memory instanceof NotificationEmitter) {
+            emitters.add((NotificationEmitter) memory);
+        }
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                emitters.add((NotificationEmitter) gc);
+            }
+        }
+
+        for (NotificationEmitter emitter : emitters) {
+            emitter.addNotificationListener(notificationListener, null, null);
+        }
+    }
+
+    /**
+     * @return the max size of the pool, or of the heap if the pool has no max size
+     */
+    private static long max(MemoryPoolMXBean pool) {
+        long max = pool.getUsage().getMax();
+        return max > 0 ? max : Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * @param listener gets each change of the throttle
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener a listener added by {@link #addListener(smile.tasks.HeapPressureThrottle.Listener)}
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return {@link #throttled}
+     */
+    public boolean isThrottled() {
+        return throttled;
+    }
+
+    /**
+     * @return the heap occupancy after the last garbage collection, between 0 and 1
+     */
+    public double getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * @return {@link #maxPauseNanos}
+     */
+    public long getMaxPauseNanos() {
+        return maxPauseNanos;
+    }
+
+    /**
+     * @return how often the throttle was switched on
+     */
+    public synchronized int getThrottleCount() {
+        return throttleCount;
+    }
+
+    /**
+     * @return how long the throttle was on in total, including the current period
+     */
+    public synchronized long getThrottledMillis() {
+        long nanos = throttledNanos;
+        if (throttled) {
+            nanos += System.nanoTime() - throttledSince;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Reads the collection usage of the tenured pools and switches the throttle. Called after each garbage
+     * collection, can be called at any time if the jvm doesn't send notifications.
+     */
+    public void check() {
+
+        double max = 0;
+
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) {
+                max = Math.max(max, (double) usage.getUsed() / max(pool));
+            }
+        }
+
+        update(max);
+    }
+
+    /**
+     * Switches the throttle off if the current usage of the tenured pools is below the low water mark. The current
+     * usage includes the garbage, so it's never lower than the usage after the next collection, and the throttle can
+     * be switched off without waiting for a collection. Called by a queue when the max pause of a submit expired.
+     */
+    public void recheck() {
+
+        if (!throttled) {
+            return;
+        }
+
+        double current = currentOccupancy();
+
+        if (current < lowWaterMark) {
+            update(current);
+        }
+    }
+
+    /**
+     * @return the current usage of the tenured pools, between 0 and 1
+     */
+    /*package private*/ double currentOccupancy() {
+
+        double max = 0;
+
+        for (MemoryPoolMXBean pool : pools) {
+            max = Math.max(max, (double) pool.getUsage().getUsed() / max(pool));
+        }
+
+        return max;
+    }
+
+    /**
+     * Switches the throttle on at the high water mark and off below the low water mark.
+     *
+     * @param occupancy the heap occupancy, between 0 and 1
+     */
+    /*package private*/ void update(double occupancy) {
+
+        boolean on  = false;
+        boolean off = false;
+        long nanos  = 0;
+
+        synchronized (this) {
+
+            this.occupancy = occupancy;
+
+            if (!throttled && occupancy >= highWaterMark) {
+                throttled      = true;
+                throttledSince = System.nanoTime();
+                throttleCount++;
+                on = true;
+            } else if (throttled && occupancy < lowWaterMark) {
+                throttled       = false;
+                nanos           = System.nanoTime() - throttledSince;
+                throttledNanos += nanos;
+                off = true;
+                notifyAll();
+            }
+        }
+
+        if (on) {
+            LOGGER.warning(String.format("heap occupancy %.0f%% reached the high water mark %.0f%%, task admission is throttled.", occupancy * 100, highWaterMark * 100));
+            for (Listener listener : listeners) {
+                listener.onThrottle(occupancy);
+            }
+        }
+
+        if (off) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            LOGGER.info(String.format("heap occupancy %.0f%% is below the low water mark %.0f%%, task admission resumed after %d ms.", occupancy * 100, lowWaterMark * 100, millis));
+            for (Listener listener : listeners) {
+                listener.onResume(occupancy, millis);
+            }
+        }
+    }
+
+    /**
+     * Waits while the throttle is on.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of timeout
+     * @return true if the throttle is off
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public synchronized boolean awaitRelief(long timeout, TimeUnit unit) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (long remaining = unit.toNanos(timeout); throttled && remaining > 0; remaining = deadline - System.nanoTime()) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        return !throttled;
+    }
+
+    /**
+     * Stops watching the heap and restores the collection usage thresholds the pools had before this throttle.
+     */
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(notificationListener);
+            } catch (ListenerNotFoundException e) {
+                // already removed
+            }
+        }
+        for (int i = 0; i < pools.size(); i++) {
+            pools.get(i).setCollectionUsageThreshold(previousThresholds.get(i));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[ class: %s, occupancy: %.2f, throttled: %s, high: %.2f, low: %.2f ]",
+                getClass().getSimpleName(), getOccupancy(), isThrottled(), highWaterMark, lowWaterMark);
+    }
+}
@@ -0,0 +1,24 @@
+package smile.tasks;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A {@link java.util.concurrent.Callable} with a primitive long result. Submitted to a
+ * {@link smile.tasks.LongTaskQueue} the result is passed to {@link smile.tasks.LongResultHandler#onResult(long)}
+ * without boxing. Other queues call {@link #call()}, which boxes the result.
+ *
+ * @author Andre Kullmann
+ */
+public abstract class LongCallable implements Callable<Long> {
+
+    /**
+     * @return the result
+     * @throws Exception if unable to compute a result
+     */
+    public abstract long callLong() throws Exception;
+
+    @Override
+    public final Long call() throws Exception {
+        return callLong();
+    }
+}
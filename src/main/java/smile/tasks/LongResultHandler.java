@@ -0,0 +1,13 @@
+package smile.tasks;
+
+/**
+ * The counterpart of {@link smile.tasks.ResultHandler} for a {@link smile.tasks.LongTaskQueue}.
+ *
+ * @author Andre Kullmann
+ */
+public interface LongResultHandler {
+
+    public void onResult( long result );
+
+    public void onException( Exception e );
+}
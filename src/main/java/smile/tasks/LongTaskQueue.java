@@ -0,0 +1,100 @@
+package smile.tasks;
+
+import smile.threads.WaitStrategy;
+
+import java.util.concurrent.Future;
+
+/**
+ * A {@link smile.tasks.SimpleTaskQueue} for tasks with a long result, e.g. counts or ids. The result of a submitted
+ * {@link smile.tasks.LongCallable} is kept in a primitive slot of its future and passed to
+ * {@link smile.tasks.LongResultHandler#onResult(long)}, so it's never boxed. The futures are recycled ( see
+ * {@link smile.tasks.SimpleTaskQueue#SimpleTaskQueue(String, int, int, smile.threads.WaitStrategy, boolean, ResultHandler)} ),
+ * so the submit to result path allocates nothing in the steady state.
+ *
+ * Any other {@link java.util.concurrent.Callable} of Long can be submitted too, e.g. if it's wrapped by a deadline or
+ * the adaptive limit, its result is unboxed before it's passed to the handler.
+ *
+ * @author Andre Kullmann
+ */
+public class LongTaskQueue extends SimpleTaskQueue<Long> {
+
+    /**
+     * Unboxes the results which don't come from a primitive slot.
+     */
+    private static class UnboxingResultHandler implements ResultHandler<Long> {
+
+        private final LongResultHandler handler;
+
+        private UnboxingResultHandler(LongResultHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onResult(Long result) {
+            handler.onResult(result);
+        }
+
+        @Override
+        public void onException(Exception e) {
+            handler.onException(e);
+        }
+    }
+
+    private final LongResultHandler longResultHandler;
+
+    public LongTaskQueue(
+            int capacity,
+            int threads,
+            LongResultHandler resultHandler) {
+        this("Smile Queue", capacity, threads, resultHandler);
+    }
+
+    public LongTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            LongResultHandler resultHandler) {
+        this(name, capacity, threads, WaitStrategy.PARK, resultHandler);
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param threads count of worker threads
+     * @param waitStrategy how the owner thread waits in {@link #awaitOneResult()}
+     * @param resultHandler will be called for each result or exception.
+     */
+    public LongTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            WaitStrategy waitStrategy,
+            LongResultHandler resultHandler) {
+
+        super(name, capacity, threads, waitStrategy, true, new UnboxingResultHandler(resultHandler));
+
+        this.longResultHandler = resultHandler;
+    }
+
+    /**
+     * @return {@link #longResultHandler}
+     */
+    public LongResultHandler getLongResultHandler() {
+        return longResultHandler;
+    }
+
+    /**
+     * Passes the result of a {@link smile.tasks.LongCallable} without boxing, all other futures are delivered by
+     * {@link smile.tasks.AbstractTaskQueue#deliver(java.util.concurrent.Future)}.
+     *
+     * @param future a finished future
+     */
+    @Override
+    protected void deliver(Future<Long> future) {
+        if (future instanceof RecyclableFuture && ((RecyclableFuture<Long>) future).isLong()) {
+            longResultHandler.onResult(((RecyclableFuture<Long>) future).getLong());
+        } else {
+            super.deliver(future);
+        }
+    }
+}
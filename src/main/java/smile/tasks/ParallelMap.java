@@ -0,0 +1,217 @@
+package smile.tasks;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies a {@link smile.tasks.Function} to each element of a list and writes the results into an array at the
+ * index of the element, see {@link smile.tasks.AbstractTaskQueue#parallelMap(java.util.List, Function)}.
+ *
+ * The index range is split recursively, like a {@link java.util.Spliterator}: a range task which is larger than
+ * the grain hands its upper half to the executor and continues with the lower half, until the range is small
+ * enough to be mapped. So the ranges are spread over the workers without a task per element, and no future is
+ * created at all. The calling thread maps the first range itself and waits for the others.
+ *
+ * The ranges hold no permit of the queue, so they are bounded by slots instead: a range is only handed to the
+ * executor if it gets a slot, which it gives back when it starts. Without a slot the range is mapped by the splitting
+ * thread. So at most {@link #slots(int)} ranges wait in the worker queue, and a bounded worker queue can reserve room
+ * for them.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ class ParallelMap<A, B> {
+
+    /**
+     * Count of queued ranges per worker thread.
+     */
+    private static final int SLOTS_PER_THREAD = 4;
+
+    private final Executor executor;
+
+    /**
+     * Shared by all maps of a queue, see {@link #slots(int)}.
+     */
+    private final Semaphore slots;
+
+    private final List<? extends A> input;
+
+    private final Object[] output;
+
+    private final Function<? super A, ? extends B> function;
+
+    private final int grain;
+
+    /**
+     * Count of range tasks which are not finished.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * The first exception, the other ranges stop after it's set.
+     */
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+    private final Thread caller = Thread.currentThread();
+
+    /**
+     * A range of the input, see {@link ParallelMap}.
+     */
+    /*package private*/ class Range implements Runnable {
+
+        private final int from;
+
+        private int to;
+
+        /**
+         * True while the range holds a slot.
+         */
+        private boolean queued;
+
+        private Range(int from, int to, boolean queued) {
+            this.from   = from;
+            this.to     = to;
+            this.queued = queued;
+        }
+
+        @Override
+        public void run() {
+            try {
+                dequeued();
+                split();
+                map();
+            } finally {
+                finished();
+            }
+        }
+
+        /**
+         * Called by {@link smile.tasks.AbstractTaskQueue#cancel()} for a range which will never run, the map fails
+         * with a {@link java.util.concurrent.CancellationException}.
+         */
+        /*package private*/ void cancel() {
+            dequeued();
+            failure.compareAndSet(null, new RuntimeException(new CancellationException("the queue is cancelled.")));
+            finished();
+        }
+
+        private void dequeued() {
+            if (queued) {
+                queued = false;
+                slots.release();
+            }
+        }
+
+        private void finished() {
+            if (pending.decrementAndGet() == 0) {
+                LockSupport.unpark(caller);
+            }
+        }
+
+        private void split() {
+
+            while (to - from > grain && failure.get() == null && slots.tryAcquire()) {
+
+                int mid = (from + to) >>> 1;
+
+                Range upper = new Range(mid, to, true);
+
+                pending.incrementAndGet();
+
+                try {
+                    executor.execute(upper);
+                } catch (RejectedExecutionException e) {
+                    // e.g. the pool is shutdown, the range is mapped by this thread
+                    pending.decrementAndGet();
+                    slots.release();
+                    return;
+                }
+
+                to = mid;
+            }
+        }
+
+        private void map() {
+            for (int i = from; i < to && failure.get() == null; i++) {
+                try {
+                    output[i] = function.apply(input.get(i));
+                } catch (Exception e) {
+                    failure.compareAndSet(null, new RuntimeException("function failed at index " + i, e));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param threads count of worker threads
+     * @return the max count of queued ranges of a queue
+     */
+    /*package private*/ static int slots(int threads) {
+        return threads * SLOTS_PER_THREAD;
+    }
+
+    /**
+     * @param executor runs the ranges, must run them in this jvm
+     * @param slots bounds the queued ranges, see {@link #slots(int)}
+     * @param input the elements, a random access list
+     * @param output gets the result of each element at its index, at least as long as the input
+     * @param function the function
+     * @param grain ranges up to this size are not split
+     */
+    /*package private*/ ParallelMap(Executor executor, Semaphore slots, List<? extends A> input, Object[] output, Function<? super A, ? extends B> function, int grain) {
+
+        if (output.length < input.size()) {
+            throw new IllegalArgumentException("output length " + output.length + " is less than input size " + input.size());
+        }
+
+        this.executor = executor;
+        this.slots    = slots;
+        this.input    = input;
+        this.output   = output;
+        this.function = function;
+        this.grain    = Math.max(1, grain);
+    }
+
+    /**
+     * Maps all elements and waits until all ranges are finished.
+     *
+     * @throws RuntimeException if the function failed, the cause is the exception of the function, or a
+     * {@link java.util.concurrent.CancellationException} if the queue is cancelled
+     */
+    /*package private*/ void run() {
+
+        if (input.isEmpty()) {
+            return;
+        }
+
+        pending.set(1);
+
+        new Range(0, input.size(), false).run();
+
+        boolean interrupted = false;
+
+        while (pending.get() != 0) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                interrupted = true;
+                // the other ranges stop, but they still use the output
+                failure.compareAndSet(null, new RuntimeException(new InterruptedException()));
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        RuntimeException e = failure.get();
+
+        if (e != null) {
+            throw e;
+        }
+    }
+}
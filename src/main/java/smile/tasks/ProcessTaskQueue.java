@@ -0,0 +1,67 @@
+package smile.tasks;
+
+import smile.tasks.remote.ProcessExecutorService;
+import smile.threads.MpscRingBuffer;
+import smile.threads.WaitStrategy;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * This implementation of {@link smile.tasks.AbstractTaskQueue} executes the submitted
+ * {@link java.util.concurrent.Callable} objects in child jvm processes ( see {@link smile.tasks.remote.ProcessExecutorService} ).
+ * Use it if the tasks need process isolation, e.g. native libraries which are not thread safe or tasks which leak
+ * memory. The callables and their results must be {@link java.io.Serializable}.
+ *
+ * If a child process crashes, the {@link smile.tasks.ResultHandler} gets an exception for each task in flight on it
+ * and a new child process is started.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <T> The result type of the submitted {@link java.util.concurrent.Callable} objects.
+ */
+public class ProcessTaskQueue<T> extends AbstractRingBufferTaskQueue<T> {
+
+    public ProcessTaskQueue(
+            int capacity,
+            int processes,
+            ResultHandler<T> resultHandler) throws IOException {
+
+        this( "Smile Process Queue", capacity, processes, 1, Collections.<String>emptyList(), resultHandler );
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param processes count of child processes
+     * @param threadsPerProcess count of worker threads in each child process
+     * @param jvmArgs additional arguments of the child jvm, e.g. -Xmx256m
+     * @param resultHandler will be called for each result or exception.
+     * @throws IOException if a child process can't be started
+     */
+    public ProcessTaskQueue(
+            String name,
+            int capacity,
+            int processes,
+            int threadsPerProcess,
+            List<String> jvmArgs,
+            ResultHandler<T> resultHandler) throws IOException {
+
+        super(name,
+                capacity,
+                processes * threadsPerProcess,
+                new ProcessExecutorService( processes, threadsPerProcess, jvmArgs, ProcessExecutorService.DEFAULT_RING_CAPACITY ),
+                new MpscRingBuffer<Future<T>>( capacity, WaitStrategy.PARK ),
+                resultHandler);
+    }
+
+    /**
+     * @return {@link smile.tasks.AbstractTaskQueue#getWorkerPool()}
+     */
+    @Override
+    public ProcessExecutorService getWorkerPool() {
+        return (ProcessExecutorService) super.getWorkerPool();
+    }
+}
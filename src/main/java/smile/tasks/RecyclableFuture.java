@@ -0,0 +1,411 @@
+package smile.tasks;
+
+import smile.threads.MpscRingBuffer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The counterpart of {@link smile.tasks.TaskQueueFuture} for the recycling mode of a queue, see
+ * {@link smile.tasks.SimpleTaskQueue#SimpleTaskQueue(String, int, int, smile.threads.WaitStrategy, boolean, ResultHandler)}.
+ * A {@link java.util.concurrent.FutureTask} can't be reset, so this future has its own state machine. After the
+ * owner thread handled the result the future is cleared and taken from the pool for the next submit.
+ *
+ * Like {@link smile.tasks.TaskQueueFuture} it publishes itself to the result queue as soon as it's done. Publishing
+ * is the last access of the worker thread, so the owner thread can reuse the future when it's taken from the result
+ * queue. That's why a running future which is cancelled is published by its worker when the callable returns, not
+ * by the cancelling thread.
+ *
+ * The result of a {@link smile.tasks.LongCallable} or a {@link smile.tasks.DoubleCallable} is kept in a primitive
+ * slot, it's only boxed by {@link #get()}, see {@link smile.tasks.LongTaskQueue}.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ class RecyclableFuture<V> implements CallableTask<V>, TimedTask {
+
+    private static final int NEW = 0;
+
+    private static final int RUNNING = 1;
+
+    /**
+     * The outcome is written.
+     */
+    private static final int COMPLETING = 2;
+
+    private static final int COMPLETED = 3;
+
+    private static final int FAILED = 4;
+
+    /**
+     * Cancelled while running, the runner is interrupted.
+     */
+    private static final int INTERRUPTING = 5;
+
+    private static final int CANCELLED = 6;
+
+    // the kinds of result
+
+    private static final int OBJECT = 0;
+
+    private static final int LONG = 1;
+
+    private static final int DOUBLE = 2;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<RecyclableFuture> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(RecyclableFuture.class, "state");
+
+    private final MpscRingBuffer<? super RecyclableFuture<V>> resultQueue;
+
+    private volatile int state = NEW;
+
+    /**
+     * Count of threads in {@link #get()}, changed while holding the monitor of this future.
+     */
+    private volatile int waiters = 0;
+
+    private Callable<V> callable;
+
+    /**
+     * The result or the exception, written in the state {@link #COMPLETING}.
+     */
+    private Object outcome;
+
+    /**
+     * The result of a {@link smile.tasks.LongCallable}, or the bits of the result of a
+     * {@link smile.tasks.DoubleCallable}, written in the state {@link #COMPLETING}.
+     */
+    private long primitive;
+
+    /**
+     * {@link #OBJECT}, {@link #LONG} or {@link #DOUBLE}, written in the state {@link #COMPLETING}.
+     */
+    private int kind;
+
+    private volatile Thread runner;
+
+    /**
+     * False if another object may still hold this future after it's handled, e.g. a deadline. Not changed while
+     * the future is running.
+     */
+    private volatile boolean recyclable = true;
+
+    private boolean timed;
+
+    private long createdNanos;
+
+    private long startedNanos;
+
+    private long doneNanos;
+
+    /**
+     * @param resultQueue the future publishes itself to this queue when it's done
+     */
+    public RecyclableFuture(MpscRingBuffer<? super RecyclableFuture<V>> resultQueue) {
+        this.resultQueue = resultQueue;
+    }
+
+    /**
+     * Prepares the future for the next submit. Only called on owner thread, before the future is handed to a worker.
+     *
+     * @param callable to be execute
+     * @param timed true to take the timestamps for {@link #getQueueWaitNanos()} and {@link #getExecutionNanos()}
+     * @return this
+     */
+    /*package private*/ RecyclableFuture<V> reset(Callable<V> callable, boolean timed) {
+        this.callable     = callable;
+        this.kind         = OBJECT;
+        this.recyclable   = true;
+        this.timed        = timed;
+        this.createdNanos = timed ? System.nanoTime() : 0;
+        this.startedNanos = 0;
+        this.doneNanos    = 0;
+        this.state        = NEW;
+        return this;
+    }
+
+    /**
+     * Drops the callable and the result, so the pool doesn't keep them alive. Only called on owner thread after
+     * the result is handled.
+     */
+    /*package private*/ void clear() {
+        this.callable = null;
+        this.outcome  = null;
+        this.runner   = null;
+    }
+
+    /**
+     * @return {@link #recyclable}
+     */
+    /*package private*/ boolean isRecyclable() {
+        return recyclable;
+    }
+
+    /**
+     * The future is not recycled, because another object may still use it after the result is handled.
+     */
+    /*package private*/ void keep() {
+        this.recyclable = false;
+    }
+
+    @Override
+    public Callable<V> getCallable() {
+        return callable;
+    }
+
+    @Override
+    public boolean isTimed() {
+        return timed;
+    }
+
+    @Override
+    public long getQueueWaitNanos() {
+        return timed && startedNanos != 0 ? startedNanos - createdNanos : -1;
+    }
+
+    @Override
+    public long getExecutionNanos() {
+        return timed && doneNanos != 0 ? doneNanos - ( startedNanos != 0 ? startedNanos : createdNanos ) : -1;
+    }
+
+    @Override
+    public void run() {
+
+        if (!STATE.compareAndSet(this, NEW, RUNNING)) {
+            return;
+        }
+
+        runner = Thread.currentThread();
+
+        if (timed) {
+            startedNanos = System.nanoTime();
+        }
+
+        Object result = null;
+        long value    = 0;
+        int type      = OBJECT;
+        int done;
+
+        try {
+            if (callable instanceof LongCallable) {
+                value = ((LongCallable) callable).callLong();
+                type  = LONG;
+            } else if (callable instanceof DoubleCallable) {
+                value = Double.doubleToRawLongBits(((DoubleCallable) callable).callDouble());
+                type  = DOUBLE;
+            } else {
+                result = callable.call();
+            }
+            done = COMPLETED;
+        } catch (Throwable e) {
+            result = e;
+            done   = FAILED;
+        }
+
+        runner = null;
+
+        if (!finish(RUNNING, done, result, value, type)) {
+
+            // cancelled while running, the interrupt must not hit the next task of this thread
+            while (state == INTERRUPTING) {
+                Thread.yield();
+            }
+
+            if (recyclable) {
+                published();
+            }
+        }
+    }
+
+    @Override
+    public void complete(V result) {
+        if (!finish(NEW, COMPLETED, result, 0, OBJECT)) {
+            finish(RUNNING, COMPLETED, result, 0, OBJECT);
+        }
+    }
+
+    @Override
+    public void completeExceptionally(Throwable cause) {
+        if (!finish(NEW, FAILED, cause, 0, OBJECT)) {
+            finish(RUNNING, FAILED, cause, 0, OBJECT);
+        }
+    }
+
+    /**
+     * @return true if the state changed from expected to done
+     */
+    private boolean finish(int expected, int done, Object result, long value, int type) {
+
+        if (!STATE.compareAndSet(this, expected, COMPLETING)) {
+            return false;
+        }
+
+        outcome   = result;
+        primitive = value;
+        kind      = type;
+        state     = done;
+
+        published();
+
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+
+        if (STATE.compareAndSet(this, NEW, CANCELLED)) {
+            published();
+            return true;
+        }
+
+        if (!STATE.compareAndSet(this, RUNNING, mayInterruptIfRunning ? INTERRUPTING : CANCELLED)) {
+            return false;
+        }
+
+        if (mayInterruptIfRunning) {
+            try {
+                Thread thread = runner;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+            } finally {
+                state = CANCELLED;
+            }
+        }
+
+        // a recyclable future is published by its runner, see run()
+        if (!recyclable) {
+            published();
+        }
+
+        return true;
+    }
+
+    /**
+     * Wakes the waiting threads and publishes this future to the result queue, the last access of a worker.
+     */
+    private void published() {
+
+        if (timed) {
+            doneNanos = System.nanoTime();
+        }
+
+        if (waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        resultQueue.put(this);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state >= INTERRUPTING;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state >= COMPLETED;
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+
+        if (!isDone()) {
+            synchronized (this) {
+                waiters++;
+                try {
+                    while (!isDone()) {
+                        wait();
+                    }
+                } finally {
+                    waiters--;
+                }
+            }
+        }
+
+        return report();
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+
+        if (!isDone()) {
+
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+            synchronized (this) {
+                waiters++;
+                try {
+                    for (long remaining = unit.toNanos(timeout); !isDone(); remaining = deadline - System.nanoTime()) {
+                        if (remaining <= 0) {
+                            throw new TimeoutException();
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                } finally {
+                    waiters--;
+                }
+            }
+        }
+
+        return report();
+    }
+
+    /**
+     * @return true if the future is completed with the result of a {@link smile.tasks.LongCallable}
+     */
+    /*package private*/ boolean isLong() {
+        return state == COMPLETED && kind == LONG;
+    }
+
+    /**
+     * @return true if the future is completed with the result of a {@link smile.tasks.DoubleCallable}
+     */
+    /*package private*/ boolean isDouble() {
+        return state == COMPLETED && kind == DOUBLE;
+    }
+
+    /**
+     * @return the result of a {@link smile.tasks.LongCallable}, see {@link #isLong()}
+     */
+    /*package private*/ long getLong() {
+        return primitive;
+    }
+
+    /**
+     * @return the result of a {@link smile.tasks.DoubleCallable}, see {@link #isDouble()}
+     */
+    /*package private*/ double getDouble() {
+        return Double.longBitsToDouble(primitive);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V report() throws ExecutionException {
+        int s = state;
+        if (s == COMPLETED) {
+            switch (kind) {
+                case LONG:
+                    return (V) Long.valueOf(primitive);
+                case DOUBLE:
+                    return (V) Double.valueOf(getDouble());
+                default:
+                    return (V) outcome;
+            }
+        }
+        if (s == FAILED) {
+            throw new ExecutionException((Throwable) outcome);
+        }
+        throw new CancellationException();
+    }
+
+    @Override
+    public String toString() {
+        return "[ class: " + getClass().getSimpleName() + ", state: " + state + ", callable: " + callable + " ]";
+    }
+}
@@ -0,0 +1,37 @@
+package smile.tasks;
+
+/**
+ * Folds the results of a {@link smile.tasks.ReducingTaskQueue} into an accumulator, e.g. a sum, a histogram or a set
+ * of ids. Each worker thread has its own accumulator, so {@link #reduce(Object, Object)} needs no synchronization.
+ * The accumulators of all workers are merged once by {@link #merge(Object, Object)}.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <T> the result type of the submitted {@link java.util.concurrent.Callable} objects
+ * @param <A> the accumulator type
+ */
+public interface Reducer<T, A> {
+
+    /**
+     * @return an empty accumulator
+     */
+    public A create();
+
+    /**
+     * Called on a worker thread.
+     *
+     * @param accumulator the accumulator of the current worker thread
+     * @param result the result of a task
+     * @return the accumulator, e.g. the given object after it's changed or a new object
+     */
+    public A reduce( A accumulator, T result );
+
+    /**
+     * Called on the owner thread.
+     *
+     * @param left an accumulator
+     * @param right another accumulator
+     * @return the merged accumulator, e.g. the left object after the right one is added
+     */
+    public A merge( A left, A right );
+}
@@ -0,0 +1,187 @@
+package smile.tasks;
+
+import smile.threads.WaitStrategy;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RunnableFuture;
+
+/**
+ * A {@link smile.tasks.SimpleTaskQueue} for aggregation jobs, e.g. sums, histograms or dedup sets. The results don't
+ * cross to the owner thread: each worker thread folds the results of its tasks into its own accumulator with the
+ * {@link smile.tasks.Reducer}. {@link #await()} merges the accumulators of all workers and passes the merged
+ * accumulator to {@link smile.tasks.ResultHandler#onResult(Object)}, so the work of the owner thread is
+ * O(threads) instead of O(tasks). For each task only the permit is released on the owner thread, the futures are
+ * recycled.
+ *
+ * Exceptions are still passed to {@link smile.tasks.ResultHandler#onException(Exception)} one by one.
+ * After {@link #await()} the queue can be opened again ( see {@link #open()} ) and starts with empty accumulators.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <T> The result type of the submitted {@link java.util.concurrent.Callable} objects.
+ * @param <A> The accumulator type.
+ */
+public class ReducingTaskQueue<T, A> extends SimpleTaskQueue<T> {
+
+    /**
+     * The accumulator of one worker thread.
+     */
+    private static class Partial<A> {
+
+        /**
+         * Written by the worker thread, read and reset by the owner thread when no task is in flight.
+         */
+        private A accumulator;
+    }
+
+    /**
+     * Passes the exceptions to the handler of the accumulators, the results are already reduced.
+     */
+    private static class ExceptionHandler<T> implements ResultHandler<T> {
+
+        private final ResultHandler<?> handler;
+
+        private ExceptionHandler(ResultHandler<?> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onResult(T result) {
+            // reduced by the worker
+        }
+
+        @Override
+        public void onException(Exception e) {
+            handler.onException(e);
+        }
+    }
+
+    /**
+     * Runs the callable and reduces the result into the accumulator of the current thread.
+     */
+    private class Reducing implements Callable<T> {
+
+        private final Callable<T> callable;
+
+        private Reducing(Callable<T> callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        public T call() throws Exception {
+            T result = callable.call();
+            Partial<A> partial = partials.get();
+            A accumulator = partial.accumulator;
+            partial.accumulator = reducer.reduce(accumulator == null ? reducer.create() : accumulator, result);
+            return null;
+        }
+    }
+
+    private final Reducer<T, A> reducer;
+
+    private final ResultHandler<A> reducedResultHandler;
+
+    /**
+     * The accumulators of all threads which executed a task.
+     */
+    private final List<Partial<A>> registered = new CopyOnWriteArrayList<Partial<A>>();
+
+    private final ThreadLocal<Partial<A>> partials = new ThreadLocal<Partial<A>>() {
+        @Override
+        protected Partial<A> initialValue() {
+            Partial<A> partial = new Partial<A>();
+            registered.add(partial);
+            return partial;
+        }
+    };
+
+    public ReducingTaskQueue(
+            int capacity,
+            int threads,
+            Reducer<T, A> reducer,
+            ResultHandler<A> resultHandler) {
+        this("Smile Queue", capacity, threads, reducer, resultHandler);
+    }
+
+    public ReducingTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            Reducer<T, A> reducer,
+            ResultHandler<A> resultHandler) {
+        this(name, capacity, threads, WaitStrategy.PARK, reducer, resultHandler);
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param threads count of worker threads
+     * @param waitStrategy how the owner thread waits in {@link #awaitOneResult()}
+     * @param reducer folds the results on the worker threads
+     * @param resultHandler gets the merged accumulator on each {@link #await()} and each exception
+     */
+    public ReducingTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            WaitStrategy waitStrategy,
+            Reducer<T, A> reducer,
+            ResultHandler<A> resultHandler) {
+
+        super(name, capacity, threads, waitStrategy, true, new ExceptionHandler<T>(resultHandler));
+
+        this.reducer              = reducer;
+        this.reducedResultHandler = resultHandler;
+    }
+
+    /**
+     * @return {@link #reducer}
+     */
+    public Reducer<T, A> getReducer() {
+        return reducer;
+    }
+
+    /**
+     * @return {@link #reducedResultHandler}
+     */
+    public ResultHandler<A> getReducedResultHandler() {
+        return reducedResultHandler;
+    }
+
+    /**
+     * @param callable to be execute
+     * @return a task which reduces the result on the worker thread
+     */
+    @Override
+    protected RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return super.newTaskFor(new Reducing(callable));
+    }
+
+    /**
+     * Waits until all submitted tasks are executed, merges the accumulators of all worker threads and passes the
+     * merged accumulator to the {@link smile.tasks.ResultHandler}. The accumulators are reset.
+     *
+     * @return this
+     */
+    @Override
+    public AbstractTaskQueue<T> await() {
+
+        super.await();
+
+        A merged = reducer.create();
+
+        // no task is in flight, the workers published their accumulators with the results
+        for (Partial<A> partial : registered) {
+            if (partial.accumulator != null) {
+                merged = reducer.merge(merged, partial.accumulator);
+                partial.accumulator = null;
+            }
+        }
+
+        reducedResultHandler.onResult(merged);
+
+        return this;
+    }
+}
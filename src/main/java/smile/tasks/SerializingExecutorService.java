@@ -0,0 +1,19 @@
+package smile.tasks;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An {@link java.util.concurrent.ExecutorService} which executes only {@link smile.tasks.CallableTask} objects, by
+ * serializing their {@link java.util.concurrent.Callable} to another jvm. A queue with such a worker pool can't run
+ * its own tasks on it, so {@link smile.tasks.AbstractTaskQueue#submit(Object, java.util.concurrent.Callable)},
+ * {@link smile.tasks.AbstractTaskQueue#submit(java.util.concurrent.Callable, long, java.util.concurrent.TimeUnit)},
+ * {@link smile.tasks.AbstractTaskQueue#setAdaptiveLimit(AdaptiveLimit)} and the parallel maps throw an {@link java.lang.UnsupportedOperationException}.
+ *
+ * @see smile.tasks.remote.RemoteExecutorService
+ * @see smile.tasks.remote.ProcessExecutorService
+ * @see smile.tasks.remote.DirectoryExecutorService
+ *
+ * @author Andre Kullmann
+ */
+public interface SerializingExecutorService extends ExecutorService {
+}
@@ -1,11 +1,14 @@
 package smile.tasks;
 
 import smile.threads.DaemonThreadFactory;
+import smile.threads.MpscRingBuffer;
+import smile.threads.WaitStrategy;
 
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadFactory;
@@ -18,7 +21,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *
  * @author Andre Kullmann
  */
-public class SimpleTaskQueue<T> extends AbstractTaskQueue<T> {
+public class SimpleTaskQueue<T> extends AbstractRingBufferTaskQueue<T> {
 
     public static class QueueIsClosedException extends RuntimeException {
 
@@ -26,36 +29,86 @@ public class SimpleTaskQueue<T> extends AbstractTaskQueue<T> {
 
     private final AtomicBoolean open = new AtomicBoolean(true);
 
-    private final BlockingQueue<Future<T>> resultQueue;
+    public SimpleTaskQueue(
+            int capacity,
+            int threads,
+            ResultHandler<T> resultHandler) {
+        this("Smile Queue", capacity, threads, resultHandler);
+    }
 
-    private final Thread ownerThread;
+    public SimpleTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            ResultHandler<T> resultHandler) {
+        this(name, capacity, threads, WaitStrategy.PARK, resultHandler);
+    }
 
+    /**
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param threads count of worker threads
+     * @param waitStrategy how the owner thread waits in {@link #awaitOneResult()}
+     * @param resultHandler will be called for each result or exception.
+     */
     public SimpleTaskQueue(
+            String name,
             int capacity,
             int threads,
+            WaitStrategy waitStrategy,
             ResultHandler<T> resultHandler) {
-        this("Smile Queue", capacity, threads, resultHandler);
+        this(name, capacity, threads, waitStrategy, false, resultHandler);
     }
 
+    /**
+     * In recycling mode the submit path allocates nothing in the steady state: the futures are taken from a pool
+     * and put back after their results are handled, and the worker pool queues the tasks in an array. So a
+     * {@link java.util.concurrent.Future} returned by a submit must not be used after its result is handled, it
+     * already belongs to a later submit. Futures of submits with a timeout and all futures in ordered mode are not
+     * recycled.
+     *
+     * @param name the queue name
+     * @param capacity see {@link smile.tasks.AbstractTaskQueue#AbstractTaskQueue(String, int, int, java.util.concurrent.ExecutorService, ResultHandler)}
+     * @param threads count of worker threads
+     * @param waitStrategy how the owner thread waits in {@link #awaitOneResult()}
+     * @param recycling true to reuse the futures
+     * @param resultHandler will be called for each result or exception.
+     */
     public SimpleTaskQueue(
             String name,
             int capacity,
             int threads,
+            WaitStrategy waitStrategy,
+            boolean recycling,
             ResultHandler<T> resultHandler) {
 
-        super(name,
+        this(name,
                 capacity,
                 threads,
-                new TaskQueueExecutor(threads, new DaemonThreadFactory(name)),
+                new TaskQueueExecutor(threads, new DaemonThreadFactory(name), capacity, waitStrategy, recycling),
+                recycling,
                 resultHandler);
+    }
 
-        this.ownerThread = Thread.currentThread();
+    private SimpleTaskQueue(
+            String name,
+            int capacity,
+            int threads,
+            TaskQueueExecutor workerPool,
+            boolean recycling,
+            ResultHandler<T> resultHandler) {
 
-        this.resultQueue = wildCast(getWorkerPool().getResultQueue());
+        super(name,
+                capacity,
+                threads,
+                workerPool,
+                SimpleTaskQueue.<MpscRingBuffer<Future<T>>>wildCast(workerPool.getResultQueue()),
+                recycling,
+                resultHandler);
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T wildCast(Object object) {
+    private static <T> T wildCast(Object object) {
         return (T) object;
     }
 
@@ -116,121 +169,105 @@ public class SimpleTaskQueue<T> extends AbstractTaskQueue<T> {
 
     /**
      *
-     * @see AbstractTaskQueue#await()
-     * @return this
+     * @param callable to be execute
+     * @param timeout the maximum time to wait for the result
+     * @param unit the unit of timeout
+     * @return the future of the callable
+     * @see AbstractTaskQueue#submit(java.util.concurrent.Callable, long, java.util.concurrent.TimeUnit)
+     * @throws QueueIsClosedException
      */
     @Override
-    public AbstractTaskQueue<T> await() {
+    public Future<T> submit(Callable<T> callable, long timeout, TimeUnit unit) {
 
-        close();
+        if (!isOpen()) {
+            throw new QueueIsClosedException();
+        }
 
-        return super.await();
+        return super.submit(callable, timeout, unit);
     }
 
     /**
-     * @return {@link #resultQueue}
+     *
+     * @param callable to be execute
+     * @param weight the expected memory use of the callable and its result
+     * @return the future of the callable
+     * @see AbstractTaskQueue#submit(java.util.concurrent.Callable, long)
+     * @throws QueueIsClosedException
      */
-    private BlockingQueue<Future<T>> getResultQueue() {
-        return resultQueue;
-    }
+    @Override
+    public Future<T> submit(Callable<T> callable, long weight) {
 
-    /**
-     * @return {@link #ownerThread}
-     */
-    private Thread getOwnerThread() {
-        return ownerThread;
-    }
+        if (!isOpen()) {
+            throw new QueueIsClosedException();
+        }
 
-    /**
-     * @return {@link #isOwnerThread()}
-     */
-    @Override
-    public boolean canHandleResult() {
-        return isOwnerThread();
+        return super.submit(callable, weight);
     }
 
     /**
-     * @return true if {@link Thread#currentThread()} is equals {@link #getOwnerThread()}
+     *
+     * @param id the stable id of the callable
+     * @param callable to be execute
+     * @return the future of the callable, null if the callable is already completed
+     * @see AbstractTaskQueue#submitOnce(long, java.util.concurrent.Callable)
+     * @throws QueueIsClosedException
      */
-    private boolean isOwnerThread() {
-        return Thread.currentThread() == getOwnerThread();
-    }
-
     @Override
-    public void purge() {
+    public Future<T> submitOnce(long id, Callable<T> callable) {
 
-        checkCanHandleResult();
-
-        for (Future<T> future = getResultQueue().poll(); future != null; future = getResultQueue().poll()) {
-
-            handleFuture(future);
+        if (!isOpen()) {
+            throw new QueueIsClosedException();
         }
+
+        return super.submitOnce(id, callable);
     }
 
+    /**
+     *
+     * @param key the lane key
+     * @param callable to be execute
+     * @return the future of the callable
+     * @see AbstractTaskQueue#submit(Object, java.util.concurrent.Callable)
+     * @throws QueueIsClosedException
+     */
     @Override
-    public void awaitOneResult() {
-
-        //checkOwnerThread();
+    public Future<T> submit(Object key, Callable<T> callable) {
 
-        Future<T> future;
-        try {
-            future = getResultQueue().take();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException(e);
+        if (!isOpen()) {
+            throw new QueueIsClosedException();
         }
 
-        handleFuture(future);
+        return super.submit(key, callable);
     }
 
-    private void handleFuture(Future<T> future) {
-
-        getSemaphore().release();
+    /**
+     *
+     * @param callables to be execute
+     * @return count of submitted {@link java.util.concurrent.Callable} objects
+     * @see AbstractTaskQueue#submitAll(java.util.Iterator)
+     * @throws QueueIsClosedException
+     */
+    @Override
+    public int submitAll(Iterator<? extends Callable<T>> callables) {
 
-        try {
-            T result = future.get();
-            getResultHandler().onResult(result);
-        } catch (Exception e) {
-            getResultHandler().onException(e);
+        if (!isOpen()) {
+            throw new QueueIsClosedException();
         }
+
+        return super.submitAll(callables);
     }
 
     /**
-     * @author Andre Kullmann
+     *
+     * @see AbstractTaskQueue#await()
+     * @return this
      */
-    private static class TaskQueueFuture<V> extends FutureTask<V> {
-
-        private final BlockingQueue<Future> resultQueue;
-
-        public TaskQueueFuture(Callable<V> callable, BlockingQueue<Future> resultQueue) {
-            super(callable);
-            this.resultQueue = resultQueue;
-        }
-
-        public TaskQueueFuture(Runnable runnable, V result, BlockingQueue<Future> resultQueue) {
-            super(runnable, result);
-            this.resultQueue = resultQueue;
-        }
+    @Override
+    public AbstractTaskQueue<T> await() {
 
-        public BlockingQueue<Future> getResultQueue() {
-            return resultQueue;
-        }
+        close();
 
-        @Override
-        @SuppressWarnings("unchecked")
-        protected void done() {
-            try {
-                super.done();
-            } finally {
-                try {
-                    BlockingQueue queue = getResultQueue();
-                    queue.put(this);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    e.printStackTrace();
-                }
-            }
-        }
+        return super.await();
     }
 
     /**
@@ -238,19 +275,28 @@ public class SimpleTaskQueue<T> extends AbstractTaskQueue<T> {
      */
     private static class TaskQueueExecutor extends ThreadPoolExecutor {
 
-        private final BlockingQueue<Future> resultQueue;
+        private final MpscRingBuffer<Future> resultQueue;
 
-        public TaskQueueExecutor(int threads, ThreadFactory threadFactory) {
+        /**
+         * @param threads count of worker threads
+         * @param threadFactory creates the worker threads
+         * @param capacity queue capacity, at most this count of futures can be finished but not yet handled.
+         * @param waitStrategy used by the owner thread to wait for results
+         * @param bounded true to queue the tasks in an array, which allocates no node per task. It has room for capacity
+         *                tasks and for the ranges of {@link smile.tasks.AbstractTaskQueue#parallelMap(Object[], Object[], Function)},
+         *                which hold no permit.
+         */
+        public TaskQueueExecutor(int threads, ThreadFactory threadFactory, int capacity, WaitStrategy waitStrategy, boolean bounded) {
 
             super(threads, threads,
                     0L, TimeUnit.MILLISECONDS,
-                    new LinkedBlockingQueue<Runnable>(),
+                    bounded ? (BlockingQueue<Runnable>) new ArrayBlockingQueue<Runnable>(capacity + ParallelMap.slots(threads)) : new LinkedBlockingQueue<Runnable>(),
                     threadFactory);
 
-            this.resultQueue = new LinkedBlockingQueue<Future>();
+            this.resultQueue = new MpscRingBuffer<Future>(capacity, waitStrategy);
         }
 
-        public BlockingQueue<Future> getResultQueue() {
+        public MpscRingBuffer<Future> getResultQueue() {
             return resultQueue;
         }
 
@@ -0,0 +1,151 @@
+package smile.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Striped serial lanes on top of an {@link java.util.concurrent.Executor}. All tasks with the same key are mapped to
+ * the same lane and run one after the other in submit order, tasks of different lanes run in parallel.
+ *
+ * A lane never blocks a worker thread: only a lane with work is scheduled on the executor, it runs one task and
+ * reschedules itself if more tasks are waiting. Different keys can share one lane ( striping ).
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ class TaskLanes {
+
+    /**
+     * Upper bound for the count of lanes.
+     */
+    private static final int MAX_LANES = 1024;
+
+    private final Executor executor;
+
+    private final Lane[] lanes;
+
+    private final int mask;
+
+    /**
+     * @param executor runs the lanes
+     * @param threads count of worker threads, the count of lanes is derived from it
+     */
+    /*package private*/ TaskLanes(Executor executor, int threads) {
+
+        int count = Integer.highestOneBit(Math.max(1, Math.min(threads * 4, MAX_LANES)) * 2 - 1);
+
+        this.executor = executor;
+        this.lanes    = new Lane[count];
+        this.mask     = count - 1;
+
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    private Lane lane(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return lanes[h & mask];
+    }
+
+    /**
+     * @param key tasks with the same key run one after the other
+     * @param task to be execute
+     * @throws java.util.concurrent.RejectedExecutionException if the lane can't be scheduled
+     */
+    /*package private*/ void execute(Object key, Runnable task) {
+        lane(key).execute(task);
+    }
+
+    /**
+     * @param key the key of a task
+     * @return count of queued and running tasks in the lane of the given key.
+     */
+    /*package private*/ int depth(Object key) {
+        return lane(key).depth.get();
+    }
+
+    /**
+     * @return count of queued and running tasks for each lane.
+     */
+    /*package private*/ int[] depths() {
+        int[] depths = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            depths[i] = lanes[i].depth.get();
+        }
+        return depths;
+    }
+
+    /**
+     * Removes all queued tasks, running tasks are not affected.
+     *
+     * @return the removed tasks
+     */
+    /*package private*/ List<Runnable> clear() {
+
+        List<Runnable> removed = new ArrayList<Runnable>();
+
+        for (Lane lane : lanes) {
+            for (Runnable task = lane.tasks.poll(); task != null; task = lane.tasks.poll()) {
+                removed.add(task);
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Runs the tasks of one lane, it's scheduled on the executor while it has tasks. It's no task itself, so
+     * {@link smile.tasks.AbstractTaskQueue#cancel()} doesn't count it.
+     *
+     * @author Andre Kullmann
+     */
+    /*package private*/ final class Lane implements Runnable {
+
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        /**
+         * Count of queued and running tasks, the lane is scheduled while it's greater than zero.
+         */
+        private final AtomicInteger depth = new AtomicInteger();
+
+        private void execute(Runnable task) {
+
+            tasks.add(task);
+
+            if (depth.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    tasks.remove(task);
+                    depth.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+
+            Runnable task = tasks.poll();
+
+            try {
+                if (task != null) {
+                    task.run();
+                }
+            } finally {
+                if (depth.decrementAndGet() > 0) {
+                    try {
+                        executor.execute(this);
+                    } catch (RejectedExecutionException e) {
+                        // executor is shutdown, the queued tasks are removed by clear()
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package smile.tasks;
+
+import smile.threads.MpscRingBuffer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link java.util.concurrent.FutureTask} which publishes itself to the result queue of the task queue as soon as
+ * it's done, regardless if the {@link java.util.concurrent.Callable} returns, throws or the future is cancelled.
+ * So the owner thread gets the completion pushed by the worker thread and no extra thread has to wait for it.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ class TaskQueueFuture<V> extends FutureTask<V> implements CallableTask<V>, TimedTask {
+
+    private final Callable<V> callable;
+
+    private final MpscRingBuffer<? super TaskQueueFuture<V>> resultQueue;
+
+    /**
+     * If true the timestamps are taken, see {@link smile.tasks.AbstractTaskQueue#setProbe(smile.tasks.metrics.TaskQueueProbe, int)}.
+     */
+    private final boolean timed;
+
+    private final long createdNanos;
+
+    /**
+     * Written by the worker before the future is published to the result queue.
+     */
+    private long startedNanos;
+
+    private long doneNanos;
+
+    public TaskQueueFuture(Callable<V> callable, MpscRingBuffer<? super TaskQueueFuture<V>> resultQueue) {
+        this(callable, resultQueue, false);
+    }
+
+    /**
+     * @param callable to be execute
+     * @param resultQueue the future publishes itself to this queue when it's done
+     * @param timed true to take the timestamps for {@link #getQueueWaitNanos()} and {@link #getExecutionNanos()}
+     */
+    public TaskQueueFuture(Callable<V> callable, MpscRingBuffer<? super TaskQueueFuture<V>> resultQueue, boolean timed) {
+        super(callable);
+        this.callable     = callable;
+        this.resultQueue  = resultQueue;
+        this.timed        = timed;
+        this.createdNanos = timed ? System.nanoTime() : 0;
+    }
+
+    public TaskQueueFuture(Runnable runnable, V result, MpscRingBuffer<? super TaskQueueFuture<V>> resultQueue) {
+        this(Executors.callable(runnable, result), resultQueue);
+    }
+
+    public MpscRingBuffer<? super TaskQueueFuture<V>> getResultQueue() {
+        return resultQueue;
+    }
+
+    /**
+     * @return {@link #timed}
+     */
+    @Override
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * @return time from creation until a worker started the future, -1 if not timed or not run by a worker
+     */
+    @Override
+    public long getQueueWaitNanos() {
+        return timed && startedNanos != 0 ? startedNanos - createdNanos : -1;
+    }
+
+    /**
+     * @return time from start until the future was done, or from creation if it was completed without a worker
+     * thread ( see {@link #complete(Object)} ), -1 if not timed
+     */
+    @Override
+    public long getExecutionNanos() {
+        return timed && doneNanos != 0 ? doneNanos - ( startedNanos != 0 ? startedNanos : createdNanos ) : -1;
+    }
+
+    @Override
+    public void run() {
+        if (timed) {
+            startedNanos = System.nanoTime();
+        }
+        super.run();
+    }
+
+    @Override
+    public Callable<V> getCallable() {
+        return callable;
+    }
+
+    @Override
+    public void complete(V result) {
+        set(result);
+    }
+
+    @Override
+    public void completeExceptionally(Throwable cause) {
+        setException(cause);
+    }
+
+    @Override
+    protected void done() {
+        if (timed) {
+            doneNanos = System.nanoTime();
+        }
+        try {
+            super.done();
+        } finally {
+            getResultQueue().put(this);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package smile.tasks;
+
+import smile.tasks.metrics.LatencySnapshot;
+import smile.tasks.metrics.TaskQueueMXBean;
+
+/**
+ * The {@link smile.tasks.metrics.TaskQueueMXBean} of a queue, each attribute is read from a new
+ * {@link smile.tasks.AbstractTaskQueue#stats()} snapshot.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ class TaskQueueMonitor implements TaskQueueMXBean {
+
+    private final AbstractTaskQueue<?> queue;
+
+    /*package private*/ TaskQueueMonitor(AbstractTaskQueue<?> queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public String getName() {
+        return queue.getName();
+    }
+
+    @Override
+    public int getLimit() {
+        return queue.getLimit();
+    }
+
+    @Override
+    public int getLength() {
+        return queue.getLength();
+    }
+
+    @Override
+    public int getThreads() {
+        return queue.stats().getThreads();
+    }
+
+    @Override
+    public long getCompleted() {
+        return queue.stats().getCompleted();
+    }
+
+    @Override
+    public long getFailed() {
+        return queue.stats().getFailed();
+    }
+
+    @Override
+    public long getCancelled() {
+        return queue.stats().getCancelled();
+    }
+
+    @Override
+    public long getRejected() {
+        return queue.stats().getRejected();
+    }
+
+    @Override
+    public double getThroughput() {
+        return queue.stats().getThroughput();
+    }
+
+    @Override
+    public double getWorkerUtilization() {
+        return queue.stats().getWorkerUtilization();
+    }
+
+    @Override
+    public LatencySnapshot getQueueWait() {
+        return queue.stats().getQueueWait();
+    }
+
+    @Override
+    public LatencySnapshot getExecution() {
+        return queue.stats().getExecution();
+    }
+
+    @Override
+    public LatencySnapshot getResultHandler() {
+        return queue.stats().getResultHandler();
+    }
+
+    @Override
+    public LatencySnapshot getSubmitBlocked() {
+        return queue.stats().getSubmitBlocked();
+    }
+}
@@ -0,0 +1,24 @@
+package smile.tasks;
+
+/**
+ * A task which takes the timestamps for the {@link smile.tasks.metrics.TaskQueueProbe} of its queue.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ interface TimedTask {
+
+    /**
+     * @return true if the timestamps are taken
+     */
+    boolean isTimed();
+
+    /**
+     * @return time from creation until a worker started the task, -1 if not timed or not run by a worker
+     */
+    long getQueueWaitNanos();
+
+    /**
+     * @return time from start until the task was done, -1 if not timed
+     */
+    long getExecutionNanos();
+}
@@ -0,0 +1,349 @@
+package smile.tasks.journal;
+
+import smile.threads.DaemonThreadFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append only, memory mapped write ahead log of task ids, used by
+ * {@link smile.tasks.AbstractTaskQueue#submitOnce(long, java.util.concurrent.Callable)} to skip the tasks which
+ * finished in an earlier run of a batch job.
+ *
+ * A record is written with a plain memory write. A background thread forces the written pages to disk once per
+ * commit interval ( group commit ), so a crash loses at most the records of the last interval, which are simply
+ * executed again. Each record has a checksum, a torn record at the end of the file ends the log on recovery.
+ *
+ * Record layout, 16 bytes:
+ *
+ * <pre>
+ *   long id
+ *   int  type      1 = submitted, 2 = completed, 3 = failed
+ *   int  checksum
+ * </pre>
+ *
+ * @author Andre Kullmann
+ */
+public class TaskJournal implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger( TaskJournal.class.getName() );
+
+    private static final int SUBMITTED = 1;
+
+    private static final int COMPLETED = 2;
+
+    private static final int FAILED = 3;
+
+    private static final int RECORD = 16;
+
+    private static final int CHECKSUM_SEED = 0x5EEDF00D;
+
+    /**
+     * The file is mapped and grown in segments of this size.
+     */
+    private static final int SEGMENT = 16 * 1024 * 1024;
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    /**
+     * All mapped segments, guarded by this.
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Index of the first segment with records which are not forced yet, guarded by this.
+     */
+    private int firstDirty;
+
+    /**
+     * True if records are appended since the last {@link #sync()}, guarded by this.
+     */
+    private boolean dirty = false;
+
+    /**
+     * The segment which gets the next record, guarded by this.
+     */
+    private MappedByteBuffer current;
+
+    /**
+     * Write position in {@link #current}, guarded by this.
+     */
+    private int position;
+
+    /**
+     * Ids of the successful tasks of all runs, ids from 0 to {@link Integer#MAX_VALUE}, guarded by this.
+     */
+    private final BitSet completed = new BitSet();
+
+    /**
+     * Ids of the successful tasks of all runs which don't fit into {@link #completed}, guarded by this.
+     */
+    private final Set<Long> completedLarge = new HashSet<Long>();
+
+    private int completedCount = 0;
+
+    private final Thread committer;
+
+    private volatile boolean closed = false;
+
+    public TaskJournal( File file ) throws IOException {
+        this( file, 50, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Opens the journal, the records of an existing file are read.
+     *
+     * @param file the journal file, created if it doesn't exist
+     * @param commitInterval how often the written records are forced to disk
+     * @param unit the unit of commitInterval
+     * @throws IOException if the file can't be read or mapped
+     */
+    public TaskJournal( File file, final long commitInterval, final TimeUnit unit ) throws IOException {
+
+        this.file    = file;
+        this.raf     = new RandomAccessFile( file, "rw" );
+        this.channel = raf.getChannel();
+
+        recover();
+
+        this.committer = new DaemonThreadFactory( "Smile Journal " + file.getName() ).newThread( new Runnable() {
+            @Override
+            public void run() {
+                while( !closed ) {
+                    try {
+                        unit.sleep( commitInterval );
+                        sync();
+                    } catch( InterruptedException e ) {
+                        // closed
+                    } catch( IOException e ) {
+                        LOGGER.log( Level.SEVERE, "can't force journal " + TaskJournal.this.file, e );
+                    }
+                }
+            }
+        });
+        this.committer.start();
+    }
+
+    /**
+     * Maps the existing segments and reads all valid records.
+     */
+    private synchronized void recover() throws IOException {
+
+        long size = channel.size();
+        int count = (int) Math.max( 1, ( size + SEGMENT - 1 ) / SEGMENT );
+
+        for( int i=0; i<count; i++ ) {
+            segments.add( channel.map( FileChannel.MapMode.READ_WRITE, (long) i * SEGMENT, SEGMENT ) );
+        }
+
+        for( int i=0; i<count; i++ ) {
+
+            MappedByteBuffer segment = segments.get( i );
+
+            for( int offset = 0; offset < SEGMENT; offset += RECORD ) {
+
+                long id   = segment.getLong( offset );
+                int type  = segment.getInt( offset + 8 );
+                int check = segment.getInt( offset + 12 );
+
+                if( type == 0 || check != checksum( id, type ) ) {
+                    // end of the log, maybe a torn record
+                    current    = segment;
+                    position   = offset;
+                    firstDirty = i;
+                    clear( segment, offset );
+                    return;
+                }
+
+                if( type == COMPLETED ) {
+                    markCompleted( id );
+                }
+            }
+        }
+
+        current    = nextSegment();
+        position   = 0;
+        firstDirty = segments.size() - 1;
+    }
+
+    /**
+     * Zeros the rest of a segment after a torn record, so the old bytes can't look like records.
+     */
+    private static void clear( MappedByteBuffer segment, int offset ) {
+        for( int i = offset; i < SEGMENT; i += 8 ) {
+            if( segment.getLong( i ) != 0 ) {
+                segment.putLong( i, 0 );
+            }
+        }
+    }
+
+    private static int checksum( long id, int type ) {
+        return (int) ( id ^ ( id >>> 32 ) ) * 31 + type ^ CHECKSUM_SEED;
+    }
+
+    private MappedByteBuffer nextSegment() throws IOException {
+        MappedByteBuffer segment = channel.map( FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT, SEGMENT );
+        segments.add( segment );
+        return segment;
+    }
+
+    private void markCompleted( long id ) {
+
+        boolean added;
+
+        if( id >= 0 && id <= Integer.MAX_VALUE ) {
+            added = !completed.get( (int) id );
+            completed.set( (int) id );
+        } else {
+            added = completedLarge.add( id );
+        }
+
+        if( added ) {
+            completedCount++;
+        }
+    }
+
+    /**
+     * @return {@link #file}
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param id the task id
+     * @return true if the task finished successfully in this or an earlier run
+     */
+    public synchronized boolean isCompleted( long id ) {
+        if( id >= 0 && id <= Integer.MAX_VALUE ) {
+            return completed.get( (int) id );
+        }
+        return completedLarge.contains( id );
+    }
+
+    /**
+     * @return count of successful tasks of this and all earlier runs
+     */
+    public synchronized int getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Records that the task is submitted.
+     *
+     * @param id the task id
+     */
+    public void submitted( long id ) {
+        append( id, SUBMITTED );
+    }
+
+    /**
+     * Records that the result of the task is handled.
+     *
+     * @param id the task id
+     */
+    public synchronized void completed( long id ) {
+        append( id, COMPLETED );
+        markCompleted( id );
+    }
+
+    /**
+     * Records that the exception of the task is handled, the task is not completed.
+     *
+     * @param id the task id
+     */
+    public void failed( long id ) {
+        append( id, FAILED );
+    }
+
+    private synchronized void append( long id, int type ) {
+
+        if( closed ) {
+            throw new IllegalStateException( "journal is closed " + file );
+        }
+
+        if( position == SEGMENT ) {
+            try {
+                current = nextSegment();
+            } catch( IOException e ) {
+                throw new RuntimeException( e );
+            }
+            position = 0;
+        }
+
+        current.putLong( position, id );
+        current.putInt( position + 12, checksum( id, type ) );
+        // the type is written last, a record without type is the end of the log
+        current.putInt( position + 8, type );
+
+        position += RECORD;
+        dirty     = true;
+    }
+
+    /**
+     * Forces all written records to disk, called by the commit thread once per commit interval.
+     *
+     * @throws IOException if the records can't be forced
+     */
+    public void sync() throws IOException {
+
+        List<MappedByteBuffer> unforced;
+
+        synchronized( this ) {
+            if( !dirty ) {
+                return;
+            }
+            unforced   = new ArrayList<MappedByteBuffer>( segments.subList( firstDirty, segments.size() ) );
+            firstDirty = segments.size() - 1;
+            dirty      = false;
+        }
+
+        for( MappedByteBuffer segment : unforced ) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Forces all written records to disk and closes the file.
+     *
+     * @throws IOException if the records can't be forced
+     */
+    @Override
+    public void close() throws IOException {
+
+        synchronized( this ) {
+            if( closed ) {
+                return;
+            }
+            closed = true;
+        }
+
+        committer.interrupt();
+
+        sync();
+
+        channel.close();
+        raf.close();
+    }
+
+    @Override
+    public String toString() {
+        return "[ class: " + getClass().getSimpleName() + ", file: " + file + ", completed: " + getCompletedCount() + " ]";
+    }
+}
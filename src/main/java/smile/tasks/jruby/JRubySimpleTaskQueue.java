@@ -2,6 +2,7 @@ package smile.tasks.jruby;
 
 import org.jruby.Ruby;
 import org.jruby.RubyClass;
+import org.jruby.RubyFixnum;
 import org.jruby.RubyObject;
 import org.jruby.anno.JRubyClass;
 import org.jruby.anno.JRubyMethod;
@@ -12,6 +13,7 @@ import org.jruby.runtime.builtin.IRubyObject;
 import smile.core.friend.jruby.JRubyFriend;
 import smile.core.friend.jruby.JRubyHashFriend;
 import smile.tasks.AbstractTaskQueue;
+import smile.tasks.AdaptiveLimit;
 import smile.tasks.SimpleTaskQueue;
 import smile.tasks.ResultHandler;
 
@@ -63,8 +65,10 @@ public class JRubySimpleTaskQueue extends RubyObject {
      *
      * @param context current jruby thread context
      * @param args first parameter should be an option hash
-     *             :capacity - capacity of the queue
-     *             :threads - count of worker threads
+     *             :capacity - capacity of the queue, the upper bound in adaptive mode
+     *             :threads - count of worker threads, the upper bound in adaptive mode
+     *             :adaptive - true to adjust capacity and threads at runtime ( see {@link smile.tasks.AbstractTaskQueue#setAdaptiveLimit(smile.tasks.AdaptiveLimit)} )
+     *             :ordered - true to invoke on_result in submit order ( see {@link smile.tasks.AbstractTaskQueue#setOrdered(boolean)} )
      * @return this
      */
     @JRubyMethod(name = "initialize", optional = 1)
@@ -74,6 +78,8 @@ public class JRubySimpleTaskQueue extends RubyObject {
         JRubyHashFriend map = friend.array( args ).mapFriend(0);
         int capacity  = map.intValue( "capacity", cpuCount * 5 );
         int threads   = map.intValue( "threads", cpuCount );
+        boolean ordered = map.boolValue( "ordered", false );
+        boolean adaptive = map.boolValue( "adaptive", false );
 
         /*
         this.taskQueue = new DistributedTaskQueue<IRubyObject>(capacity, threads) {
@@ -121,6 +127,10 @@ public class JRubySimpleTaskQueue extends RubyObject {
         };
 
         this.taskQueue = new SimpleTaskQueue<IRubyObject>( capacity, threads, handler );
+        this.taskQueue.setOrdered( ordered );
+        if( adaptive ) {
+            this.taskQueue.setAdaptiveLimit( new AdaptiveLimit() );
+        }
 
         return this;
     }
@@ -193,6 +203,17 @@ public class JRubySimpleTaskQueue extends RubyObject {
         getTaskQueue().await();
     }
 
+    /**
+     *
+     * @param context jruby context
+     * @return the current capacity of the queue
+     * @see smile.tasks.AbstractTaskQueue#getLimit()
+     */
+    @JRubyMethod(name = "limit")
+    public IRubyObject limit(ThreadContext context) {
+        return RubyFixnum.newFixnum( context.getRuntime(), getTaskQueue().getLimit() );
+    }
+
     /**
      *
      * @param context jruby context
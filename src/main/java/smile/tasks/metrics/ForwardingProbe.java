@@ -0,0 +1,22 @@
+package smile.tasks.metrics;
+
+/**
+ * A {@link smile.tasks.metrics.TaskQueueProbe} which passes all events to a next probe, e.g. the
+ * {@link smile.tasks.metrics.TaskQueueMetrics} of the queue. So {@link smile.tasks.AbstractTaskQueue#disableMetrics()}
+ * can remove the metrics from the chain.
+ *
+ * @author Andre Kullmann
+ */
+public interface ForwardingProbe extends TaskQueueProbe {
+
+    /**
+     * @return the probe which gets all events too, may be null
+     */
+    TaskQueueProbe getNext();
+
+    /**
+     * @param next the probe which gets all events too, may be null
+     * @return a probe like this one, but with the given next probe
+     */
+    ForwardingProbe withNext(TaskQueueProbe next);
+}
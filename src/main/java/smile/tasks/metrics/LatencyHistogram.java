@@ -0,0 +1,178 @@
+package smile.tasks.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log linear histogram of durations in nanoseconds with 8 buckets per power of two, so each bucket is at most
+ * 12.5% wide. It's lock free: one thread records, any thread can read. The writer uses ordered writes instead of
+ * atomic increments, so a record costs a few nanoseconds, a reader may see a record in the count but not yet in the
+ * buckets.
+ *
+ * @author Andre Kullmann
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB = 1 << SUB_BITS;
+
+    private static final int BUCKETS = ( 64 - SUB_BITS ) * SUB;
+
+    private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value a duration, not negative
+     * @return the bucket of the value
+     */
+    /*package private*/ static int index( long value ) {
+
+        if( value < SUB ) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int sub      = (int) ( value >>> ( exponent - SUB_BITS ) ) & ( SUB - 1 );
+
+        return ( exponent - SUB_BITS + 1 ) * SUB + sub;
+    }
+
+    /**
+     * @param index a bucket
+     * @return the greatest value of the bucket
+     */
+    /*package private*/ static long upperBound( int index ) {
+
+        int exponent = index / SUB;
+        int sub      = index % SUB;
+
+        if( exponent == 0 ) {
+            return sub;
+        }
+
+        long lower = (long) ( SUB + sub ) << ( exponent - 1 );
+
+        return lower + ( 1L << ( exponent - 1 ) ) - 1;
+    }
+
+    /**
+     * Records one duration. Must always be called by the same thread.
+     *
+     * @param nanos the duration, a negative value is recorded as 0
+     */
+    public void record( long nanos ) {
+        record( nanos, 1 );
+    }
+
+    /**
+     * Records a duration several times. Must always be called by the same thread.
+     *
+     * @param nanos the duration, a negative value is recorded as 0
+     * @param times how often the duration is recorded
+     */
+    public void record( long nanos, long times ) {
+
+        long value = Math.max( 0, nanos );
+        int index  = index( value );
+
+        buckets.lazySet( index, buckets.get( index ) + times );
+        sum.lazySet( sum.get() + value * times );
+        count.lazySet( count.get() + times );
+
+        if( value > max.get() ) {
+            max.lazySet( value );
+        }
+    }
+
+    /**
+     * @return count of recorded durations
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the greatest recorded duration
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the average duration, 0 if nothing is recorded
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * @param percentile between 0 and 1, e.g. 0.99
+     * @return the upper bound of the bucket which holds the percentile, at most {@link #getMax()}
+     */
+    public long getPercentile( double percentile ) {
+
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+
+        for( int i=0; i<BUCKETS; i++ ) {
+            counts[i] = buckets.get( i );
+            total += counts[i];
+        }
+
+        return percentile( counts, total, percentile );
+    }
+
+    private long percentile( long[] counts, long total, double percentile ) {
+
+        if( total == 0 ) {
+            return 0;
+        }
+
+        long rank = Math.max( 1, (long) Math.ceil( percentile * total ) );
+        long seen = 0;
+
+        for( int i=0; i<BUCKETS; i++ ) {
+            seen += counts[i];
+            if( seen >= rank ) {
+                return Math.min( upperBound( i ), getMax() );
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * @return the current count, mean, percentiles and max
+     */
+    public LatencySnapshot snapshot() {
+
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+
+        for( int i=0; i<BUCKETS; i++ ) {
+            counts[i] = buckets.get( i );
+            total += counts[i];
+        }
+
+        return new LatencySnapshot(
+                total,
+                getMean(),
+                percentile( counts, total, 0.5 ),
+                percentile( counts, total, 0.9 ),
+                percentile( counts, total, 0.99 ),
+                percentile( counts, total, 0.999 ),
+                getMax() );
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,94 @@
+package smile.tasks.metrics;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * An immutable snapshot of a {@link smile.tasks.metrics.LatencyHistogram}, all durations in nanoseconds.
+ * The percentiles are the upper bounds of their histogram buckets, at most 12.5% above the real value.
+ *
+ * @author Andre Kullmann
+ */
+public class LatencySnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long count;
+
+    private final long mean;
+
+    private final long p50;
+
+    private final long p90;
+
+    private final long p99;
+
+    private final long p999;
+
+    private final long max;
+
+    @ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "p999", "max" })
+    public LatencySnapshot(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.mean  = mean;
+        this.p50   = p50;
+        this.p90   = p90;
+        this.p99   = p99;
+        this.p999  = p999;
+        this.max   = max;
+    }
+
+    /**
+     * @return {@link #count}
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return {@link #mean}
+     */
+    public long getMean() {
+        return mean;
+    }
+
+    /**
+     * @return {@link #p50}
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * @return {@link #p90}
+     */
+    public long getP90() {
+        return p90;
+    }
+
+    /**
+     * @return {@link #p99}
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * @return {@link #p999}
+     */
+    public long getP999() {
+        return p999;
+    }
+
+    /**
+     * @return {@link #max}
+     */
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "[ count: " + count + ", mean: " + mean + ", p50: " + p50 + ", p90: " + p90 + ", p99: " + p99 + ", p999: " + p999 + ", max: " + max + " ]";
+    }
+}
@@ -0,0 +1,41 @@
+package smile.tasks.metrics;
+
+/**
+ * The management interface of a task queue with metrics, registered as
+ * {@code smile.tasks:type=TaskQueue,name=<queue name>} by {@link smile.tasks.AbstractTaskQueue#enableMetrics()}.
+ * All durations are in nanoseconds.
+ *
+ * @see smile.tasks.metrics.TaskQueueStats
+ *
+ * @author Andre Kullmann
+ */
+public interface TaskQueueMXBean {
+
+    String getName();
+
+    int getLimit();
+
+    int getLength();
+
+    int getThreads();
+
+    long getCompleted();
+
+    long getFailed();
+
+    long getCancelled();
+
+    long getRejected();
+
+    double getThroughput();
+
+    double getWorkerUtilization();
+
+    LatencySnapshot getQueueWait();
+
+    LatencySnapshot getExecution();
+
+    LatencySnapshot getResultHandler();
+
+    LatencySnapshot getSubmitBlocked();
+}
@@ -0,0 +1,110 @@
+package smile.tasks.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link smile.tasks.metrics.TaskQueueProbe}, it records the durations in
+ * {@link smile.tasks.metrics.LatencyHistogram} objects and counts the outcomes. One instance belongs to one queue,
+ * because the histograms have a single writer, the owner thread.
+ *
+ * @author Andre Kullmann
+ */
+public class TaskQueueMetrics implements TaskQueueProbe {
+
+    private final long startNanos = System.nanoTime();
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    private final LatencyHistogram execution = new LatencyHistogram();
+
+    private final LatencyHistogram resultHandler = new LatencyHistogram();
+
+    private final LatencyHistogram submitBlocked = new LatencyHistogram();
+
+    // only written by the owner thread
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    // written by any thread
+
+    private final AtomicLong cancelled = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private void record( long queueWaitNanos, long executionNanos ) {
+        if( queueWaitNanos >= 0 ) {
+            queueWait.record( queueWaitNanos );
+        }
+        if( executionNanos >= 0 ) {
+            execution.record( executionNanos );
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void onCompleted( long queueWaitNanos, long executionNanos ) {
+        completed.lazySet( completed.get() + 1 );
+        record( queueWaitNanos, executionNanos );
+    }
+
+    @Override
+    public void onFailed( long queueWaitNanos, long executionNanos ) {
+        failed.lazySet( failed.get() + 1 );
+        record( queueWaitNanos, executionNanos );
+    }
+
+    @Override
+    public void onCancelled( int count ) {
+        cancelled.addAndGet( count );
+    }
+
+    @Override
+    public void onRejected() {
+        rejected.incrementAndGet();
+    }
+
+    @Override
+    public void onResultsHandled( int count, long nanos ) {
+        resultHandler.record( nanos / count, count );
+    }
+
+    @Override
+    public void onSubmitBlocked( long nanos ) {
+        submitBlocked.record( nanos );
+    }
+
+    /**
+     * @param name the queue name
+     * @param limit the current capacity of the queue
+     * @param length count of submitted and not yet handled tasks
+     * @param threads count of worker threads
+     * @return a snapshot of the metrics
+     */
+    public TaskQueueStats snapshot( String name, int limit, int length, int threads ) {
+
+        long handled = completed.get() + failed.get();
+
+        return new TaskQueueStats(
+                name,
+                System.nanoTime() - startNanos,
+                limit,
+                length,
+                threads,
+                completed.get(),
+                failed.get(),
+                cancelled.get(),
+                rejected.get(),
+                // the execution times are sampled
+                execution.getMean() * handled,
+                queueWait.snapshot(),
+                execution.snapshot(),
+                resultHandler.snapshot(),
+                submitBlocked.snapshot() );
+    }
+}
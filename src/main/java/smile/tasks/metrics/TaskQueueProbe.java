@@ -0,0 +1,62 @@
+package smile.tasks.metrics;
+
+/**
+ * Gets the events of a task queue, see {@link smile.tasks.AbstractTaskQueue#setProbe(TaskQueueProbe)}.
+ * All methods are called on the owner thread of the queue, except {@link #onRejected()} and {@link #onCancelled(int)}.
+ * The methods are called for each task, they must be fast.
+ *
+ * @author Andre Kullmann
+ */
+public interface TaskQueueProbe {
+
+    /**
+     * Checked before a task or a batch of results is timed, so a probe which records nothing at the moment, e.g.
+     * while no recording is running, costs no timestamps. The outcome of each task is reported anyway.
+     *
+     * @return true if the probe needs the timings now
+     */
+    boolean isEnabled();
+
+    /**
+     * A task returned a result.
+     *
+     * @param queueWaitNanos time from submit until a worker started the task, -1 if unknown
+     * @param executionNanos time the worker executed the task, -1 if unknown
+     */
+    void onCompleted(long queueWaitNanos, long executionNanos);
+
+    /**
+     * A task threw an exception or missed its deadline.
+     *
+     * @param queueWaitNanos time from submit until a worker started the task, -1 if unknown
+     * @param executionNanos time the worker executed the task, -1 if unknown
+     */
+    void onFailed(long queueWaitNanos, long executionNanos);
+
+    /**
+     * Tasks are cancelled before they are finished.
+     *
+     * @param count count of cancelled tasks
+     */
+    void onCancelled(int count);
+
+    /**
+     * A submit was rejected, e.g. because the worker pool is shutdown.
+     */
+    void onRejected();
+
+    /**
+     * The {@link smile.tasks.ResultHandler} has handled results.
+     *
+     * @param count count of handled results
+     * @param nanos time spent in the result handler
+     */
+    void onResultsHandled(int count, long nanos);
+
+    /**
+     * The owner thread waited in submit for a free permit, the memory budget or the heap pressure throttle.
+     *
+     * @param nanos time the owner thread was blocked
+     */
+    void onSubmitBlocked(long nanos);
+}
@@ -0,0 +1,207 @@
+package smile.tasks.metrics;
+
+import java.io.Serializable;
+
+/**
+ * An immutable snapshot of the metrics of a task queue, see {@link smile.tasks.AbstractTaskQueue#stats()}.
+ * All durations are in nanoseconds. The counts and rates cover the time since the metrics were enabled, the
+ * difference of two snapshots gives the values of the time between.
+ *
+ * @author Andre Kullmann
+ */
+public class TaskQueueStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    private final long elapsedNanos;
+
+    private final int limit;
+
+    private final int length;
+
+    private final int threads;
+
+    private final long completed;
+
+    private final long failed;
+
+    private final long cancelled;
+
+    private final long rejected;
+
+    private final long busyNanos;
+
+    private final LatencySnapshot queueWait;
+
+    private final LatencySnapshot execution;
+
+    private final LatencySnapshot resultHandler;
+
+    private final LatencySnapshot submitBlocked;
+
+    public TaskQueueStats(
+            String name,
+            long elapsedNanos,
+            int limit,
+            int length,
+            int threads,
+            long completed,
+            long failed,
+            long cancelled,
+            long rejected,
+            long busyNanos,
+            LatencySnapshot queueWait,
+            LatencySnapshot execution,
+            LatencySnapshot resultHandler,
+            LatencySnapshot submitBlocked) {
+
+        this.name          = name;
+        this.elapsedNanos  = elapsedNanos;
+        this.limit         = limit;
+        this.length        = length;
+        this.threads       = threads;
+        this.completed     = completed;
+        this.failed        = failed;
+        this.cancelled     = cancelled;
+        this.rejected      = rejected;
+        this.busyNanos     = busyNanos;
+        this.queueWait     = queueWait;
+        this.execution     = execution;
+        this.resultHandler = resultHandler;
+        this.submitBlocked = submitBlocked;
+    }
+
+    /**
+     * @return {@link #name}, the queue name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return {@link #elapsedNanos}, the time since the metrics were enabled
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return {@link #limit}, the current capacity of the queue
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return {@link #length}, count of submitted and not yet handled tasks
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return {@link #threads}, count of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return {@link #completed}, count of handled results
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return {@link #failed}, count of handled exceptions
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return {@link #cancelled}
+     */
+    public long getCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return {@link #rejected}
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return {@link #busyNanos}, the sum of the execution times of all handled tasks, estimated from the sampled
+     * execution times
+     */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * @return handled results and exceptions per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : ( completed + failed ) * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return the part of the time the worker threads executed tasks, between 0 and 1
+     */
+    public double getWorkerUtilization() {
+        return elapsedNanos == 0 || threads == 0 ? 0 : Math.min( 1.0, (double) busyNanos / elapsedNanos / threads );
+    }
+
+    /**
+     * @return {@link #queueWait}, time from submit until a worker starts the task
+     */
+    public LatencySnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * @return {@link #execution}, time a worker executes the task
+     */
+    public LatencySnapshot getExecution() {
+        return execution;
+    }
+
+    /**
+     * @return {@link #resultHandler}, time the {@link smile.tasks.ResultHandler} needs per result
+     */
+    public LatencySnapshot getResultHandler() {
+        return resultHandler;
+    }
+
+    /**
+     * @return {@link #submitBlocked}, time the owner thread is blocked in a submit
+     */
+    public LatencySnapshot getSubmitBlocked() {
+        return submitBlocked;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "[ name: \"" ).append( name ).append( "\", " );
+        sb.append( "limit: " ).append( limit ).append( ", " );
+        sb.append( "length: " ).append( length ).append( ", " );
+        sb.append( "completed: " ).append( completed ).append( ", " );
+        sb.append( "failed: " ).append( failed ).append( ", " );
+        sb.append( "cancelled: " ).append( cancelled ).append( ", " );
+        sb.append( "rejected: " ).append( rejected ).append( ", " );
+        sb.append( String.format( "throughput: %.1f/s, ", getThroughput() ) );
+        sb.append( String.format( "utilization: %.2f, ", getWorkerUtilization() ) );
+        sb.append( "queueWait: " ).append( queueWait ).append( ", " );
+        sb.append( "execution: " ).append( execution ).append( ", " );
+        sb.append( "resultHandler: " ).append( resultHandler ).append( ", " );
+        sb.append( "submitBlocked: " ).append( submitBlocked );
+        return sb.append( " ]" ).toString();
+    }
+}
@@ -0,0 +1,113 @@
+package smile.tasks.remote;
+
+import smile.threads.DaemonThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The main class of a child process of {@link smile.tasks.remote.ProcessExecutorService}. It takes the tasks from one
+ * {@link smile.tasks.remote.MappedRingBuffer} and puts the results into another one. The child process exits as soon
+ * as its standard input is closed, which happens when the parent process ends.
+ *
+ * Arguments: tasks file, results file, ring buffer capacity, count of threads
+ *
+ * @author Andre Kullmann
+ */
+public class ChildProcessWorker {
+
+    private final MappedRingBuffer tasks;
+
+    private final MappedRingBuffer results;
+
+    private final ExecutorService workerPool;
+
+    public ChildProcessWorker( MappedRingBuffer tasks, MappedRingBuffer results, int threads ) {
+        this.tasks      = tasks;
+        this.results    = results;
+        this.workerPool = Executors.newFixedThreadPool( threads, new DaemonThreadFactory( "Smile Child Worker" ) );
+    }
+
+    /**
+     * Takes the tasks until the tasks ring buffer is closed.
+     */
+    public void run() {
+
+        for( MappedRingBuffer.Frame frame = tasks.take(); frame != null; frame = tasks.take() ) {
+            workerPool.execute( new ChildTask( frame ) );
+        }
+    }
+
+    /**
+     * Deserializes and calls one callable on a worker thread.
+     */
+    private class ChildTask implements Runnable {
+
+        private final MappedRingBuffer.Frame frame;
+
+        private ChildTask( MappedRingBuffer.Frame frame ) {
+            this.frame = frame;
+        }
+
+        @Override
+        public void run() {
+
+            byte[] result;
+            byte type;
+
+            try {
+                Callable<?> callable = (Callable<?>) Frames.deserialize( frame.getPayload() );
+                result = Frames.serialize( callable.call() );
+                type   = Frames.RESULT;
+            } catch( Throwable t ) {
+                result = Frames.serializeException( t );
+                type   = Frames.ERROR;
+            }
+
+            try {
+                results.put( type, frame.getId(), result );
+            } catch( IOException e ) {
+                try {
+                    results.put( Frames.ERROR, frame.getId(), Frames.serializeException( e ) );
+                } catch( IOException closed ) {
+                    // the parent is gone
+                }
+            }
+        }
+    }
+
+    /**
+     * @param args tasks file, results file, ring buffer capacity, count of threads
+     * @throws IOException if the files can't be mapped
+     */
+    public static void main( String[] args ) throws IOException {
+
+        int capacity = Integer.parseInt( args[2] );
+        int threads  = Integer.parseInt( args[3] );
+
+        final MappedRingBuffer tasks = new MappedRingBuffer( new File( args[0] ), capacity );
+        MappedRingBuffer results     = new MappedRingBuffer( new File( args[1] ), capacity );
+
+        // the parent closes the pipe or dies
+        Thread watchdog = new DaemonThreadFactory( "Smile Child Watchdog" ).newThread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while( System.in.read() >= 0 ) {
+                        // wait for end of stream
+                    }
+                } catch( IOException e ) {
+                    // parent is gone
+                }
+                tasks.close();
+                Runtime.getRuntime().halt( 0 );
+            }
+        });
+        watchdog.start();
+
+        new ChildProcessWorker( tasks, results, threads ).run();
+    }
+}
@@ -0,0 +1,250 @@
+package smile.tasks.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One non-blocking socket of a {@link smile.tasks.remote.FrameLoop}. Any thread can send frames, the frames are
+ * queued and written by the loop thread. All frames queued until the loop thread flushes are written with one
+ * gathering write, so many small results or tasks share one system call.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ class Connection {
+
+    /**
+     * Max count of buffers per gathering write.
+     */
+    private static final int MAX_GATHER = 1024;
+
+    private final FrameLoop loop;
+
+    private final SocketChannel channel;
+
+    private final SelectionKey key;
+
+    /**
+     * Frames sent by any thread, not yet seen by the loop thread.
+     */
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * True while a flush of this connection is requested but not yet done, so only the first send of a batch wakes up
+     * the loop thread.
+     */
+    private final AtomicBoolean flushRequested = new AtomicBoolean( false );
+
+    /**
+     * Frames taken from {@link #outbound} but not completely written, only used by the loop thread.
+     */
+    private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<ByteBuffer>();
+
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    /**
+     * Received bytes, only used by the loop thread.
+     */
+    private ByteBuffer readBuffer = ByteBuffer.allocate( 64 * 1024 );
+
+    private final AtomicBoolean closed = new AtomicBoolean( false );
+
+    /**
+     * The challenge this side sent, null until it's sent, only used by the loop thread.
+     */
+    private byte[] challenge;
+
+    /**
+     * True if the other side answered the challenge, see {@link smile.tasks.remote}.
+     */
+    private volatile boolean authenticated = false;
+
+    /*package private*/ Connection( FrameLoop loop, SocketChannel channel, SelectionKey key ) {
+        this.loop    = loop;
+        this.channel = channel;
+        this.key     = key;
+    }
+
+    /**
+     * @return {@link #channel}
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return {@link #closed}
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * @return {@link #challenge}
+     */
+    /*package private*/ byte[] getChallenge() {
+        return challenge;
+    }
+
+    /**
+     * @param challenge the challenge this side sent
+     */
+    /*package private*/ void setChallenge( byte[] challenge ) {
+        this.challenge = challenge;
+    }
+
+    /**
+     * @return {@link #authenticated}
+     */
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    /**
+     * Called by the loop thread when the other side answered the challenge.
+     */
+    /*package private*/ void authenticated() {
+        this.authenticated = true;
+        this.challenge     = null;
+    }
+
+    /**
+     * Queues the given frame, can be called by any thread.
+     *
+     * @param frame see {@link smile.tasks.remote.Frames#frame(byte, long, byte[])}
+     */
+    public void send( ByteBuffer frame ) {
+
+        outbound.add( frame );
+
+        if( flushRequested.compareAndSet( false, true ) ) {
+            loop.requestFlush( this );
+        }
+    }
+
+    /**
+     * Writes as many queued frames as the socket accepts. Called by the loop thread.
+     *
+     * @throws IOException if the write fails
+     */
+    /*package private*/ void flush() throws IOException {
+
+        flushRequested.set( false );
+
+        for( ByteBuffer frame = outbound.poll(); frame != null; frame = outbound.poll() ) {
+            writing.add( frame );
+        }
+
+        while( !writing.isEmpty() ) {
+
+            int count = 0;
+            for( ByteBuffer frame : writing ) {
+                gather[count++] = frame;
+                if( count == MAX_GATHER ) {
+                    break;
+                }
+            }
+
+            channel.write( gather, 0, count );
+
+            for( int i=0; i<count; i++ ) {
+                gather[i] = null;
+            }
+
+            int written = 0;
+            while( !writing.isEmpty() && !writing.peekFirst().hasRemaining() ) {
+                writing.pollFirst();
+                written++;
+            }
+
+            if( written < count ) {
+                // the socket buffer is full, continue on OP_WRITE
+                break;
+            }
+        }
+
+        if( key.isValid() ) {
+            key.interestOps( writing.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+        }
+    }
+
+    /**
+     * Reads the available bytes and hands each complete frame to {@link smile.tasks.remote.FrameLoop#onFrame(Connection, byte, long, byte[])}.
+     * Called by the loop thread.
+     *
+     * Stops if a frame closed the connection.
+     *
+     * @throws IOException if the read fails, the peer closed the connection or sent an illegal frame
+     */
+    /*package private*/ void read() throws IOException {
+
+        if( channel.read( readBuffer ) < 0 ) {
+            throw new IOException( "connection closed by peer " + channel.socket().getRemoteSocketAddress() );
+        }
+
+        readBuffer.flip();
+
+        while( readBuffer.remaining() >= 4 && !isClosed() ) {
+
+            int length = readBuffer.getInt( readBuffer.position() );
+
+            // an unauthenticated peer must not make this side allocate a big buffer
+            if( length < Frames.HEADER || length > ( authenticated ? Frames.MAX_FRAME : Frames.MAX_HANDSHAKE_FRAME ) ) {
+                throw new IOException( "illegal frame length " + length );
+            }
+
+            if( readBuffer.remaining() < 4 + length ) {
+
+                if( readBuffer.capacity() < 4 + length ) {
+                    ByteBuffer bigger = ByteBuffer.allocate( 4 + length );
+                    bigger.put( readBuffer );
+                    bigger.flip();
+                    readBuffer = bigger;
+                }
+                break;
+            }
+
+            readBuffer.getInt();
+            byte type = readBuffer.get();
+            long id   = readBuffer.getLong();
+            byte[] payload = new byte[length - Frames.HEADER];
+            readBuffer.get( payload );
+
+            loop.onFrame( this, type, id, payload );
+        }
+
+        readBuffer.compact();
+    }
+
+    /**
+     * Closes the socket, can be called by any thread.
+     *
+     * @return false if the connection was already closed
+     */
+    public boolean close() {
+
+        if( !closed.compareAndSet( false, true ) ) {
+            return false;
+        }
+
+        key.cancel();
+
+        try {
+            channel.close();
+        } catch( IOException e ) {
+            // ignore
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "[ connection: " + channel.socket().getRemoteSocketAddress() + " ]";
+    }
+}
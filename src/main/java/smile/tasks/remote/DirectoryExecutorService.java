@@ -0,0 +1,650 @@
+package smile.tasks.remote;
+
+import smile.tasks.CallableTask;
+import smile.tasks.SerializingExecutorService;
+import smile.threads.DaemonThreadFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link java.util.concurrent.ExecutorService} whose backlog is a directory on the local disk, shared by all jvm
+ * processes on the host which open an executor on the same directory. Each executor is a node: it puts its tasks into
+ * the shared backlog, its worker threads execute the tasks of all nodes, and it receives the results of its own tasks.
+ * No broker process is needed.
+ *
+ * Layout of the directory:
+ *
+ * <pre>
+ *   pending/&lt;time&gt;-&lt;node&gt;-&lt;id&gt;.task   the backlog, the serialized callables, oldest first
+ *   claimed/&lt;node&gt;/...                the tasks a node is working on
+ *   results/&lt;node&gt;/&lt;id&gt;.result       the results for a node, type byte and serialized result or exception
+ *   nodes/&lt;node&gt;                      heartbeat, the modification time is updated by its node
+ *   tmp/                              files are written here and renamed into place when complete
+ * </pre>
+ *
+ * A task is claimed by renaming it from pending into the own claimed directory, the rename is atomic, so only one
+ * node gets it. A worker claims only the task it executes next. If the heartbeat of a node is older than the stale
+ * timeout, another node moves its claimed tasks back to pending and removes its backlog and results, so the tasks of
+ * a crashed node are executed again by the others. A node which is declared stale while it's alive, e.g. because of
+ * a long gc pause, fails all its tasks in flight with an {@link java.io.IOException}.
+ *
+ * Only {@link smile.tasks.CallableTask} objects can be executed, their {@link java.util.concurrent.Callable} and its
+ * result must be {@link java.io.Serializable} and the classes must be on the class path of all nodes.
+ *
+ * Keyed and timed submits and the adaptive limit of the queue are not supported, they throw an
+ * {@link java.lang.UnsupportedOperationException}, see {@link smile.tasks.SerializingExecutorService}.
+ *
+ * @see smile.tasks.DirectoryTaskQueue
+ *
+ * @author Andre Kullmann
+ */
+public class DirectoryExecutorService extends AbstractExecutorService implements SerializingExecutorService {
+
+    private static final Logger LOGGER = Logger.getLogger( DirectoryExecutorService.class.getName() );
+
+    private static final String TASK = ".task";
+
+    private static final String RESULT = ".result";
+
+    /**
+     * The longest pause of an idle worker or reader between two directory scans.
+     */
+    private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos( 10 );
+
+    private static final Random RANDOM = new Random();
+
+    private final String node;
+
+    private final File pendingDir;
+
+    private final File claimedDir;
+
+    private final File resultsDir;
+
+    private final File nodesDir;
+
+    private final File tmpDir;
+
+    private final File heartbeat;
+
+    private final long staleTimeout;
+
+    /**
+     * The own tasks which wait for their result.
+     */
+    private final Map<Long, CallableTask<Object>> pending = new ConcurrentHashMap<Long, CallableTask<Object>>();
+
+    /**
+     * Names of pending tasks from the last scan, shared by the worker threads, guarded by itself.
+     */
+    private final ArrayDeque<String> candidates = new ArrayDeque<String>();
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final AtomicLong tmpIds = new AtomicLong();
+
+    private final AtomicInteger executed = new AtomicInteger();
+
+    private final AtomicInteger recovered = new AtomicInteger();
+
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    private final Thread heartbeatThread;
+
+    private final CountDownLatch terminated = new CountDownLatch( 1 );
+
+    private volatile boolean shutdown = false;
+
+    /**
+     * False when the threads of this node stop.
+     */
+    private volatile boolean running = true;
+
+    public DirectoryExecutorService( File directory, int threads ) throws IOException {
+        this( directory, threads, 10, TimeUnit.SECONDS );
+    }
+
+    /**
+     * Joins the shared backlog in the given directory and starts the worker threads.
+     *
+     * @param directory the shared directory, created if it doesn't exist
+     * @param threads count of worker threads of this node, 0 if the node only submits tasks
+     * @param staleTimeout a node without heartbeat for this time is treated as crashed, the heartbeat is written five
+     *                     times per stale timeout
+     * @param unit the unit of staleTimeout
+     * @throws IOException if the directories can't be created
+     */
+    public DirectoryExecutorService( File directory, int threads, long staleTimeout, TimeUnit unit ) throws IOException {
+
+        this.node         = Long.toString( RANDOM.nextLong() & Long.MAX_VALUE, 36 );
+        this.pendingDir   = new File( directory, "pending" );
+        this.claimedDir   = new File( new File( directory, "claimed" ), node );
+        this.resultsDir   = new File( new File( directory, "results" ), node );
+        this.nodesDir     = new File( directory, "nodes" );
+        this.tmpDir       = new File( directory, "tmp" );
+        this.heartbeat    = new File( nodesDir, node );
+        this.staleTimeout = unit.toMillis( staleTimeout );
+
+        for( File dir : new File[] { pendingDir, claimedDir, resultsDir, nodesDir, tmpDir } ) {
+            if( !dir.isDirectory() && !dir.mkdirs() ) {
+                throw new IOException( "can't create directory " + dir );
+            }
+        }
+
+        if( !heartbeat.createNewFile() ) {
+            throw new IOException( "node exists " + heartbeat );
+        }
+
+        DaemonThreadFactory factory = new DaemonThreadFactory( "Smile Directory " + node );
+
+        for( int i=0; i<threads; i++ ) {
+            this.threads.add( factory.newThread( new Worker() ) );
+        }
+        this.heartbeatThread = factory.newThread( new Heartbeat() );
+
+        this.threads.add( factory.newThread( new ResultReader() ) );
+        this.threads.add( heartbeatThread );
+
+        for( Thread thread : this.threads ) {
+            thread.start();
+        }
+    }
+
+    /**
+     * @return {@link #node}, the name of this node in the shared directory
+     */
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * @return count of tasks, of all nodes, executed by the workers of this node
+     */
+    public int getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * @return count of tasks this node moved back to the backlog because their node was stale
+     */
+    public int getRecovered() {
+        return recovered.get();
+    }
+
+    /**
+     * Writes the callable of the given task into the shared backlog.
+     *
+     * @param command must be a {@link smile.tasks.CallableTask}
+     * @throws RejectedExecutionException if the executor is shutdown or the command is no {@link smile.tasks.CallableTask}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void execute( Runnable command ) {
+
+        if( shutdown ) {
+            throw new RejectedExecutionException( "executor is shutdown." );
+        }
+
+        if( !( command instanceof CallableTask ) ) {
+            throw new RejectedExecutionException( "only a " + CallableTask.class.getName() + " can be executed by a directory node: " + command );
+        }
+
+        CallableTask<Object> task = (CallableTask<Object>) command;
+
+        long id = ids.incrementAndGet();
+
+        pending.put( id, task );
+
+        try {
+            // the time first, so the backlog is sorted by age over all nodes
+            String name = String.format( "%013d-%s-%d%s", System.currentTimeMillis(), node, id, TASK );
+            publish( Frames.serialize( task.getCallable() ), new File( pendingDir, name ) );
+        } catch( IOException e ) {
+            if( pending.remove( id ) != null ) {
+                task.completeExceptionally( e );
+            }
+        }
+    }
+
+    /**
+     * Writes the data into a temporary file and renames it to the target, so no other node sees a partial file.
+     *
+     * @throws IOException if the file can't be written or renamed
+     */
+    private void publish( byte[] data, File target ) throws IOException {
+
+        File tmp = new File( tmpDir, node + "-" + tmpIds.incrementAndGet() );
+
+        FileOutputStream out = new FileOutputStream( tmp );
+        try {
+            out.write( data );
+        } finally {
+            out.close();
+        }
+
+        if( !tmp.renameTo( target ) ) {
+            tmp.delete();
+            throw new IOException( "can't rename " + tmp + " to " + target );
+        }
+    }
+
+    /**
+     * @return the name of the next pending task, which may be claimed by another node meanwhile, null if the backlog is empty
+     */
+    private String nextCandidate() {
+        synchronized( candidates ) {
+            if( candidates.isEmpty() ) {
+                String[] names = pendingDir.list();
+                if( names != null ) {
+                    Arrays.sort( names );
+                    candidates.addAll( Arrays.asList( names ) );
+                }
+            }
+            return candidates.poll();
+        }
+    }
+
+    /**
+     * Parks an idle thread, from 100 microseconds up to {@link #MAX_POLL_NANOS}.
+     *
+     * @param idle count of unsuccessful scans
+     */
+    private static void pause( int idle ) {
+        LockSupport.parkNanos( Math.min( MAX_POLL_NANOS, 100000L * ( idle + 1 ) ) );
+    }
+
+    /**
+     * Claims and executes the tasks of the backlog.
+     */
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+
+            for( int idle = 0; running; ) {
+
+                String name = nextCandidate();
+
+                if( name == null ) {
+                    pause( idle++ );
+                    continue;
+                }
+
+                if( !name.endsWith( TASK ) ) {
+                    continue;
+                }
+
+                File claimed = new File( claimedDir, name );
+
+                // only one node wins the rename
+                if( new File( pendingDir, name ).renameTo( claimed ) ) {
+                    execute( claimed );
+                    idle = 0;
+                }
+            }
+        }
+
+        private void execute( File claimed ) {
+
+            String name = claimed.getName();
+            int first   = name.indexOf( '-' );
+            int last    = name.lastIndexOf( '-' );
+            String from = name.substring( first + 1, last );
+            String id   = name.substring( last + 1, name.length() - TASK.length() );
+
+            byte[] result;
+            byte type;
+
+            try {
+                Callable<?> callable = (Callable<?>) Frames.deserialize( Files.readAllBytes( claimed.toPath() ) );
+                result = Frames.serialize( callable.call() );
+                type   = Frames.RESULT;
+            } catch( Throwable t ) {
+                result = Frames.serializeException( t );
+                type   = Frames.ERROR;
+            }
+
+            executed.incrementAndGet();
+
+            File inbox = new File( resultsDir.getParentFile(), from );
+
+            // the results of a removed node are dropped
+            if( inbox.isDirectory() ) {
+
+                byte[] data = new byte[result.length + 1];
+                data[0] = type;
+                System.arraycopy( result, 0, data, 1, result.length );
+
+                try {
+                    publish( data, new File( inbox, id + RESULT ) );
+                } catch( IOException e ) {
+                    LOGGER.log( Level.WARNING, "can't write result of " + name, e );
+                }
+            }
+
+            claimed.delete();
+        }
+    }
+
+    /**
+     * Completes the own tasks with the results written by the workers of all nodes.
+     */
+    private class ResultReader implements Runnable {
+
+        @Override
+        public void run() {
+
+            for( int idle = 0; running; ) {
+
+                String[] names = resultsDir.list();
+
+                if( names == null || names.length == 0 ) {
+                    pause( idle++ );
+                    continue;
+                }
+
+                idle = 0;
+
+                for( String name : names ) {
+                    complete( new File( resultsDir, name ) );
+                }
+
+                if( shutdown ) {
+                    tryTerminate();
+                }
+            }
+        }
+
+        private void complete( File file ) {
+
+            String name = file.getName();
+
+            if( !name.endsWith( RESULT ) ) {
+                return;
+            }
+
+            byte[] data;
+            try {
+                data = Files.readAllBytes( file.toPath() );
+            } catch( IOException e ) {
+                LOGGER.log( Level.WARNING, "can't read result " + file, e );
+                return;
+            }
+
+            file.delete();
+
+            CallableTask<Object> task = pending.remove( Long.parseLong( name.substring( 0, name.length() - RESULT.length() ) ) );
+
+            // a task of a stale node can be executed twice
+            if( task == null || data.length == 0 ) {
+                return;
+            }
+
+            try {
+                Object value = Frames.deserialize( Arrays.copyOfRange( data, 1, data.length ) );
+                if( data[0] == Frames.RESULT ) {
+                    task.complete( value );
+                } else {
+                    task.completeExceptionally( (Throwable) value );
+                }
+            } catch( Exception e ) {
+                task.completeExceptionally( e );
+            }
+        }
+    }
+
+    /**
+     * Writes the own heartbeat and recovers the tasks of stale nodes.
+     */
+    private class Heartbeat implements Runnable {
+
+        @Override
+        public void run() {
+
+            while( running ) {
+
+                try {
+                    Thread.sleep( Math.max( 1, staleTimeout / 5 ) );
+                } catch( InterruptedException e ) {
+                    continue;
+                }
+
+                if( !heartbeat.setLastModified( System.currentTimeMillis() ) ) {
+                    failStale();
+                    return;
+                }
+
+                String[] nodes = nodesDir.list();
+
+                if( nodes == null ) {
+                    continue;
+                }
+
+                for( String other : nodes ) {
+                    File file = new File( nodesDir, other );
+                    long modified = file.lastModified();
+                    if( !other.equals( node ) && modified != 0 && System.currentTimeMillis() - modified > staleTimeout ) {
+                        recover( other, file );
+                    }
+                }
+            }
+        }
+
+        /**
+         * Another node has removed this node, its tasks are gone.
+         */
+        private void failStale() {
+
+            LOGGER.severe( "node " + node + " was declared stale." );
+
+            IOException cause = new IOException( "node " + node + " was declared stale by another node." );
+
+            for( Long id : pending.keySet() ) {
+                CallableTask<Object> task = pending.remove( id );
+                if( task != null ) {
+                    task.completeExceptionally( cause );
+                }
+            }
+
+            running = false;
+            shutdown = true;
+            terminated.countDown();
+        }
+
+        /**
+         * Moves the claimed tasks of a stale node back to the backlog and removes its own backlog and results.
+         * If two nodes recover the same node, each rename and delete succeeds only once.
+         */
+        private void recover( String stale, File staleHeartbeat ) {
+
+            if( !staleHeartbeat.delete() ) {
+                return;
+            }
+
+            LOGGER.warning( "node " + stale + " is stale, " + node + " recovers its tasks." );
+
+            String marker = "-" + stale + "-";
+
+            File staleClaimed = new File( claimedDir.getParentFile(), stale );
+            String[] claimed = staleClaimed.list();
+
+            if( claimed != null ) {
+                for( String name : claimed ) {
+                    File file = new File( staleClaimed, name );
+                    if( name.contains( marker ) ) {
+                        file.delete();
+                    } else if( file.renameTo( new File( pendingDir, name ) ) ) {
+                        recovered.incrementAndGet();
+                    }
+                }
+            }
+            staleClaimed.delete();
+
+            String[] backlog = pendingDir.list();
+
+            if( backlog != null ) {
+                for( String name : backlog ) {
+                    if( name.contains( marker ) ) {
+                        new File( pendingDir, name ).delete();
+                    }
+                }
+            }
+
+            deleteAll( new File( resultsDir.getParentFile(), stale ) );
+        }
+    }
+
+    private static void deleteAll( File dir ) {
+        File[] files = dir.listFiles();
+        if( files != null ) {
+            for( File file : files ) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Removes this node from the directory if the executor is shutdown and all own tasks are finished.
+     */
+    private void tryTerminate() {
+        if( shutdown && pending.isEmpty() ) {
+            leave();
+        }
+    }
+
+    /**
+     * Stops the threads and removes the files of this node, the claimed tasks go back to the backlog.
+     */
+    private synchronized void leave() {
+
+        if( !running ) {
+            return;
+        }
+
+        running = false;
+
+        heartbeatThread.interrupt();
+
+        // the workers finish their current task
+        for( Thread thread : threads ) {
+            if( thread != Thread.currentThread() ) {
+                try {
+                    thread.join( 2 * staleTimeout );
+                } catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        String[] claimed = claimedDir.list();
+        if( claimed != null ) {
+            for( String name : claimed ) {
+                new File( claimedDir, name ).renameTo( new File( pendingDir, name ) );
+            }
+        }
+        claimedDir.delete();
+
+        deleteAll( resultsDir );
+
+        heartbeat.delete();
+
+        terminated.countDown();
+    }
+
+    /**
+     * The workers of this node stop when all own tasks are finished, other nodes work on the backlog.
+     */
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if( pending.isEmpty() ) {
+            new DaemonThreadFactory( "Smile Directory " + node + " Shutdown" ).newThread( new Runnable() {
+                @Override
+                public void run() {
+                    tryTerminate();
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * The own tasks are removed from the backlog, the workers finish their current task.
+     *
+     * @return the unfinished own tasks
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+
+        shutdown = true;
+
+        List<Runnable> unfinished = new ArrayList<Runnable>();
+
+        for( Long id : pending.keySet() ) {
+            CallableTask<Object> task = pending.remove( id );
+            if( task != null ) {
+                unfinished.add( task );
+            }
+        }
+
+        String[] backlog = pendingDir.list();
+        if( backlog != null ) {
+            String marker = "-" + node + "-";
+            for( String name : backlog ) {
+                if( name.contains( marker ) ) {
+                    new File( pendingDir, name ).delete();
+                }
+            }
+        }
+
+        shutdown();
+
+        return unfinished;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination( long timeout, TimeUnit unit ) throws InterruptedException {
+        return terminated.await( timeout, unit );
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "[ class: " ).append( getClass().getSimpleName() ).append( ", " );
+        sb.append( "node: " ).append( node ).append( ", " );
+        sb.append( "pending: " ).append( pending.size() ).append( ", " );
+        sb.append( "executed: " ).append( getExecuted() ).append( ", " );
+        sb.append( "shutdown: " ).append( shutdown );
+        return sb.append( " ]" ).toString();
+    }
+}
@@ -0,0 +1,254 @@
+package smile.tasks.remote;
+
+import smile.threads.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One thread which does all socket I/O of a node with one {@link java.nio.channels.Selector}: accepts connections,
+ * reads frames and writes the frames queued by {@link smile.tasks.remote.Connection#send(java.nio.ByteBuffer)}.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ abstract class FrameLoop implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger( FrameLoop.class.getName() );
+
+    private final Selector selector;
+
+    /**
+     * Connections with queued frames, see {@link #requestFlush(Connection)}.
+     */
+    private final Queue<Connection> flushRequests = new ConcurrentLinkedQueue<Connection>();
+
+    private final Thread thread;
+
+    private volatile boolean closed = false;
+
+    /*package private*/ FrameLoop( String name ) throws IOException {
+        this.selector = Selector.open();
+        this.thread   = new DaemonThreadFactory( name ).newThread( this );
+    }
+
+    /**
+     * Starts the loop thread, channels must be registered before.
+     */
+    /*package private*/ void start() {
+        thread.start();
+    }
+
+    /**
+     * @return {@link #closed}
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the loop thread, all connections are closed.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Waits until the loop thread is finished.
+     *
+     * @param millis max time to wait, 0 to wait forever
+     * @return true if the loop thread is finished
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean join( long millis ) throws InterruptedException {
+        thread.join( millis );
+        return !thread.isAlive();
+    }
+
+    /**
+     * Registers a connected channel. Must be called before {@link #start()} or on the loop thread.
+     *
+     * @param channel connected socket
+     * @return the new connection
+     * @throws IOException if the channel can't be registered
+     */
+    /*package private*/ Connection register( SocketChannel channel ) throws IOException {
+
+        channel.configureBlocking( false );
+        channel.socket().setTcpNoDelay( true );
+
+        SelectionKey key = channel.register( selector, SelectionKey.OP_READ );
+        Connection connection = new Connection( this, channel, key );
+        key.attach( connection );
+        return connection;
+    }
+
+    /**
+     * Registers a server channel, {@link #onAccept(Connection)} is called for each accepted connection.
+     * Must be called before {@link #start()}.
+     *
+     * @param channel bound server socket
+     * @throws IOException if the channel can't be registered
+     */
+    /*package private*/ void listen( ServerSocketChannel channel ) throws IOException {
+        channel.configureBlocking( false );
+        channel.register( selector, SelectionKey.OP_ACCEPT );
+    }
+
+    /**
+     * Called by {@link smile.tasks.remote.Connection#send(java.nio.ByteBuffer)}, the loop thread will flush the connection.
+     *
+     * @param connection with queued frames
+     */
+    /*package private*/ void requestFlush( Connection connection ) {
+        flushRequests.add( connection );
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+
+        try {
+            while( !closed ) {
+
+                selector.select();
+
+                for( Connection connection = flushRequests.poll(); connection != null; connection = flushRequests.poll() ) {
+                    try {
+                        if( !connection.isClosed() ) {
+                            connection.flush();
+                        }
+                    } catch( IOException e ) {
+                        close( connection, e );
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while( keys.hasNext() ) {
+
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if( !key.isValid() ) {
+                        continue;
+                    }
+
+                    if( key.isAcceptable() ) {
+                        accept( (ServerSocketChannel) key.channel() );
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+
+                    try {
+                        if( key.isReadable() ) {
+                            connection.read();
+                        }
+                        if( key.isValid() && key.isWritable() ) {
+                            connection.flush();
+                        }
+                    } catch( IOException e ) {
+                        close( connection, e );
+                    }
+                }
+            }
+        } catch( IOException e ) {
+            LOGGER.log( Level.SEVERE, "frame loop failed", e );
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept( ServerSocketChannel server ) {
+
+        SocketChannel channel = null;
+        try {
+            channel = server.accept();
+            if( channel != null ) {
+                onAccept( register( channel ) );
+            }
+        } catch( IOException e ) {
+            LOGGER.log( Level.WARNING, "accept failed", e );
+            if( channel != null ) {
+                try {
+                    channel.close();
+                } catch( IOException ignore ) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the connection and calls {@link #onClose(Connection, java.io.IOException)}. Called on the loop thread,
+     * e.g. if the peer failed the handshake.
+     *
+     * @param connection the connection to close
+     * @param cause why the connection is closed
+     */
+    /*package private*/ void close( Connection connection, IOException cause ) {
+        if( connection.close() ) {
+            onClose( connection, cause );
+        }
+    }
+
+    private void closeAll() {
+
+        List<SelectionKey> keys = new ArrayList<SelectionKey>( selector.keys() );
+
+        for( SelectionKey key : keys ) {
+            if( key.attachment() instanceof Connection ) {
+                close( (Connection) key.attachment(), new IOException( "closed" ) );
+            } else {
+                try {
+                    key.channel().close();
+                } catch( IOException e ) {
+                    // ignore
+                }
+            }
+        }
+
+        try {
+            selector.close();
+        } catch( IOException e ) {
+            // ignore
+        }
+    }
+
+    /**
+     * Called on the loop thread for each accepted connection.
+     *
+     * @param connection the new connection
+     */
+    protected void onAccept( Connection connection ) {
+    }
+
+    /**
+     * Called on the loop thread for each received frame.
+     *
+     * @param connection the connection which received the frame
+     * @param type see {@link smile.tasks.remote.Frames}
+     * @param id the task id
+     * @param payload the serialized object
+     */
+    protected abstract void onFrame( Connection connection, byte type, long id, byte[] payload );
+
+    /**
+     * Called on the loop thread after a connection is closed.
+     *
+     * @param connection the closed connection
+     * @param cause why the connection is closed
+     */
+    protected abstract void onClose( Connection connection, IOException cause );
+}
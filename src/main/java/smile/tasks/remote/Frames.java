@@ -0,0 +1,188 @@
+package smile.tasks.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The wire format, see {@link smile.tasks.remote}.
+ *
+ * @author Andre Kullmann
+ */
+/*package private*/ final class Frames {
+
+    /**
+     * Coordinator to worker, the payload is the serialized {@link java.util.concurrent.Callable}.
+     */
+    static final byte TASK = 1;
+
+    /**
+     * Worker to coordinator, the payload is the serialized result.
+     */
+    static final byte RESULT = 2;
+
+    /**
+     * Worker to coordinator, the payload is the serialized exception.
+     */
+    static final byte ERROR = 3;
+
+    /**
+     * Worker to coordinator, the first frame of a connection, the task id is the count of worker threads, the
+     * payload is the challenge of the worker.
+     */
+    static final byte HELLO = 4;
+
+    /**
+     * Both directions, the answer to a challenge, see {@link smile.tasks.remote}.
+     */
+    static final byte AUTH = 5;
+
+    /**
+     * Signs the answer of the coordinator.
+     */
+    static final byte COORDINATOR = 'C';
+
+    /**
+     * Signs the answer of the worker.
+     */
+    static final byte WORKER = 'W';
+
+    /**
+     * Size of a challenge.
+     */
+    static final int CHALLENGE = 16;
+
+    /**
+     * Size of an answer, a HmacSHA256 of a challenge.
+     */
+    static final int ANSWER = 32;
+
+    /**
+     * Size of type and task id.
+     */
+    static final int HEADER = 1 + 8;
+
+    /**
+     * Frames greater than this are treated as a protocol error.
+     */
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    /**
+     * Frames greater than this are treated as a protocol error until the connection is authenticated.
+     */
+    static final int MAX_HANDSHAKE_FRAME = HEADER + CHALLENGE + ANSWER;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private Frames() {
+    }
+
+    /**
+     * @return {@link #CHALLENGE} random bytes
+     */
+    static byte[] challenge() {
+        byte[] challenge = new byte[CHALLENGE];
+        RANDOM.nextBytes( challenge );
+        return challenge;
+    }
+
+    /**
+     * @param secret the shared secret
+     * @param role {@link #COORDINATOR} or {@link #WORKER}, so an answer can't be reflected to its sender
+     * @param challenge the challenge of the other side
+     * @return the HmacSHA256 of role and challenge, {@link #ANSWER} bytes
+     */
+    static byte[] answer( byte[] secret, byte role, byte[] challenge ) {
+        try {
+            Mac mac = Mac.getInstance( "HmacSHA256" );
+            mac.init( new SecretKeySpec( secret, "HmacSHA256" ) );
+            mac.update( role );
+            mac.update( challenge );
+            return mac.doFinal();
+        } catch( GeneralSecurityException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * @param answer the received answer
+     * @return true if the answer is correct, compared in constant time
+     */
+    static boolean verify( byte[] secret, byte role, byte[] challenge, byte[] answer ) {
+        return MessageDigest.isEqual( answer( secret, role, challenge ), answer );
+    }
+
+    /**
+     * @param secret the shared secret
+     * @return a copy of the secret
+     * @throws IllegalArgumentException if the secret is empty
+     */
+    static byte[] checkSecret( byte[] secret ) {
+        if( secret == null || secret.length == 0 ) {
+            throw new IllegalArgumentException( "empty shared secret." );
+        }
+        return Arrays.copyOf( secret, secret.length );
+    }
+
+    /**
+     * @param type {@link #TASK}, {@link #RESULT}, {@link #ERROR}, {@link #HELLO} or {@link #AUTH}
+     * @param id the task id
+     * @param payload the serialized object
+     * @return the frame, ready to write
+     */
+    static ByteBuffer frame( byte type, long id, byte[] payload ) {
+
+        ByteBuffer buffer = ByteBuffer.allocate( 4 + HEADER + payload.length );
+        buffer.putInt( HEADER + payload.length );
+        buffer.put( type );
+        buffer.putLong( id );
+        buffer.put( payload );
+        buffer.flip();
+        return buffer;
+    }
+
+    static byte[] serialize( Object object ) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+        ObjectOutputStream out = new ObjectOutputStream( bytes );
+        out.writeObject( object );
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static Object deserialize( byte[] payload ) throws IOException, ClassNotFoundException {
+
+        ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( payload ) );
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param cause the exception of a task
+     * @return the serialized exception, or a {@link smile.tasks.remote.RemoteTaskException} with the same message and
+     * stack trace if the exception can't be serialized.
+     */
+    static byte[] serializeException( Throwable cause ) {
+        try {
+            return serialize( cause );
+        } catch( IOException e ) {
+            try {
+                return serialize( new RemoteTaskException( cause ) );
+            } catch( IOException never ) {
+                throw new IllegalStateException( never );
+            }
+        }
+    }
+}
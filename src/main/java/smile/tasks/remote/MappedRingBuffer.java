@@ -0,0 +1,324 @@
+package smile.tasks.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import smile.threads.Fences;
+
+/**
+ * A ring buffer of frames in a memory mapped file, one process writes and one process reads. Used by
+ * {@link smile.tasks.remote.ProcessExecutorService} to exchange tasks and results with its child processes without
+ * a socket or a system call per frame.
+ *
+ * Layout of the file:
+ *
+ * <pre>
+ *   0     long   write position, only changed by the producer
+ *   64    long   read position, only changed by the consumer
+ *   128   byte[] the frames: int payload length, byte type, long id, payload, aligned to 8 bytes.
+ *                A length of -1 marks the unused rest at the end of the ring, the next frame starts at 0.
+ * </pre>
+ *
+ * The positions grow forever, the offset of a frame is position modulo the capacity. The producer writes the frame,
+ * then a release fence, then the write position. The consumer reads the write position, then an acquire fence, then
+ * the frame, and gives the space back the same way: it reads the frame, then a release fence, then it writes the read
+ * position. The fences are cpu fences ( see {@link smile.threads.Fences} ), so they order the accesses for the other
+ * process too. Without fences, on java 7, each ring falls back to a volatile access of its own, which only keeps the
+ * JIT from reordering, so there the ring is only safe on x86 ( TSO ). The 8 byte aligned positions are written
+ * atomically on 64 bit platforms. Within one process the producer methods are synchronized, so many threads can write.
+ *
+ * @author Andre Kullmann
+ */
+public class MappedRingBuffer {
+
+    private static final int WRITE_POSITION = 0;
+
+    private static final int READ_POSITION = 64;
+
+    private static final int DATA = 128;
+
+    /**
+     * payload length, type, id
+     */
+    private static final int FRAME_HEADER = 4 + 1 + 8;
+
+    private static final int WRAP = -1;
+
+    /**
+     * Only used if no cpu fence is available, see {@link #storeFence()} and {@link #loadFence()}.
+     */
+    private volatile int fence;
+
+    private final File file;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    /**
+     * The producer view, guarded by this.
+     */
+    private final ByteBuffer writer;
+
+    /**
+     * The consumer view, only used by one thread.
+     */
+    private final ByteBuffer reader;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Maps the given file, the file is created if it doesn't exist.
+     *
+     * @param file the shared file
+     * @param capacity size of the data area in bytes, rounded up to a multiple of 8
+     * @throws IOException if the file can't be mapped
+     */
+    public MappedRingBuffer( File file, int capacity ) throws IOException {
+
+        this.file     = file;
+        this.capacity = ( capacity + 7 ) & ~7;
+
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try {
+            this.buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, DATA + this.capacity );
+        } finally {
+            raf.close();
+        }
+
+        this.writer = buffer.duplicate();
+        this.reader = buffer.duplicate();
+    }
+
+    /**
+     * @return {@link #file}
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return {@link #capacity}
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Lets all waiting producers fail, e.g. if the consumer process is gone.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * @return {@link #closed}
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @param payloadLength count of payload bytes
+     * @return size of the frame in the ring
+     */
+    private static int frameSize( int payloadLength ) {
+        return ( FRAME_HEADER + payloadLength + 7 ) & ~7;
+    }
+
+    /**
+     * Writes one frame, waits while the ring is full.
+     *
+     * @param type the frame type, see {@link smile.tasks.remote.Frames}
+     * @param id the task id
+     * @param payload the serialized object
+     * @throws IOException if the ring is closed or the frame is greater than the capacity
+     */
+    public synchronized void put( byte type, long id, byte[] payload ) throws IOException {
+
+        int size = frameSize( payload.length );
+
+        if( size > capacity ) {
+            throw new IOException( "frame of " + payload.length + " bytes is greater than the ring buffer " + file );
+        }
+
+        long write = writer.getLong( WRITE_POSITION );
+        int offset = (int) ( write % capacity );
+
+        // the frame must not wrap, the rest at the end is skipped
+        int skip = capacity - offset < size ? capacity - offset : 0;
+
+        for( int idle = 0; capacity - ( write - readPosition() ) < skip + size; idle++ ) {
+            if( closed ) {
+                throw new IOException( "ring buffer closed " + file );
+            }
+            backoff( idle );
+        }
+
+        if( skip > 0 ) {
+            writer.putInt( DATA + offset, WRAP );
+            offset = 0;
+        }
+
+        writer.putInt( DATA + offset, payload.length );
+        writer.put( DATA + offset + 4, type );
+        writer.putLong( DATA + offset + 5, id );
+        writer.position( DATA + offset + FRAME_HEADER );
+        writer.put( payload );
+
+        // the frame must be written before the consumer sees the write position
+        storeFence();
+
+        writer.putLong( WRITE_POSITION, write + skip + size );
+    }
+
+    /**
+     * Reads the next frame. Must always be called by the same thread.
+     *
+     * @return the next frame or null if the ring is empty
+     */
+    public Frame poll() {
+
+        long read  = reader.getLong( READ_POSITION );
+        long write = reader.getLong( WRITE_POSITION );
+
+        // the frame must not be read before the write position
+        loadFence();
+
+        if( read == write ) {
+            return null;
+        }
+
+        int offset = (int) ( read % capacity );
+        int length = reader.getInt( DATA + offset );
+
+        if( length == WRAP ) {
+            read  += capacity - offset;
+            offset = 0;
+            length = reader.getInt( DATA );
+        }
+
+        byte type = reader.get( DATA + offset + 4 );
+        long id   = reader.getLong( DATA + offset + 5 );
+        byte[] payload = new byte[length];
+        reader.position( DATA + offset + FRAME_HEADER );
+        reader.get( payload );
+
+        // the frame must be read before the producer sees the read position and overwrites it
+        storeFence();
+
+        reader.putLong( READ_POSITION, read + frameSize( length ) );
+
+        return new Frame( type, id, payload );
+    }
+
+    /**
+     * Reads the next frame, waits while the ring is empty. Must always be called by the same thread.
+     *
+     * @return the next frame, null if the ring is closed
+     */
+    public Frame take() {
+        for( int idle = 0; ; idle++ ) {
+            Frame frame = poll();
+            if( frame != null ) {
+                return frame;
+            }
+            if( closed ) {
+                return null;
+            }
+            backoff( idle );
+        }
+    }
+
+    /**
+     * @return the read position, the consumer is done with all frames before it
+     */
+    private long readPosition() {
+
+        long read = writer.getLong( READ_POSITION );
+
+        // the frames before the read position must not be overwritten before the read position is read
+        loadFence();
+
+        return read;
+    }
+
+    /**
+     * Earlier loads are not reordered with later loads and stores, see {@link smile.threads.Fences#acquire()}.
+     * Without a cpu fence only the JIT is kept from reordering, the cpu only keeps the order on x86.
+     */
+    private void loadFence() {
+        if( !Fences.acquire() ) {
+            int ignore = fence;
+        }
+    }
+
+    /**
+     * Earlier loads and stores are not reordered with later stores, see {@link smile.threads.Fences#release()}.
+     * Without a cpu fence only the JIT is kept from reordering, the cpu only keeps the order on x86.
+     */
+    private void storeFence() {
+        if( !Fences.release() ) {
+            fence = 0;
+        }
+    }
+
+    /**
+     * Spins, yields and parks up to one millisecond, so an idle ring costs almost no cpu.
+     *
+     * @param idle count of unsuccessful tries
+     */
+    /*package private*/ static void backoff( int idle ) {
+        if( idle < 100 ) {
+            // spin
+        } else if( idle < 200 ) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos( Math.min( 1000000L, 1000L * ( idle - 199 ) ) );
+        }
+    }
+
+    /**
+     * One frame of the ring.
+     */
+    public static class Frame {
+
+        private final byte type;
+
+        private final long id;
+
+        private final byte[] payload;
+
+        private Frame( byte type, long id, byte[] payload ) {
+            this.type    = type;
+            this.id      = id;
+            this.payload = payload;
+        }
+
+        /**
+         * @return {@link #type}
+         */
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * @return {@link #id}
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return {@link #payload}
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+}
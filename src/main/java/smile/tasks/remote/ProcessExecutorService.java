@@ -0,0 +1,463 @@
+package smile.tasks.remote;
+
+import smile.tasks.CallableTask;
+import smile.tasks.SerializingExecutorService;
+import smile.threads.DaemonThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * An {@link java.util.concurrent.ExecutorService} which executes the tasks of a task queue in child jvm processes,
+ * e.g. for tasks which use native libraries that are not thread safe or which leak memory. Each child gets the tasks
+ * and returns the results through two {@link smile.tasks.remote.MappedRingBuffer} files, so no socket and no system
+ * call is needed per task.
+ *
+ * Only {@link smile.tasks.CallableTask} objects can be executed, their {@link java.util.concurrent.Callable} and its
+ * result must be {@link java.io.Serializable} and the classes must be on the class path of this jvm, which is also
+ * the class path of the children. A new task goes to the child with the least tasks in flight.
+ *
+ * Keyed and timed submits and the adaptive limit of the queue are not supported, they throw an
+ * {@link java.lang.UnsupportedOperationException}, see {@link smile.tasks.SerializingExecutorService}.
+ *
+ * If a child process exits, all its tasks in flight fail with an {@link java.io.IOException} and a new child is
+ * started in its place.
+ *
+ * @see smile.tasks.ProcessTaskQueue
+ *
+ * @author Andre Kullmann
+ */
+public class ProcessExecutorService extends AbstractExecutorService implements SerializingExecutorService {
+
+    private static final Logger LOGGER = Logger.getLogger( ProcessExecutorService.class.getName() );
+
+    /**
+     * Default size of each ring buffer file.
+     */
+    public static final int DEFAULT_RING_CAPACITY = 4 * 1024 * 1024;
+
+    private final int threadsPerProcess;
+
+    private final List<String> jvmArgs;
+
+    private final int ringCapacity;
+
+    private final File directory;
+
+    private final AtomicReferenceArray<Child> children;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final AtomicInteger restarts = new AtomicInteger();
+
+    /**
+     * Count of running reader threads, a reader starts the next child before it ends.
+     */
+    private final AtomicInteger liveChildren = new AtomicInteger();
+
+    private final CountDownLatch terminated = new CountDownLatch( 1 );
+
+    private volatile boolean shutdown = false;
+
+    public ProcessExecutorService( int processes, int threadsPerProcess ) throws IOException {
+        this( processes, threadsPerProcess, Collections.<String>emptyList(), DEFAULT_RING_CAPACITY );
+    }
+
+    /**
+     * Starts the child processes.
+     *
+     * @param processes count of child processes
+     * @param threadsPerProcess count of worker threads in each child process
+     * @param jvmArgs additional arguments of the child jvm, e.g. -Xmx256m
+     * @param ringCapacity size of each ring buffer in bytes, must be greater than each serialized callable and result
+     * @throws IOException if a child can't be started
+     */
+    public ProcessExecutorService( int processes, int threadsPerProcess, List<String> jvmArgs, int ringCapacity ) throws IOException {
+
+        this.threadsPerProcess = threadsPerProcess;
+        this.jvmArgs           = new ArrayList<String>( jvmArgs );
+        this.ringCapacity      = ringCapacity;
+        this.children          = new AtomicReferenceArray<Child>( processes );
+
+        this.directory = File.createTempFile( "smile-tasks-", "" );
+        if( !directory.delete() || !directory.mkdir() ) {
+            throw new IOException( "can't create directory " + directory );
+        }
+
+        try {
+            for( int i=0; i<processes; i++ ) {
+                children.set( i, startChild( i, 0 ) );
+            }
+        } catch( IOException e ) {
+            shutdownNow();
+            throw e;
+        }
+    }
+
+    /**
+     * @return count of child processes which are restarted because they exited
+     */
+    public int getRestarts() {
+        return restarts.get();
+    }
+
+    /**
+     * @return count of tasks in flight of each child process
+     */
+    public int[] getInFlight() {
+        int[] inFlight = new int[children.length()];
+        for( int i=0; i<inFlight.length; i++ ) {
+            Child child = children.get( i );
+            inFlight[i] = child == null ? 0 : child.pending.size();
+        }
+        return inFlight;
+    }
+
+    private Child startChild( int index, int generation ) throws IOException {
+
+        String prefix = "child-" + index + "-" + generation;
+
+        MappedRingBuffer tasks   = new MappedRingBuffer( new File( directory, prefix + ".tasks" ), ringCapacity );
+        MappedRingBuffer results = new MappedRingBuffer( new File( directory, prefix + ".results" ), ringCapacity );
+
+        List<String> command = new ArrayList<String>();
+        command.add( System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java" );
+        command.addAll( jvmArgs );
+        command.add( "-cp" );
+        command.add( System.getProperty( "java.class.path" ) );
+        command.add( ChildProcessWorker.class.getName() );
+        command.add( tasks.getFile().getPath() );
+        command.add( results.getFile().getPath() );
+        command.add( String.valueOf( ringCapacity ) );
+        command.add( String.valueOf( threadsPerProcess ) );
+
+        ProcessBuilder builder = new ProcessBuilder( command );
+        builder.redirectOutput( ProcessBuilder.Redirect.INHERIT );
+        builder.redirectError( ProcessBuilder.Redirect.INHERIT );
+
+        Child child = new Child( index, generation, builder.start(), tasks, results );
+        child.start();
+        return child;
+    }
+
+    /**
+     * Writes the callable of the given task to the child with the least tasks in flight.
+     *
+     * @param command must be a {@link smile.tasks.CallableTask}
+     * @throws RejectedExecutionException if the executor is shutdown or the command is no {@link smile.tasks.CallableTask}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void execute( Runnable command ) {
+
+        if( shutdown ) {
+            throw new RejectedExecutionException( "executor is shutdown." );
+        }
+
+        if( !( command instanceof CallableTask ) ) {
+            throw new RejectedExecutionException( "only a " + CallableTask.class.getName() + " can be executed in a child process: " + command );
+        }
+
+        CallableTask<Object> task = (CallableTask<Object>) command;
+
+        byte[] payload;
+        try {
+            payload = Frames.serialize( task.getCallable() );
+        } catch( IOException e ) {
+            task.completeExceptionally( e );
+            return;
+        }
+
+        Child child = null;
+        for( int i=0; i<children.length(); i++ ) {
+            Child c = children.get( i );
+            if( c != null && !c.failed && ( child == null || c.pending.size() < child.pending.size() ) ) {
+                child = c;
+            }
+        }
+
+        if( child == null ) {
+            task.completeExceptionally( new IOException( "no child process available." ) );
+            return;
+        }
+
+        child.send( ids.incrementAndGet(), task, payload );
+    }
+
+    /**
+     * @return true if no task is in flight
+     */
+    private boolean isIdle() {
+        for( int i=0; i<children.length(); i++ ) {
+            Child child = children.get( i );
+            if( child != null && !child.pending.isEmpty() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the children if the executor is shutdown and all tasks are finished.
+     */
+    private void tryTerminate() {
+        if( shutdown && isIdle() ) {
+            stopChildren();
+        }
+    }
+
+    private void stopChildren() {
+        for( int i=0; i<children.length(); i++ ) {
+            Child child = children.get( i );
+            if( child != null ) {
+                child.stop();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        tryTerminate();
+    }
+
+    /**
+     * The child processes are killed.
+     *
+     * @return the unfinished tasks
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+
+        shutdown = true;
+
+        List<Runnable> unfinished = new ArrayList<Runnable>();
+
+        for( int i=0; i<children.length(); i++ ) {
+            Child child = children.get( i );
+            if( child != null ) {
+                for( Long id : child.pending.keySet() ) {
+                    CallableTask<Object> task = child.pending.remove( id );
+                    if( task != null ) {
+                        unfinished.add( task );
+                    }
+                }
+            }
+        }
+
+        stopChildren();
+
+        if( liveChildren.get() == 0 ) {
+            terminated.countDown();
+        }
+
+        return unfinished;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination( long timeout, TimeUnit unit ) throws InterruptedException {
+        return terminated.await( timeout, unit );
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "[ class: " ).append( getClass().getSimpleName() ).append( ", " );
+        sb.append( "processes: " ).append( children.length() ).append( ", " );
+        sb.append( "restarts: " ).append( getRestarts() ).append( ", " );
+        sb.append( "shutdown: " ).append( shutdown );
+        return sb.append( " ]" ).toString();
+    }
+
+    /**
+     * One child process, its ring buffers and its tasks in flight.
+     */
+    private class Child implements Runnable {
+
+        private final int index;
+
+        private final int generation;
+
+        private final Process process;
+
+        private final MappedRingBuffer tasks;
+
+        private final MappedRingBuffer results;
+
+        private final Map<Long, CallableTask<Object>> pending = new ConcurrentHashMap<Long, CallableTask<Object>>();
+
+        private volatile boolean exited = false;
+
+        private volatile int exitCode;
+
+        /**
+         * Set before the tasks in flight are failed.
+         */
+        private volatile boolean failed = false;
+
+        private Child( int index, int generation, Process process, MappedRingBuffer tasks, MappedRingBuffer results ) {
+            this.index      = index;
+            this.generation = generation;
+            this.process    = process;
+            this.tasks      = tasks;
+            this.results    = results;
+        }
+
+        private void start() {
+
+            liveChildren.incrementAndGet();
+
+            DaemonThreadFactory factory = new DaemonThreadFactory( "Smile Child " + index + "." + generation );
+
+            factory.newThread( new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        exitCode = process.waitFor();
+                    } catch( InterruptedException e ) {
+                        exitCode = -1;
+                    }
+                    exited = true;
+                }
+            }).start();
+
+            factory.newThread( this ).start();
+        }
+
+        private void send( long id, CallableTask<Object> task, byte[] payload ) {
+
+            pending.put( id, task );
+
+            try {
+                tasks.put( Frames.TASK, id, payload );
+            } catch( IOException e ) {
+                if( pending.remove( id ) != null ) {
+                    task.completeExceptionally( e );
+                }
+                return;
+            }
+
+            // the child died while the task was registered
+            if( failed && pending.remove( id ) != null ) {
+                task.completeExceptionally( new IOException( "child process " + index + " exited." ) );
+            }
+        }
+
+        /**
+         * Closes the pipe, so the child halts, and kills the process.
+         */
+        private void stop() {
+            tasks.close();
+            try {
+                process.getOutputStream().close();
+            } catch( IOException e ) {
+                // ignore
+            }
+            process.destroy();
+        }
+
+        /**
+         * Reads the results until the process exits.
+         */
+        @Override
+        public void run() {
+
+            for( int idle = 0; ; ) {
+
+                MappedRingBuffer.Frame frame = results.poll();
+
+                if( frame != null ) {
+                    complete( frame );
+                    idle = 0;
+                } else if( exited ) {
+                    // the results written before the exit
+                    for( frame = results.poll(); frame != null; frame = results.poll() ) {
+                        complete( frame );
+                    }
+                    break;
+                } else {
+                    MappedRingBuffer.backoff( idle++ );
+                }
+            }
+
+            failed = true;
+            tasks.close();
+            results.close();
+
+            IOException cause = new IOException( "child process " + index + " exited with code " + exitCode + "." );
+
+            // the new child is ready before the result handler hears about the crash
+            if( !shutdown ) {
+                LOGGER.warning( cause.getMessage() + " restarting it." );
+                try {
+                    children.set( index, startChild( index, generation + 1 ) );
+                    restarts.incrementAndGet();
+                } catch( IOException e ) {
+                    LOGGER.severe( "can't restart child process " + index + ": " + e );
+                }
+            }
+
+            for( Long id : pending.keySet() ) {
+                CallableTask<Object> task = pending.remove( id );
+                if( task != null ) {
+                    task.completeExceptionally( cause );
+                }
+            }
+
+            tasks.getFile().delete();
+            results.getFile().delete();
+
+            if( liveChildren.decrementAndGet() == 0 && shutdown ) {
+                directory.delete();
+                terminated.countDown();
+            }
+        }
+
+        private void complete( MappedRingBuffer.Frame frame ) {
+
+            CallableTask<Object> task = pending.remove( frame.getId() );
+
+            if( task == null ) {
+                return;
+            }
+
+            try {
+                Object value = Frames.deserialize( frame.getPayload() );
+                if( frame.getType() == Frames.RESULT ) {
+                    task.complete( value );
+                } else {
+                    task.completeExceptionally( (Throwable) value );
+                }
+            } catch( Exception e ) {
+                task.completeExceptionally( e );
+            }
+
+            if( shutdown ) {
+                tryTerminate();
+            }
+        }
+    }
+}
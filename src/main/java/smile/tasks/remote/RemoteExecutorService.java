@@ -0,0 +1,766 @@
+package smile.tasks.remote;
+
+import smile.tasks.CallableTask;
+import smile.tasks.SerializingExecutorService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link java.util.concurrent.ExecutorService} which executes the tasks of a task queue on remote
+ * {@link smile.tasks.remote.TaskWorkerNode} servers, e.g. as the worker pool of a {@link smile.tasks.DistributedTaskQueue}:
+ *
+ * <pre>
+ *   ExecutorService nodes = new RemoteExecutorService( secret, new InetSocketAddress( "host1", 4711 ), new InetSocketAddress( "host2", 4711 ) );
+ *   DistributedTaskQueue&lt;String&gt; queue = new DistributedTaskQueue&lt;String&gt;( "remote", 256, 32, nodes, handler );
+ * </pre>
+ *
+ * Only {@link smile.tasks.CallableTask} objects can be executed, their {@link java.util.concurrent.Callable} and its
+ * result must be {@link java.io.Serializable}. The tasks are sent without waiting for results, so many tasks are in
+ * flight per connection, bounded by the capacity of the queue. The results complete the tasks on the I/O thread,
+ * which pushes them to the owner thread of the queue.
+ *
+ * Keyed and timed submits and the adaptive limit of the queue are not supported, they throw an
+ * {@link java.lang.UnsupportedOperationException}, see {@link smile.tasks.SerializingExecutorService}.
+ *
+ * Each node gets at most {@link #PREFETCH} tasks per worker thread, the others wait in a backlog per node. A new
+ * task goes to the node which is expected to finish its outstanding tasks first, based on the outstanding tasks, the
+ * count of worker threads and the measured latency of the node. A node which has free worker threads and an empty
+ * backlog steals the newest task from the longest backlog of the other nodes. Only tasks which are not sent yet are
+ * stolen, so no task is executed twice. See {@link #getNodeStats()} for the utilization of the nodes.
+ *
+ * The coordinator and the nodes authenticate each other with a shared secret before any task is sent, see the trust
+ * model of {@link smile.tasks.remote.TaskWorkerNode}. A node which fails the handshake is treated like a lost node.
+ *
+ * A task whose callable can't be serialized fails with a {@link java.io.NotSerializableException}. If a connection
+ * is lost, all its tasks in flight fail with an {@link java.io.IOException}, its backlog goes to the remaining nodes.
+ *
+ * @author Andre Kullmann
+ */
+public class RemoteExecutorService extends AbstractExecutorService implements SerializingExecutorService {
+
+    /**
+     * Count of tasks per worker thread of a node which are sent before the results are received, so the worker
+     * threads don't wait for the network.
+     */
+    public static final int PREFETCH = 2;
+
+    /**
+     * Weight of the newest sample of the moving averages.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * Min time between two throughput samples of a node.
+     */
+    private static final long RATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+    private final List<Node> nodes;
+
+    /**
+     * Read only after construction.
+     */
+    private final Map<Connection, Node> nodeByConnection = new HashMap<Connection, Node>();
+
+    private final FrameLoop loop;
+
+    private final byte[] secret;
+
+    /**
+     * Guards the scheduling state of all nodes, used by the submitting threads and the I/O thread.
+     */
+    private final Object lock = new Object();
+
+    private long ids = 0;
+
+    private volatile boolean shutdown = false;
+
+    public RemoteExecutorService( byte[] secret, InetSocketAddress... addresses ) throws IOException {
+        this( secret, Arrays.asList( addresses ) );
+    }
+
+    /**
+     * Connects to all given worker nodes.
+     *
+     * @param secret the shared secret of the coordinator and the workers
+     * @param addresses the addresses of the {@link smile.tasks.remote.TaskWorkerNode} servers
+     * @throws IOException if one node can't be connected
+     */
+    public RemoteExecutorService( byte[] secret, List<InetSocketAddress> addresses ) throws IOException {
+
+        if( addresses.isEmpty() ) {
+            throw new IllegalArgumentException( "no worker node address." );
+        }
+
+        this.secret = Frames.checkSecret( secret );
+
+        this.loop = new FrameLoop( "Smile Remote Coordinator I/O" ) {
+
+            @Override
+            protected void onFrame( Connection connection, byte type, long id, byte[] payload ) {
+                if( !connection.isAuthenticated() ) {
+                    authenticate( this, connection, type, id, payload );
+                } else {
+                    nodeByConnection.get( connection ).complete( type, id, payload );
+                }
+            }
+
+            @Override
+            protected void onClose( Connection connection, IOException cause ) {
+                nodeByConnection.get( connection ).fail( cause );
+            }
+        };
+
+        List<Node> list = new ArrayList<Node>( addresses.size() );
+
+        try {
+            for( InetSocketAddress address : addresses ) {
+                Connection connection = loop.register( SocketChannel.open( address ) );
+                Node node = new Node( address, connection );
+                list.add( node );
+                nodeByConnection.put( connection, node );
+            }
+        } catch( IOException e ) {
+            for( Node node : list ) {
+                node.connection.close();
+            }
+            throw e;
+        }
+
+        this.nodes = Collections.unmodifiableList( list );
+
+        loop.start();
+    }
+
+    /**
+     * The handshake of the coordinator, called on the I/O thread for the frames of a connection which is not
+     * authenticated. The node is started when it answered the challenge, before nothing is sent or deserialized.
+     *
+     * @param id in a hello frame the count of worker threads of the node
+     * @param payload in a hello frame the challenge of the node, in an auth frame its answer
+     */
+    private void authenticate( FrameLoop loop, Connection connection, byte type, long id, byte[] payload ) {
+
+        Node node = nodeByConnection.get( connection );
+
+        if( type == Frames.HELLO && connection.getChallenge() == null && payload.length == Frames.CHALLENGE ) {
+
+            node.threads( (int) id );
+
+            connection.setChallenge( Frames.challenge() );
+
+            byte[] answer = new byte[Frames.CHALLENGE + Frames.ANSWER];
+            System.arraycopy( connection.getChallenge(), 0, answer, 0, Frames.CHALLENGE );
+            System.arraycopy( Frames.answer( secret, Frames.COORDINATOR, payload ), 0, answer, Frames.CHALLENGE, Frames.ANSWER );
+
+            connection.send( Frames.frame( Frames.AUTH, 0, answer ) );
+
+        } else if( type == Frames.AUTH && connection.getChallenge() != null && Frames.verify( secret, Frames.WORKER, connection.getChallenge(), payload ) ) {
+
+            connection.authenticated();
+            node.start();
+
+        } else {
+            loop.close( connection, new IOException( "authentication of worker node " + node.address + " failed." ) );
+        }
+    }
+
+    /**
+     * @return the addresses of the connected worker nodes
+     */
+    public List<InetSocketAddress> getAddresses() {
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        synchronized( lock ) {
+            for( Node node : nodes ) {
+                if( node.open ) {
+                    addresses.add( node.address );
+                }
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * @return a snapshot of the utilization of each node
+     */
+    public List<NodeStats> getNodeStats() {
+        List<NodeStats> stats = new ArrayList<NodeStats>( nodes.size() );
+        synchronized( lock ) {
+            for( Node node : nodes ) {
+                stats.add( new NodeStats( node ) );
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Queues the callable of the given task on the least loaded worker node.
+     *
+     * @param command must be a {@link smile.tasks.CallableTask}
+     * @throws RejectedExecutionException if the executor is shutdown or the command is no {@link smile.tasks.CallableTask}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void execute( Runnable command ) {
+
+        if( shutdown ) {
+            throw new RejectedExecutionException( "executor is shutdown." );
+        }
+
+        if( !( command instanceof CallableTask ) ) {
+            throw new RejectedExecutionException( "only a " + CallableTask.class.getName() + " can be executed remote: " + command );
+        }
+
+        CallableTask<Object> task = (CallableTask<Object>) command;
+
+        byte[] payload;
+        try {
+            payload = Frames.serialize( task.getCallable() );
+        } catch( IOException e ) {
+            task.completeExceptionally( e );
+            return;
+        }
+
+        boolean dispatched;
+
+        synchronized( lock ) {
+            dispatched = dispatch( new Entry( ++ids, task, payload ) );
+        }
+
+        if( !dispatched ) {
+            task.completeExceptionally( new IOException( "no worker node available." ) );
+        }
+    }
+
+    /**
+     * Puts the given entry into the backlog of the node which is expected to be idle first. Must hold {@link #lock}.
+     *
+     * @param entry a task which is not sent yet
+     * @return false if no node is open
+     */
+    private boolean dispatch( Entry entry ) {
+
+        Node best = null;
+        double bestCost = 0;
+
+        for( Node node : nodes ) {
+            if( node.open ) {
+                double cost = node.expectedNanos();
+                if( best == null || cost < bestCost ) {
+                    best     = node;
+                    bestCost = cost;
+                }
+            }
+        }
+
+        if( best == null ) {
+            return false;
+        }
+
+        best.backlog.addLast( entry );
+        best.fill();
+
+        return true;
+    }
+
+    /**
+     * Takes the newest entry of the longest backlog of the other nodes. Must hold {@link #lock}.
+     *
+     * @param thief the node with free worker threads
+     * @return the stolen entry, null if all backlogs are empty
+     */
+    private Entry steal( Node thief ) {
+
+        Node victim = null;
+
+        for( Node node : nodes ) {
+            if( node != thief && !node.backlog.isEmpty() && ( victim == null || node.backlog.size() > victim.backlog.size() ) ) {
+                victim = node;
+            }
+        }
+
+        if( victim == null ) {
+            return null;
+        }
+
+        victim.stolenFrom++;
+        thief.stolen++;
+
+        return victim.backlog.pollLast();
+    }
+
+    /**
+     * @return true if no task is queued or in flight, must hold {@link #lock}
+     */
+    private boolean isIdle() {
+        for( Node node : nodes ) {
+            if( !node.pending.isEmpty() || !node.backlog.isEmpty() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes the connections if the executor is shutdown and all tasks are finished.
+     */
+    private void tryTerminate() {
+
+        boolean idle;
+        synchronized( lock ) {
+            idle = isIdle();
+        }
+
+        if( shutdown && idle ) {
+            loop.close();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        tryTerminate();
+    }
+
+    /**
+     * The tasks in flight are not cancelled on the worker nodes, but their results are ignored.
+     *
+     * @return the unfinished tasks
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+
+        shutdown = true;
+
+        List<Runnable> unfinished = new ArrayList<Runnable>();
+
+        synchronized( lock ) {
+            for( Node node : nodes ) {
+                for( Entry entry : node.backlog ) {
+                    unfinished.add( entry.task );
+                }
+                for( Entry entry : node.pending.values() ) {
+                    unfinished.add( entry.task );
+                }
+                node.backlog.clear();
+                node.pending.clear();
+            }
+        }
+
+        loop.close();
+
+        return unfinished;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        try {
+            return shutdown && loop.isClosed() && loop.join( 1 );
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination( long timeout, TimeUnit unit ) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+
+        while( !loop.isClosed() ) {
+            long millis = TimeUnit.NANOSECONDS.toMillis( deadline - System.nanoTime() );
+            if( millis <= 0 ) {
+                return false;
+            }
+            Thread.sleep( Math.min( millis, 10 ) );
+        }
+
+        return loop.join( Math.max( 1, TimeUnit.NANOSECONDS.toMillis( deadline - System.nanoTime() ) ) );
+    }
+
+    @Override
+    public String toString() {
+        return "[ class: " + getClass().getSimpleName() + ", nodes: " + getNodeStats() + ", shutdown: " + shutdown + " ]";
+    }
+
+    /**
+     * A task and its serialized callable.
+     */
+    private static class Entry {
+
+        private final long id;
+
+        private final CallableTask<Object> task;
+
+        /**
+         * Null after the entry is sent.
+         */
+        private byte[] payload;
+
+        private long sentNanos;
+
+        private Entry( long id, CallableTask<Object> task, byte[] payload ) {
+            this.id      = id;
+            this.task    = task;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * One connected worker node. All fields are guarded by {@link #lock}.
+     */
+    private class Node {
+
+        private final InetSocketAddress address;
+
+        private final Connection connection;
+
+        private boolean open = true;
+
+        /**
+         * Count of worker threads of the node, zero until the node said hello.
+         */
+        private int threads = 0;
+
+        /**
+         * False until the node answered the challenge, no task is sent before.
+         */
+        private boolean authenticated = false;
+
+        /**
+         * Tasks which are not sent yet.
+         */
+        private final ArrayDeque<Entry> backlog = new ArrayDeque<Entry>();
+
+        /**
+         * Tasks which are sent but not finished.
+         */
+        private final Map<Long, Entry> pending = new HashMap<Long, Entry>();
+
+        private long completed = 0;
+
+        private long stolen = 0;
+
+        private long stolenFrom = 0;
+
+        /**
+         * Moving average of the time between sending a task and receiving its result.
+         */
+        private double latencyNanos = 0;
+
+        /**
+         * Moving average of finished tasks per second, zero until the first sample.
+         */
+        private double throughput = 0;
+
+        private long rateStartNanos = System.nanoTime();
+
+        private long rateCount = 0;
+
+        private Node( InetSocketAddress address, Connection connection ) {
+            this.address    = address;
+            this.connection = connection;
+        }
+
+        /**
+         * @return how long this node needs to finish its outstanding tasks and one more. While a node has no latency
+         * sample the count of outstanding tasks is returned, so it's preferred and gets measured.
+         */
+        private double expectedNanos() {
+
+            int outstanding = pending.size() + backlog.size() + 1;
+
+            if( latencyNanos == 0 || threads == 0 ) {
+                return outstanding;
+            }
+
+            // a busy node finishes one task per latency / threads
+            return outstanding * latencyNanos / threads;
+        }
+
+        /**
+         * Sends backlog entries, or stolen entries if the backlog is empty, until the prefetch window is full.
+         */
+        private void fill() {
+
+            while( open && authenticated && pending.size() < threads * PREFETCH ) {
+
+                Entry entry = backlog.pollFirst();
+
+                if( entry == null ) {
+                    entry = steal( this );
+                }
+
+                if( entry == null ) {
+                    break;
+                }
+
+                entry.sentNanos = System.nanoTime();
+
+                if( pending.isEmpty() ) {
+                    // the node was idle, idle time doesn't count for the throughput
+                    rateStartNanos = entry.sentNanos;
+                    rateCount      = 0;
+                }
+
+                pending.put( entry.id, entry );
+                connection.send( Frames.frame( Frames.TASK, entry.id, entry.payload ) );
+                entry.payload = null;
+            }
+        }
+
+        /**
+         * Called on the I/O thread when the node said hello.
+         *
+         * @param threads count of worker threads of the node
+         */
+        private void threads( int threads ) {
+            synchronized( lock ) {
+                this.threads = Math.max( 1, threads );
+            }
+        }
+
+        /**
+         * Called on the I/O thread when the node is authenticated, sends the first tasks.
+         */
+        private void start() {
+            synchronized( lock ) {
+                authenticated = true;
+                fill();
+            }
+        }
+
+        /**
+         * Called on the I/O thread for each result.
+         */
+        private void complete( byte type, long id, byte[] payload ) {
+
+            Entry entry;
+
+            synchronized( lock ) {
+
+                entry = pending.remove( id );
+
+                if( entry == null ) {
+                    // unfinished task of shutdownNow()
+                    return;
+                }
+
+                sample( System.nanoTime(), entry );
+
+                fill();
+            }
+
+            try {
+                Object value = Frames.deserialize( payload );
+                if( type == Frames.RESULT ) {
+                    entry.task.complete( value );
+                } else {
+                    entry.task.completeExceptionally( (Throwable) value );
+                }
+            } catch( Exception e ) {
+                entry.task.completeExceptionally( e );
+            }
+
+            if( shutdown ) {
+                tryTerminate();
+            }
+        }
+
+        private void sample( long now, Entry entry ) {
+
+            completed++;
+
+            double latency = now - entry.sentNanos;
+            latencyNanos = latencyNanos == 0 ? latency : latencyNanos + SMOOTHING * ( latency - latencyNanos );
+
+            rateCount++;
+
+            long elapsed = now - rateStartNanos;
+
+            if( elapsed >= RATE_INTERVAL_NANOS ) {
+                double rate = rateCount * 1e9 / elapsed;
+                throughput = throughput == 0 ? rate : throughput + SMOOTHING * ( rate - throughput );
+                rateStartNanos = now;
+                rateCount = 0;
+            }
+        }
+
+        /**
+         * Called on the I/O thread if the connection is closed.
+         */
+        private void fail( IOException cause ) {
+
+            List<CallableTask<Object>> failed = new ArrayList<CallableTask<Object>>();
+
+            synchronized( lock ) {
+
+                open = false;
+
+                for( Entry entry : pending.values() ) {
+                    failed.add( entry.task );
+                }
+                pending.clear();
+
+                // the backlog isn't sent yet, so it can be executed by the other nodes
+                for( Entry entry = backlog.pollFirst(); entry != null; entry = backlog.pollFirst() ) {
+                    if( !dispatch( entry ) ) {
+                        failed.add( entry.task );
+                    }
+                }
+            }
+
+            for( CallableTask<Object> task : failed ) {
+                task.completeExceptionally( new IOException( "connection to " + address + " lost.", cause ) );
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the utilization of one worker node, see {@link #getNodeStats()}.
+     */
+    public static class NodeStats {
+
+        private final InetSocketAddress address;
+
+        private final boolean open;
+
+        private final int threads;
+
+        private final int inFlight;
+
+        private final int queued;
+
+        private final long completed;
+
+        private final long stolen;
+
+        private final long stolenFrom;
+
+        private final double latencyMillis;
+
+        private final double throughput;
+
+        private NodeStats( Node node ) {
+            this.address       = node.address;
+            this.open          = node.open;
+            this.threads       = node.threads;
+            this.inFlight      = node.pending.size();
+            this.queued        = node.backlog.size();
+            this.completed     = node.completed;
+            this.stolen        = node.stolen;
+            this.stolenFrom    = node.stolenFrom;
+            this.latencyMillis = node.latencyNanos / 1e6;
+            this.throughput    = node.throughput;
+        }
+
+        /**
+         * @return {@link #address}
+         */
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        /**
+         * @return {@link #open}, false if the connection is lost
+         */
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * @return {@link #threads}, count of worker threads of the node
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * @return {@link #inFlight}, count of sent but not finished tasks
+         */
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * @return {@link #queued}, count of tasks in the backlog of the node
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return {@link #completed}, count of finished tasks
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return {@link #stolen}, count of tasks this node took from the backlog of other nodes
+         */
+        public long getStolen() {
+            return stolen;
+        }
+
+        /**
+         * @return {@link #stolenFrom}, count of tasks other nodes took from the backlog of this node
+         */
+        public long getStolenFrom() {
+            return stolenFrom;
+        }
+
+        /**
+         * @return {@link #latencyMillis}, moving average of the round trip time of a task
+         */
+        public double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        /**
+         * @return {@link #throughput}, moving average of finished tasks per second
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        /**
+         * @return tasks in flight per worker thread, 1.0 if all worker threads are busy
+         */
+        public double getUtilization() {
+            return threads == 0 ? 0 : Math.min( 1.0, (double) inFlight / threads );
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append( "[ node: " ).append( address ).append( ", " );
+            sb.append( "open: " ).append( open ).append( ", " );
+            sb.append( "threads: " ).append( threads ).append( ", " );
+            sb.append( "inFlight: " ).append( inFlight ).append( ", " );
+            sb.append( "queued: " ).append( queued ).append( ", " );
+            sb.append( "completed: " ).append( completed ).append( ", " );
+            sb.append( "stolen: " ).append( stolen ).append( ", " );
+            sb.append( "stolenFrom: " ).append( stolenFrom ).append( ", " );
+            sb.append( "latency: " ).append( String.format( "%.2f", latencyMillis ) ).append( " ms, " );
+            sb.append( "throughput: " ).append( String.format( "%.1f", throughput ) ).append( "/s" );
+            return sb.append( " ]" ).toString();
+        }
+    }
+}
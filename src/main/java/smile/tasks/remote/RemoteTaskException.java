@@ -0,0 +1,27 @@
+package smile.tasks.remote;
+
+/**
+ * Replaces an exception of a remote task which can't be serialized. Message and stack trace are the ones of the
+ * original exception.
+ *
+ * @author Andre Kullmann
+ */
+public class RemoteTaskException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String className;
+
+    public RemoteTaskException( Throwable cause ) {
+        super( cause.getClass().getName() + ": " + cause.getMessage() );
+        this.className = cause.getClass().getName();
+        setStackTrace( cause.getStackTrace() );
+    }
+
+    /**
+     * @return {@link #className}, the class of the original exception
+     */
+    public String getClassName() {
+        return className;
+    }
+}
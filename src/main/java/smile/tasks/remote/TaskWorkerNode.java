@@ -0,0 +1,225 @@
+package smile.tasks.remote;
+
+import smile.threads.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A worker server for {@link smile.tasks.remote.RemoteExecutorService}. It receives serialized
+ * {@link java.util.concurrent.Callable} objects, executes them in its own thread pool and sends back the results.
+ * The classes of the callables must be on the class path of the worker.
+ *
+ * Trust model: a coordinator which knows the shared secret can run any code on the worker, because the worker
+ * deserializes and calls what it gets. So the secret must be kept like a password, e.g. at least 16 random bytes
+ * which only the coordinator and the workers can read. Before a connection is authenticated the worker deserializes
+ * nothing, a peer which doesn't answer the challenge with the secret is disconnected ( see {@link smile.tasks.remote} ).
+ * The coordinator authenticates the worker the same way, because it deserializes the results. The frames are not
+ * encrypted, so the tasks and results can be read on the network. By default the worker listens on loopback only,
+ * bind it to another address only in a network which is trusted for that.
+ *
+ * Start it with: SMILE_TASKS_SECRET=... java -cp ... smile.tasks.remote.TaskWorkerNode [port] [threads] [bind address]
+ *
+ * @author Andre Kullmann
+ */
+public class TaskWorkerNode {
+
+    private static final Logger LOGGER = Logger.getLogger( TaskWorkerNode.class.getName() );
+
+    /**
+     * Printed to {@link System#out} by {@link #main(String[])} when the node accepts connections, followed by the port.
+     */
+    public static final String LISTENING = "smile task worker listening on port ";
+
+    /**
+     * The environment variable with the shared secret for {@link #main(String[])}, not an argument because the
+     * arguments of a process can be seen by all users of the host.
+     */
+    public static final String SECRET_ENV = "SMILE_TASKS_SECRET";
+
+    private final ServerSocketChannel server;
+
+    private final ExecutorService workerPool;
+
+    private final FrameLoop loop;
+
+    private final byte[] secret;
+
+    /**
+     * Listens on loopback only.
+     *
+     * @param port the port to listen on, 0 for any free port ( see {@link #getPort()} )
+     * @param threads count of worker threads
+     * @param secret the shared secret of the coordinator and the workers
+     * @throws IOException if the port can't be bound
+     */
+    public TaskWorkerNode( int port, int threads, byte[] secret ) throws IOException {
+        this( InetAddress.getLoopbackAddress(), port, threads, secret );
+    }
+
+    /**
+     * @param bindAddress the address to listen on, e.g. loopback or the address of a trusted network
+     * @param port the port to listen on, 0 for any free port ( see {@link #getPort()} )
+     * @param threads count of worker threads
+     * @param secret the shared secret of the coordinator and the workers
+     * @throws IOException if the port can't be bound
+     */
+    public TaskWorkerNode( InetAddress bindAddress, int port, final int threads, byte[] secret ) throws IOException {
+
+        this.secret = Frames.checkSecret( secret );
+
+        this.server = ServerSocketChannel.open();
+        this.server.socket().setReuseAddress( true );
+        this.server.socket().bind( new InetSocketAddress( bindAddress, port ) );
+
+        this.workerPool = Executors.newFixedThreadPool( threads, new DaemonThreadFactory( "Smile Remote Worker" ) );
+
+        this.loop = new FrameLoop( "Smile Remote Worker I/O" ) {
+
+            @Override
+            protected void onAccept( Connection connection ) {
+                connection.setChallenge( Frames.challenge() );
+                connection.send( Frames.frame( Frames.HELLO, threads, connection.getChallenge() ) );
+            }
+
+            @Override
+            protected void onFrame( Connection connection, byte type, long id, byte[] payload ) {
+                if( !connection.isAuthenticated() ) {
+                    authenticate( this, connection, type, payload );
+                } else if( type == Frames.TASK ) {
+                    workerPool.execute( new RemoteTask( connection, id, payload ) );
+                } else {
+                    LOGGER.warning( "unexpected frame type " + type + " from " + connection );
+                }
+            }
+
+            @Override
+            protected void onClose( Connection connection, IOException cause ) {
+                LOGGER.log( Level.FINE, "connection closed " + connection, cause );
+            }
+        };
+
+        this.loop.listen( server );
+        this.loop.start();
+    }
+
+    /**
+     * Checks the answer of the coordinator and answers its challenge. Called on the loop thread for the first frame of
+     * a connection, the connection is closed if it's not the right answer.
+     *
+     * @param payload challenge of the coordinator and its answer to the challenge of this node
+     */
+    private void authenticate( FrameLoop loop, Connection connection, byte type, byte[] payload ) {
+
+        if( type != Frames.AUTH || payload.length != Frames.CHALLENGE + Frames.ANSWER
+                || !Frames.verify( secret, Frames.COORDINATOR, connection.getChallenge(), Arrays.copyOfRange( payload, Frames.CHALLENGE, payload.length ) ) ) {
+            LOGGER.warning( "authentication failed, closing " + connection );
+            loop.close( connection, new IOException( "authentication failed" ) );
+            return;
+        }
+
+        connection.authenticated();
+
+        byte[] challenge = Arrays.copyOfRange( payload, 0, Frames.CHALLENGE );
+        connection.send( Frames.frame( Frames.AUTH, 0, Frames.answer( secret, Frames.WORKER, challenge ) ) );
+    }
+
+    /**
+     * @return the bound port
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting tasks, closes all connections and stops the worker threads.
+     */
+    public void close() {
+        loop.close();
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * Waits until the node is closed.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        loop.join( 0 );
+    }
+
+    /**
+     * Deserializes and calls one callable on a worker thread, the result is sent back on the same connection.
+     */
+    private static class RemoteTask implements Runnable {
+
+        private final Connection connection;
+
+        private final long id;
+
+        private final byte[] payload;
+
+        private RemoteTask( Connection connection, long id, byte[] payload ) {
+            this.connection = connection;
+            this.id         = id;
+            this.payload    = payload;
+        }
+
+        @Override
+        public void run() {
+
+            byte[] result;
+            byte type;
+
+            try {
+                Callable<?> callable = (Callable<?>) Frames.deserialize( payload );
+                result = Frames.serialize( callable.call() );
+                type   = Frames.RESULT;
+            } catch( Throwable t ) {
+                result = Frames.serializeException( t );
+                type   = Frames.ERROR;
+            }
+
+            if( !connection.isClosed() ) {
+                connection.send( Frames.frame( type, id, result ) );
+            }
+        }
+    }
+
+    /**
+     * The shared secret is read from the environment variable {@link #SECRET_ENV}.
+     *
+     * @param args [port] [threads] [bind address], default port 0 ( any free port ), one thread per processor and loopback
+     * @throws Exception if the node can't be started
+     */
+    public static void main( String[] args ) throws Exception {
+
+        int port    = args.length > 0 ? Integer.parseInt( args[0] ) : 0;
+        int threads = args.length > 1 ? Integer.parseInt( args[1] ) : Runtime.getRuntime().availableProcessors();
+
+        InetAddress bindAddress = args.length > 2 ? InetAddress.getByName( args[2] ) : InetAddress.getLoopbackAddress();
+
+        String secret = System.getenv( SECRET_ENV );
+
+        if( secret == null || secret.isEmpty() ) {
+            System.err.println( "the shared secret must be set in the environment variable " + SECRET_ENV );
+            System.exit( 1 );
+        }
+
+        TaskWorkerNode node = new TaskWorkerNode( bindAddress, port, threads, secret.getBytes( Charset.forName( "UTF-8" ) ) );
+
+        System.out.println( LISTENING + node.getPort() );
+        System.out.flush();
+
+        node.join();
+    }
+}
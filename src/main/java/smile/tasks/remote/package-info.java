@@ -0,0 +1,30 @@
+/**
+ * Executes the tasks of a task queue on other servers.
+ *
+ * A {@link smile.tasks.remote.TaskWorkerNode} runs on each server, the {@link smile.tasks.remote.RemoteExecutorService}
+ * is the worker pool of the queue and keeps one connection per node. Both sides use non-blocking sockets and one
+ * I/O thread.
+ *
+ * Each message is one frame:
+ *
+ * <pre>
+ *   int  length   count of the following bytes
+ *   byte type     1 = task, 2 = result, 3 = exception, 4 = hello, 5 = auth
+ *   long id       the task id, chosen by the coordinator, in a hello frame the count of worker threads
+ *   byte[]        the serialized callable, result or exception
+ * </pre>
+ *
+ * A worker node says hello when a connection is accepted, the payload is a random challenge. The coordinator answers
+ * with an auth frame: its own challenge and the HmacSHA256 of the shared secret over 'C' and the challenge of the
+ * node. If the answer is right, the node answers with an auth frame with the HmacSHA256 over 'W' and the challenge of
+ * the coordinator, otherwise it closes the connection. Until a connection is authenticated no payload is
+ * deserialized and a frame greater than the handshake is a protocol error. See the trust model of
+ * {@link smile.tasks.remote.TaskWorkerNode}.
+ *
+ * After the handshake the coordinator sends tasks without waiting for results,
+ * up to {@link smile.tasks.remote.RemoteExecutorService#PREFETCH} per worker thread, the results come back in
+ * completion order. All frames which are queued while the I/O thread is busy are written with one gathering write.
+ *
+ * @author Andre Kullmann
+ */
+package smile.tasks.remote;
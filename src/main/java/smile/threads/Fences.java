@@ -0,0 +1,118 @@
+package smile.threads;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.logging.Logger;
+
+/**
+ * Memory fences for memory which is shared outside of the java memory model, e.g. a memory mapped file which another
+ * process reads ( see {@link smile.tasks.remote.MappedRingBuffer} ). A fence is an instruction of the cpu, so it
+ * orders the accesses for all processes which map the same memory, not only for the JIT.
+ *
+ * On java 9 and later the fences of {@link java.lang.invoke.VarHandle} are used, on java 8 the fences of
+ * {@code sun.misc.Unsafe}. Both are found by reflection, because the library is built for java 7. On java 7 there are
+ * no fences, {@link #acquire()} and {@link #release()} return false and the caller has to fall back to a volatile
+ * access, which only keeps the JIT from reordering. That's enough on x86, where the cpu doesn't reorder loads with
+ * loads nor stores with earlier accesses ( TSO ), but not on e.g. ARM.
+ *
+ * @author Andre Kullmann
+ */
+public final class Fences {
+
+    private static final Logger LOGGER = Logger.getLogger( Fences.class.getName() );
+
+    private static final MethodType VOID = MethodType.methodType( void.class );
+
+    /**
+     * LoadLoad and LoadStore, null if no fence is available.
+     */
+    private static final MethodHandle ACQUIRE;
+
+    /**
+     * LoadStore and StoreStore, null if no fence is available.
+     */
+    private static final MethodHandle RELEASE;
+
+    static {
+
+        MethodHandle acquire = null;
+        MethodHandle release = null;
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            Class<?> varHandle = Class.forName( "java.lang.invoke.VarHandle" );
+            acquire = lookup.findStatic( varHandle, "acquireFence", VOID );
+            release = lookup.findStatic( varHandle, "releaseFence", VOID );
+        } catch( Exception noVarHandle ) {
+            try {
+                Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+                Field field = unsafeClass.getDeclaredField( "theUnsafe" );
+                field.setAccessible( true );
+                Object unsafe = field.get( null );
+                acquire = lookup.findVirtual( unsafeClass, "loadFence", VOID ).bindTo( unsafe );
+                // the storeFence of java 8 isn't specified to order earlier loads, the full fence is
+                release = lookup.findVirtual( unsafeClass, "fullFence", VOID ).bindTo( unsafe );
+            } catch( Exception noUnsafe ) {
+                LOGGER.warning( "no memory fences available, memory shared with other processes is only ordered on x86 ( TSO )." );
+                acquire = null;
+                release = null;
+            }
+        }
+
+        ACQUIRE = acquire;
+        RELEASE = release;
+    }
+
+    private Fences() {
+    }
+
+    /**
+     * @return true if {@link #acquire()} and {@link #release()} are cpu fences
+     */
+    public static boolean isAvailable() {
+        return ACQUIRE != null;
+    }
+
+    /**
+     * Loads before the fence are not reordered with loads and stores after it.
+     *
+     * @return false if no fence is available, see {@link Fences}
+     */
+    public static boolean acquire() {
+
+        if( ACQUIRE == null ) {
+            return false;
+        }
+
+        try {
+            ACQUIRE.invokeExact();
+        } catch( Throwable t ) {
+            throw new IllegalStateException( t );
+        }
+
+        return true;
+    }
+
+    /**
+     * Loads and stores before the fence are not reordered with stores after it.
+     *
+     * @return false if no fence is available, see {@link Fences}
+     */
+    public static boolean release() {
+
+        if( RELEASE == null ) {
+            return false;
+        }
+
+        try {
+            RELEASE.invokeExact();
+        } catch( Throwable t ) {
+            throw new IllegalStateException( t );
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,362 @@
+package smile.threads;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Timer for a huge count of short living timeouts, e.g. one deadline per task. Unlike {@link smile.threads.TimeoutThread}
+ * no thread is started per timeout: one daemon thread advances a wheel of buckets once per tick and expires the
+ * timeouts of the current bucket. Adding and cancelling a timeout is O(1), a timeout expires up to one tick late.
+ *
+ * The expired {@link Runnable} objects are executed on the timer thread, so they must be short, e.g.
+ * {@link java.util.concurrent.Future#cancel(boolean)}.
+ *
+ * @author Andre Kullmann
+ */
+public class HashedWheelTimer {
+
+    private static final Logger LOGGER = Logger.getLogger( HashedWheelTimer.class.getName() );
+
+    /**
+     * How many new or cancelled timeouts are processed per tick at most, so a flood of timeouts can't stall the wheel.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private static HashedWheelTimer shared;
+
+    /**
+     * @return the timer shared by all task queues, started on first use
+     */
+    public static synchronized HashedWheelTimer getShared() {
+        if( shared == null ) {
+            shared = new HashedWheelTimer( "smile-timer", 10, TimeUnit.MILLISECONDS, 512 );
+        }
+        return shared;
+    }
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    /**
+     * New timeouts, moved into the wheel by the timer thread.
+     */
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+
+    /**
+     * Cancelled timeouts, removed from the wheel by the timer thread.
+     */
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+
+    private final long startNanos;
+
+    private final Thread thread;
+
+    private volatile boolean stopped = false;
+
+    /**
+     *
+     * @param name name of the timer thread
+     * @param tickDuration the resolution of the timer
+     * @param unit the unit of tickDuration
+     * @param ticksPerWheel count of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer( String name, long tickDuration, TimeUnit unit, int ticksPerWheel ) {
+
+        if( tickDuration <= 0 ) {
+            throw new IllegalArgumentException( "tickDuration must be greater than 0: " + tickDuration );
+        }
+        if( ticksPerWheel <= 0 || ticksPerWheel > 1 << 30 ) {
+            throw new IllegalArgumentException( "ticksPerWheel must be between 1 and 2^30: " + ticksPerWheel );
+        }
+
+        int size = 1;
+        while( size < ticksPerWheel ) {
+            size <<= 1;
+        }
+
+        this.tickNanos  = unit.toNanos( tickDuration );
+        this.wheel      = new Bucket[size];
+        this.mask       = size - 1;
+        for( int i=0; i<size; i++ ) {
+            wheel[i] = new Bucket();
+        }
+
+        this.startNanos = System.nanoTime();
+        this.thread     = new DaemonThreadFactory( name ).newThread( new Runnable() {
+            @Override
+            public void run() {
+                HashedWheelTimer.this.run();
+            }
+        });
+        this.thread.start();
+    }
+
+    /**
+     * Schedules the given task.
+     *
+     * @param task executed on the timer thread when the delay is over
+     * @param delay the delay
+     * @param unit the unit of delay
+     * @return the timeout, to cancel it
+     * @throws IllegalStateException if the timer is stopped
+     */
+    public Timeout newTimeout( Runnable task, long delay, TimeUnit unit ) {
+
+        if( stopped ) {
+            throw new IllegalStateException( "timer is stopped." );
+        }
+
+        Timeout timeout = new Timeout( task, System.nanoTime() - startNanos + unit.toNanos( Math.max( 0, delay ) ) );
+        added.add( timeout );
+        return timeout;
+    }
+
+    /**
+     * Stops the timer thread, pending timeouts never expire.
+     */
+    public void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    /**
+     * The loop of the timer thread.
+     */
+    private void run() {
+
+        long tick = 0;
+
+        while( !stopped ) {
+
+            if( !waitForNextTick( tick ) ) {
+                break;
+            }
+
+            removeCancelled();
+            transferAdded( tick );
+            wheel[ (int) ( tick & mask ) ].expire();
+
+            tick++;
+        }
+    }
+
+    /**
+     * @param tick the current tick
+     * @return false if the timer is stopped
+     */
+    private boolean waitForNextTick( long tick ) {
+
+        long deadline = tickNanos * ( tick + 1 );
+
+        for(;;) {
+
+            long current = System.nanoTime() - startNanos;
+            long sleepMillis = ( deadline - current + 999999 ) / 1000000;
+
+            if( sleepMillis <= 0 ) {
+                return true;
+            }
+
+            try {
+                Thread.sleep( sleepMillis );
+            } catch( InterruptedException e ) {
+                if( stopped ) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void transferAdded( long tick ) {
+
+        for( int i=0; i<MAX_TRANSFERS_PER_TICK; i++ ) {
+
+            Timeout timeout = added.poll();
+
+            if( timeout == null ) {
+                break;
+            }
+
+            if( timeout.state.get() != Timeout.INIT ) {
+                continue;
+            }
+
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = ( calculated - tick ) / wheel.length;
+
+            // already expired timeouts go to the current bucket
+            long ticks = Math.max( calculated, tick );
+            wheel[ (int) ( ticks & mask ) ].add( timeout );
+        }
+    }
+
+    private void removeCancelled() {
+
+        for( int i=0; i<MAX_TRANSFERS_PER_TICK; i++ ) {
+
+            Timeout timeout = cancelled.poll();
+
+            if( timeout == null ) {
+                break;
+            }
+
+            if( timeout.bucket != null ) {
+                timeout.bucket.remove( timeout );
+            }
+        }
+    }
+
+    /**
+     * A scheduled task of a {@link smile.threads.HashedWheelTimer}.
+     */
+    public final class Timeout {
+
+        private static final int INIT      = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED   = 2;
+
+        private final Runnable task;
+
+        /**
+         * Nanos since the start of the timer.
+         */
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger( INIT );
+
+        /**
+         * Count of wheel rotations before this timeout expires, only used by the timer thread.
+         */
+        private long remainingRounds;
+
+        /*
+         * The bucket links, only used by the timer thread.
+         */
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout( Runnable task, long deadline ) {
+            this.task     = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels this timeout, the task will not be executed.
+         *
+         * @return false if the timeout is already expired or cancelled
+         */
+        public boolean cancel() {
+
+            if( !state.compareAndSet( INIT, CANCELLED ) ) {
+                return false;
+            }
+
+            cancelled.add( this );
+            return true;
+        }
+
+        /**
+         * @return true if {@link #cancel()} was called before the timeout expired
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * @return true if the task was executed
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+
+            if( !state.compareAndSet( INIT, EXPIRED ) ) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch( Throwable t ) {
+                LOGGER.log( Level.WARNING, "timeout task failed: " + task, t );
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, only used by the timer thread.
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add( Timeout timeout ) {
+
+            timeout.bucket = this;
+
+            if( head == null ) {
+                head = tail = timeout;
+            } else {
+                tail.next    = timeout;
+                timeout.prev = tail;
+                tail         = timeout;
+            }
+        }
+
+        private void remove( Timeout timeout ) {
+
+            Timeout next = timeout.next;
+
+            if( timeout.prev != null ) {
+                timeout.prev.next = next;
+            }
+            if( timeout.next != null ) {
+                timeout.next.prev = timeout.prev;
+            }
+
+            if( timeout == head ) {
+                head = next;
+            }
+            if( timeout == tail ) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev   = null;
+            timeout.next   = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Expires all timeouts of this bucket which are due, all others have to wait one more rotation.
+         */
+        private void expire() {
+
+            Timeout timeout = head;
+
+            while( timeout != null ) {
+
+                Timeout next = timeout.next;
+
+                if( timeout.remainingRounds <= 0 ) {
+                    remove( timeout );
+                    timeout.expire();
+                } else if( timeout.isCancelled() ) {
+                    remove( timeout );
+                } else {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+    }
+}
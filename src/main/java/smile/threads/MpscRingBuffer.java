@@ -0,0 +1,234 @@
+package smile.threads;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free multi-producer / single-consumer ring buffer.
+ *
+ * Producers claim a slot with one CAS on the tail index and publish the element into the preallocated array, so no
+ * lock is taken and no node is allocated. Only one thread may call the consumer methods ( {@link #poll()},
+ * {@link #take()}, {@link #drainTo(java.util.Collection)} ), the owner thread of a task queue is such a consumer by design.
+ * How the consumer waits for the next element is defined by the {@link smile.threads.WaitStrategy}.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <E> the element type
+ */
+public class MpscRingBuffer<E> {
+
+    /**
+     * Count of {@link Thread#yield()} calls before the consumer parks, see {@link smile.threads.WaitStrategy#PARK}.
+     */
+    private static final int YIELDS_BEFORE_PARK = 64;
+
+    private final AtomicReferenceArray<E> buffer;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Only written by the consumer.
+     */
+    private volatile long head;
+
+    /**
+     * The parked consumer, only used with {@link smile.threads.WaitStrategy#PARK}.
+     */
+    private volatile Thread waiter;
+
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * @param capacity minimal capacity, will be rounded up to the next power of two
+     * @param waitStrategy used by {@link #take()}
+     */
+    public MpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.buffer       = new AtomicReferenceArray<E>(size);
+        this.mask         = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @return {@link #waitStrategy}
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * @return the real capacity, a power of two
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the count of claimed slots, may include elements which are not yet published.
+     */
+    public int size() {
+        return (int) (tail.get() - head);
+    }
+
+    /**
+     * @return true if no slot is claimed.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Can be called by any thread.
+     *
+     * @param element not null
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        long capacity = mask + 1;
+
+        for (;;) {
+
+            long t = tail.get();
+
+            if (t - head >= capacity) {
+                return false;
+            }
+
+            if (tail.compareAndSet(t, t + 1)) {
+
+                // volatile write, pairs with the volatile waiter read in signal()
+                buffer.set((int) (t & mask), element);
+
+                if (waitStrategy.isSignalRequired()) {
+                    signal();
+                }
+
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Can be called by any thread. Yields until a slot is free.
+     *
+     * @param element not null
+     */
+    public void put(E element) {
+        while (!offer(element)) {
+            Thread.yield();
+        }
+    }
+
+    private void signal() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Consumer only.
+     *
+     * @return the next element or null if no element is published.
+     */
+    public E poll() {
+
+        long h = head;
+        int index = (int) (h & mask);
+
+        E element = buffer.get(index);
+
+        if (element == null) {
+            return null;
+        }
+
+        buffer.lazySet(index, null);
+        head = h + 1;
+
+        return element;
+    }
+
+    /**
+     * Consumer only. Waits with the configured {@link smile.threads.WaitStrategy} until an element is available.
+     *
+     * @return the next element
+     * @throws InterruptedException if the consumer thread is interrupted while waiting
+     */
+    public E take() throws InterruptedException {
+
+        E element = poll();
+
+        if (element == null && waitStrategy.isSignalRequired()) {
+            // a parked consumer is expensive to wake up, short waits are common
+            for (int i = 0; i < YIELDS_BEFORE_PARK && element == null; i++) {
+                Thread.yield();
+                element = poll();
+            }
+        }
+
+        while (element == null) {
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (waitStrategy.isSignalRequired()) {
+
+                waiter = Thread.currentThread();
+                try {
+                    // re-check after publishing the waiter, a producer which missed it has published its element
+                    element = poll();
+                    if (element == null) {
+                        waitStrategy.idle(this);
+                        element = poll();
+                    }
+                } finally {
+                    waiter = null;
+                }
+
+            } else {
+
+                waitStrategy.idle(this);
+                element = poll();
+            }
+        }
+
+        return element;
+    }
+
+    /**
+     * Consumer only. Moves all published elements into the given collection.
+     *
+     * @param collection target
+     * @return count of moved elements
+     */
+    public int drainTo(Collection<? super E> collection) {
+
+        int count = 0;
+
+        for (E element = poll(); element != null; element = poll()) {
+            collection.add(element);
+            count++;
+        }
+
+        return count;
+    }
+}
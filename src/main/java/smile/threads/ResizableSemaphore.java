@@ -0,0 +1,60 @@
+package smile.threads;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link java.util.concurrent.Semaphore} whose count of permits can be changed while permits are acquired.
+ *
+ * @author Andre Kullmann
+ */
+public class ResizableSemaphore extends Semaphore {
+
+    private static final long serialVersionUID = 1L;
+
+    public ResizableSemaphore(int permits) {
+        super(permits);
+    }
+
+    /**
+     * Makes {@link java.util.concurrent.Semaphore#reducePermits(int)} public. The available permits can become
+     * negative, acquired permits are not affected.
+     *
+     * @param reduction count of permits to remove
+     */
+    @Override
+    public void reducePermits(int reduction) {
+        super.reducePermits(reduction);
+    }
+
+    /**
+     * Acquires all permits which are available. Unlike {@link java.util.concurrent.Semaphore#drainPermits()} a
+     * negative count of available permits ( see {@link #reducePermits(int)} ) is kept, so removed permits which are
+     * still acquired are not forgotten.
+     *
+     * @return count of acquired permits, 0 if no permit is available
+     */
+    public int drainAvailablePermits() {
+        for (;;) {
+            int available = availablePermits();
+            if (available <= 0) {
+                return 0;
+            }
+            if (tryAcquire(available)) {
+                return available;
+            }
+        }
+    }
+
+    /**
+     * Adds or removes permits.
+     *
+     * @param delta count of permits to add, negative to remove
+     */
+    public void resize(int delta) {
+        if (delta > 0) {
+            release(delta);
+        } else if (delta < 0) {
+            reducePermits(-delta);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package smile.threads;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Defines how a consumer waits for the next element of a {@link smile.threads.MpscRingBuffer}.
+ *
+ * @author Andre Kullmann
+ */
+public enum WaitStrategy {
+
+    /**
+     * Busy spin, lowest latency but burns one cpu while waiting.
+     */
+    SPIN {
+        @Override
+        void idle(Object blocker) {
+        }
+    },
+
+    /**
+     * Calls {@link Thread#yield()} while waiting, gives other threads a chance to run.
+     */
+    YIELD {
+        @Override
+        void idle(Object blocker) {
+            Thread.yield();
+        }
+    },
+
+    /**
+     * Parks the waiting thread until a producer publishes an element. No cpu is used while waiting.
+     */
+    PARK {
+        @Override
+        void idle(Object blocker) {
+            LockSupport.park(blocker);
+        }
+
+        @Override
+        boolean isSignalRequired() {
+            return true;
+        }
+    };
+
+    /**
+     * Called by the consumer if no element is available.
+     *
+     * @param blocker see {@link java.util.concurrent.locks.LockSupport#park(Object)}
+     */
+    abstract void idle(Object blocker);
+
+    /**
+     * @return true if producers have to wake up the waiting consumer.
+     */
+    boolean isSignalRequired() {
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+package smile.threads;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A semaphore with a budget of long permits, e.g. bytes, where each acquire takes a weight. A weight greater than
+ * the whole budget is reduced to the budget, so it can be acquired when nothing else is acquired.
+ *
+ * {@link #tryAcquire(long)} and {@link #release(long)} are lock free, the lock is only taken if a thread waits.
+ *
+ * @author Andre Kullmann
+ */
+public class WeightedSemaphore {
+
+    private final long budget;
+
+    private final AtomicLong available;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    /**
+     * Count of threads in {@link #acquire(long)}, changed under {@link #lock}.
+     */
+    private volatile int waiters = 0;
+
+    /**
+     * @param budget the count of permits, must be greater than zero
+     */
+    public WeightedSemaphore(long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("budget must be greater than zero: " + budget);
+        }
+        this.budget    = budget;
+        this.available = new AtomicLong(budget);
+    }
+
+    /**
+     * @return {@link #budget}
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the permits which are not acquired
+     */
+    public long availablePermits() {
+        return available.get();
+    }
+
+    /**
+     * @param weight the requested permits
+     * @return the weight, at most {@link #budget}
+     * @throws IllegalArgumentException if the weight is negative
+     */
+    private long clamp(long weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("negative weight: " + weight);
+        }
+        return Math.min(weight, budget);
+    }
+
+    /**
+     * @param weight the requested permits, reduced to the budget
+     * @return true if the permits are acquired
+     */
+    public boolean tryAcquire(long weight) {
+
+        long w = clamp(weight);
+
+        for (;;) {
+            long current = available.get();
+            if (current < w) {
+                return false;
+            }
+            if (available.compareAndSet(current, current - w)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Blocks until the permits are available.
+     *
+     * @param weight the requested permits, reduced to the budget
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void acquire(long weight) throws InterruptedException {
+
+        if (tryAcquire(weight)) {
+            return;
+        }
+
+        lock.lockInterruptibly();
+        try {
+            waiters++;
+            try {
+                // waiters is written before the permits are read, release writes the permits before it reads waiters
+                while (!tryAcquire(weight)) {
+                    released.await();
+                }
+            } finally {
+                waiters--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param weight the permits to give back, the same weight as acquired
+     */
+    public void release(long weight) {
+
+        available.addAndGet(clamp(weight));
+
+        if (waiters > 0) {
+            lock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[ class: " + getClass().getSimpleName() + ", budget: " + budget + ", available: " + availablePermits() + " ]";
+    }
+}
@@ -0,0 +1,58 @@
+package smile.tasks;
+
+import smile.threads.MpscRingBuffer;
+import smile.threads.VirtualThreadFactory;
+import smile.threads.WaitStrategy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Implementation of {@link smile.tasks.AbstractTaskQueue} which runs each submitted {@link java.util.concurrent.Callable}
+ * on its own virtual thread. Designed for I/O heavy tasks ( JDBC, HTTP ), a task waiting for I/O doesn't block a
+ * platform thread. So there is no fixed count of worker threads, the concurrency is only bounded by the capacity
+ * of the queue.
+ *
+ * The {@link smile.tasks.ResultHandler} is invoked on the owner thread, like with {@link smile.tasks.SimpleTaskQueue}.
+ *
+ * Requires Java 21, see the java21 source set.
+ *
+ * @author Andre Kullmann
+ *
+ * @param <T> The result type of the submitted {@link java.util.concurrent.Callable} objects.
+ */
+public class VirtualThreadTaskQueue<T> extends AbstractRingBufferTaskQueue<T> {
+
+    public VirtualThreadTaskQueue(
+            int capacity,
+            ResultHandler<T> resultHandler) {
+        this("Smile Queue", capacity, resultHandler);
+    }
+
+    public VirtualThreadTaskQueue(
+            String name,
+            int capacity,
+            ResultHandler<T> resultHandler) {
+        this(name, capacity, WaitStrategy.PARK, resultHandler);
+    }
+
+    /**
+     * @param name the queue name
+     * @param capacity how many tasks can run at the same time before {@link #submit(java.util.concurrent.Callable)} blocks
+     * @param waitStrategy how the owner thread waits in {@link #awaitOneResult()}
+     * @param resultHandler will be called for each result or exception.
+     */
+    public VirtualThreadTaskQueue(
+            String name,
+            int capacity,
+            WaitStrategy waitStrategy,
+            ResultHandler<T> resultHandler) {
+
+        super(name,
+                capacity,
+                capacity,
+                Executors.newThreadPerTaskExecutor(new VirtualThreadFactory(name)),
+                new MpscRingBuffer<Future<T>>(capacity, waitStrategy),
+                resultHandler);
+    }
+}
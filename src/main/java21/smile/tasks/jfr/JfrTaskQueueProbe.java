@@ -0,0 +1,172 @@
+package smile.tasks.jfr;
+
+import jdk.jfr.EventType;
+import smile.tasks.AbstractTaskQueue;
+import smile.tasks.metrics.ForwardingProbe;
+import smile.tasks.metrics.TaskQueueProbe;
+
+/**
+ * {@link smile.tasks.metrics.TaskQueueProbe} which emits Java Flight Recorder events, so a normal recording shows
+ * where the time of a queue goes: {@code smile.tasks.SubmitBlocked}, {@code smile.tasks.TaskQueued},
+ * {@code smile.tasks.TaskRun} and {@code smile.tasks.ResultHandled}. Each event has the queue name and the duration
+ * as field, the start time of the event is the time it was reported on the owner thread.
+ *
+ * While no recording has the events enabled {@link #isEnabled()} is false, so the tasks are not timed and a handled
+ * task costs a few field reads.
+ *
+ * Requires Java 21, see the java21 source set.
+ *
+ * @author Andre Kullmann
+ */
+public class JfrTaskQueueProbe implements ForwardingProbe {
+
+    private static final EventType SUBMIT_BLOCKED = EventType.getEventType(SubmitBlockedEvent.class);
+
+    private static final EventType TASK_QUEUED = EventType.getEventType(TaskQueuedEvent.class);
+
+    private static final EventType TASK_RUN = EventType.getEventType(TaskRunEvent.class);
+
+    private static final EventType RESULT_HANDLED = EventType.getEventType(ResultHandledEvent.class);
+
+    private final String queue;
+
+    /**
+     * Gets all events too, e.g. the {@link smile.tasks.metrics.TaskQueueMetrics} of the queue, may be null.
+     */
+    private final TaskQueueProbe next;
+
+    public JfrTaskQueueProbe(String queue) {
+        this(queue, null);
+    }
+
+    /**
+     * @param queue the queue name of the events
+     * @param next gets all events too, may be null
+     */
+    public JfrTaskQueueProbe(String queue, TaskQueueProbe next) {
+        this.queue = queue;
+        this.next  = next;
+    }
+
+    /**
+     * Emits the events of the queue. The current probe of the queue, e.g. the metrics, gets all events too, and the
+     * sample rate of the queue is kept: with {@link smile.tasks.AbstractTaskQueue#enableMetrics()} one of 8 tasks is
+     * timed, whether a recording is running or not. Without another probe each task is timed while a recording is
+     * running, and none otherwise.
+     *
+     * {@link smile.tasks.AbstractTaskQueue#disableMetrics()} removes the metrics behind this probe.
+     *
+     * @param queue the queue
+     * @param <T> the result type of the queue
+     * @return the queue
+     */
+    public static <T> AbstractTaskQueue<T> enable(AbstractTaskQueue<T> queue) {
+        return queue.setProbe(new JfrTaskQueueProbe(queue.getName(), queue.getProbe()), queue.getSampleRate());
+    }
+
+    /**
+     * @return {@link #queue}
+     */
+    public String getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return {@link #next}
+     */
+    @Override
+    public TaskQueueProbe getNext() {
+        return next;
+    }
+
+    @Override
+    public JfrTaskQueueProbe withNext(TaskQueueProbe next) {
+        return new JfrTaskQueueProbe(queue, next);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return SUBMIT_BLOCKED.isEnabled() || TASK_QUEUED.isEnabled() || TASK_RUN.isEnabled()
+                || RESULT_HANDLED.isEnabled() || (next != null && next.isEnabled());
+    }
+
+    private void task(long queueWaitNanos, long executionNanos, boolean failed) {
+
+        if (queueWaitNanos >= 0 && TASK_QUEUED.isEnabled()) {
+            TaskQueuedEvent event = new TaskQueuedEvent();
+            event.queue     = queue;
+            event.queueWait = queueWaitNanos;
+            event.commit();
+        }
+
+        if (executionNanos >= 0 && TASK_RUN.isEnabled()) {
+            TaskRunEvent event = new TaskRunEvent();
+            event.queue     = queue;
+            event.execution = executionNanos;
+            event.failed    = failed;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onCompleted(long queueWaitNanos, long executionNanos) {
+        task(queueWaitNanos, executionNanos, false);
+        if (next != null) {
+            next.onCompleted(queueWaitNanos, executionNanos);
+        }
+    }
+
+    @Override
+    public void onFailed(long queueWaitNanos, long executionNanos) {
+        task(queueWaitNanos, executionNanos, true);
+        if (next != null) {
+            next.onFailed(queueWaitNanos, executionNanos);
+        }
+    }
+
+    @Override
+    public void onCancelled(int count) {
+        if (next != null) {
+            next.onCancelled(count);
+        }
+    }
+
+    @Override
+    public void onRejected() {
+        if (next != null) {
+            next.onRejected();
+        }
+    }
+
+    @Override
+    public void onResultsHandled(int count, long nanos) {
+        if (RESULT_HANDLED.isEnabled()) {
+            ResultHandledEvent event = new ResultHandledEvent();
+            event.queue   = queue;
+            event.count   = count;
+            event.handler = nanos;
+            event.commit();
+        }
+        if (next != null) {
+            next.onResultsHandled(count, nanos);
+        }
+    }
+
+    @Override
+    public void onSubmitBlocked(long nanos) {
+        if (SUBMIT_BLOCKED.isEnabled()) {
+            SubmitBlockedEvent event = new SubmitBlockedEvent();
+            event.queue   = queue;
+            event.blocked = nanos;
+            event.commit();
+        }
+        if (next != null) {
+            next.onSubmitBlocked(nanos);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[ class: " + getClass().getSimpleName() + ", queue: " + queue + ", enabled: " + isEnabled() + " ]";
+    }
+}
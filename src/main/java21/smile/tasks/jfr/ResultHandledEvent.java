@@ -0,0 +1,31 @@
+package smile.tasks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The {@link smile.tasks.ResultHandler} handled one result or a batch of results on the owner thread.
+ *
+ * @author Andre Kullmann
+ */
+@Name("smile.tasks.ResultHandled")
+@Label("Result Handled")
+@Category({"Smile", "Task Queue"})
+@Description("Time the result handler spent on the owner thread")
+@StackTrace(false)
+class ResultHandledEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Count")
+    int count;
+
+    @Label("Handler")
+    @Timespan(Timespan.NANOSECONDS)
+    long handler;
+}
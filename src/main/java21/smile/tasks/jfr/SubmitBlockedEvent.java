@@ -0,0 +1,28 @@
+package smile.tasks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The owner thread waited in a submit for a free permit, the memory budget or the heap pressure throttle.
+ *
+ * @author Andre Kullmann
+ */
+@Name("smile.tasks.SubmitBlocked")
+@Label("Submit Blocked")
+@Category({"Smile", "Task Queue"})
+@Description("The owner thread waited in a submit for a free permit, the memory budget or the heap pressure throttle")
+@StackTrace(false)
+class SubmitBlockedEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Blocked")
+    @Timespan(Timespan.NANOSECONDS)
+    long blocked;
+}
@@ -0,0 +1,28 @@
+package smile.tasks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A task waited in the worker queue, from the submit until a worker started it.
+ *
+ * @author Andre Kullmann
+ */
+@Name("smile.tasks.TaskQueued")
+@Label("Task Queued")
+@Category({"Smile", "Task Queue"})
+@Description("Time from the submit of a task until a worker started it")
+@StackTrace(false)
+class TaskQueuedEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Queue Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long queueWait;
+}
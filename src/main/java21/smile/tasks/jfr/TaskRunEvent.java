@@ -0,0 +1,32 @@
+package smile.tasks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A worker executed a task.
+ *
+ * @author Andre Kullmann
+ */
+@Name("smile.tasks.TaskRun")
+@Label("Task Run")
+@Category({"Smile", "Task Queue"})
+@Description("Time a worker executed the body of a task")
+@StackTrace(false)
+class TaskRunEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Execution")
+    @Timespan(Timespan.NANOSECONDS)
+    long execution;
+
+    @Label("Failed")
+    @Description("The task threw an exception or missed its deadline")
+    boolean failed;
+}
@@ -0,0 +1,24 @@
+package smile.threads;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link java.util.concurrent.ThreadFactory} implementation which returns virtual threads, the counterpart of
+ * {@link smile.threads.DaemonThreadFactory}. Virtual threads are always daemon threads.
+ *
+ * Requires Java 21, see the java21 source set.
+ *
+ * @author Andre Kullmann
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+
+    private final ThreadFactory factory;
+
+    public VirtualThreadFactory(String name) {
+        this.factory = Thread.ofVirtual().name( name + "-", 1 ).factory();
+    }
+
+    public Thread newThread(Runnable runnable) {
+        return factory.newThread(runnable);
+    }
+}
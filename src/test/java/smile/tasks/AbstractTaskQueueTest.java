@@ -0,0 +1,298 @@
+package smile.tasks;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Tests every {@link smile.tasks.AbstractTaskQueue} implementation has to pass, the subclasses create the queue.
+ *
+ * @author Andre Kullmann
+ */
+public abstract class AbstractTaskQueueTest extends TestCase {
+
+    /**
+     * @param capacity the capacity of the queue
+     * @param threads the count of worker threads, implementations without a fixed count of threads may ignore it
+     * @param handler the result handler
+     */
+    protected abstract <T> AbstractTaskQueue<T> newQueue(int capacity, int threads, ResultHandler<T> handler);
+
+    protected Callable<String> stringResultCallable( final String name ) {
+
+        return new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                return name;
+            }
+
+        };
+    }
+
+    protected class ResultAsListResultHandler<T> implements ResultHandler<T> {
+
+        public int resultCount = 0;
+
+        public int exceptionCount = 0;
+
+        public List<T> results = new ArrayList<T>();
+
+        public List<Exception> exceptions = new ArrayList<Exception>();
+
+        @Override
+        public void onResult(T result) {
+            resultCount += 1;
+            results.add( result );
+        }
+
+        @Override
+        public void onException(Exception e) {
+            e.printStackTrace();
+            exceptionCount += 1;
+            exceptions.add( e );
+        }
+    }
+
+    public void testT() {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        AbstractTaskQueue<String> queue = newQueue( 100, 1, handler );
+
+        for( int i=0; i<100; i++ ) {
+            queue.submit( stringResultCallable( "Test " + i ) );
+        }
+
+        queue.await();
+
+        assertEquals( 100, handler.resultCount );
+        assertEquals( 0, handler.exceptionCount );
+    }
+
+    public void testW() {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        AbstractTaskQueue<String> queue = newQueue( 2, 2, handler );
+
+        long start = System.currentTimeMillis();
+
+        for( int i=0; i<10; i++ ) {
+            queue.submit( new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    Thread.sleep(500);
+                    return null;
+                }
+            } );
+        }
+
+        long end = System.currentTimeMillis();
+
+        long time = end - start;
+
+        assertTrue( time + "", time >= 2000 );
+
+        queue.await();
+
+        assertEquals( 0, handler.exceptionCount );
+        assertEquals( 10, handler.resultCount );
+
+    }
+
+    public void testSubmitAll() {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        AbstractTaskQueue<String> queue = newQueue( 10, 2, handler );
+
+        List<Callable<String>> callables = new ArrayList<Callable<String>>();
+        for( int i=0; i<1000; i++ ) {
+            callables.add( stringResultCallable( "Test " + i ) );
+        }
+
+        assertEquals( 1000, queue.submitAll( callables ) );
+
+        queue.await();
+
+        assertEquals( 1000, handler.resultCount );
+        assertEquals( 0, handler.exceptionCount );
+        assertEquals( 1000, new HashSet<String>( handler.results ).size() );
+    }
+
+    protected class BatchAsListResultHandler<T> extends ResultAsListResultHandler<T> implements BatchResultHandler<T> {
+
+        public int batchCount = 0;
+
+        @Override
+        public void onResults(List<T> results) {
+            batchCount += 1;
+            for( T result : results ) {
+                onResult( result );
+            }
+        }
+
+        @Override
+        public void onExceptions(List<Exception> exceptions) {
+            batchCount += 1;
+            for( Exception e : exceptions ) {
+                onException( e );
+            }
+        }
+    }
+
+    public void testBatchResultHandler() {
+
+        BatchAsListResultHandler<String> handler = new BatchAsListResultHandler<String>();
+
+        AbstractTaskQueue<String> queue = newQueue( 10, 2, handler );
+
+        for( int i=0; i<100; i++ ) {
+            final int n = i;
+            queue.submit( new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    if( n % 10 == 0 )
+                        throw new IllegalStateException( "Test " + n );
+                    return "Test " + n;
+                }
+            } );
+        }
+
+        queue.await();
+
+        assertEquals( 90, handler.resultCount );
+        assertEquals( 10, handler.exceptionCount );
+        assertTrue( handler.batchCount > 0 );
+        assertTrue( handler.batchCount <= 100 );
+    }
+
+    protected Callable<Integer> sleepingCallable( final int n, final long millis ) {
+
+        return new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                Thread.sleep( millis );
+                return n;
+            }
+
+        };
+    }
+
+    public void testOrdered() {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        AbstractTaskQueue<Integer> queue = newQueue( 10, 4, handler );
+        queue.setOrdered( true );
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for( int i=0; i<100; i++ ) {
+            expected.add( i );
+            queue.submit( sleepingCallable( i, i % 7 == 0 ? 20 : i % 3 ) );
+        }
+
+        queue.await();
+
+        assertEquals( expected, handler.results );
+    }
+
+    public void testOrderedHeadOfLineBlocksAdmission() {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        AbstractTaskQueue<Integer> queue = newQueue( 5, 5, handler );
+        queue.setOrdered( true );
+
+        long start = System.currentTimeMillis();
+
+        queue.submit( sleepingCallable( 0, 500 ) );
+        for( int i=1; i<6; i++ ) {
+            queue.submit( sleepingCallable( i, 0 ) );
+        }
+
+        long time = System.currentTimeMillis() - start;
+        assertTrue( time + "", time >= 450 );
+        assertEquals( Integer.valueOf( 0 ), handler.results.get( 0 ) );
+
+        queue.await();
+
+        assertEquals( 6, handler.results.size() );
+    }
+
+    public void testKeyedSubmit() {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        AbstractTaskQueue<String> queue = newQueue( 20, 4, handler );
+
+        final int keys = 4;
+        final AtomicIntegerArray running = new AtomicIntegerArray( keys );
+        final int[] last = new int[keys];
+        Arrays.fill( last, -1 );
+
+        for( int i=0; i<200; i++ ) {
+            final int key = i % keys;
+            final int n   = i / keys;
+            queue.submit( "key " + key, new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    if( running.incrementAndGet( key ) != 1 )
+                        throw new IllegalStateException( "parallel execution of key " + key );
+                    try {
+                        if( last[key] != n - 1 )
+                            throw new IllegalStateException( "wrong order of key " + key );
+                        last[key] = n;
+                        Thread.sleep( 1 );
+                        return "key " + key;
+                    } finally {
+                        running.decrementAndGet( key );
+                    }
+                }
+            } );
+        }
+
+        queue.await();
+
+        assertEquals( 0, handler.exceptionCount );
+        assertEquals( 200, handler.resultCount );
+        assertEquals( 0, queue.getLaneDepth( "key 0" ) );
+        for( int depth : queue.getLaneDepths() ) {
+            assertEquals( 0, depth );
+        }
+    }
+
+    public void testSubmitWithTimeout() {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        AbstractTaskQueue<Integer> queue = newQueue( 20, 20, handler );
+
+        long start = System.currentTimeMillis();
+
+        for( int i=0; i<20; i++ ) {
+            queue.submit( sleepingCallable( i, i % 2 == 0 ? 10000 : 0 ), 100, TimeUnit.MILLISECONDS );
+        }
+
+        queue.await();
+
+        assertTrue( System.currentTimeMillis() - start < 5000 );
+        assertEquals( 10, handler.resultCount );
+        assertEquals( 10, handler.exceptionCount );
+        for( Exception e : handler.exceptions ) {
+            assertTrue( e.toString(), e instanceof TimeoutException );
+        }
+    }
+}
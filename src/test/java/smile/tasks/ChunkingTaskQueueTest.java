@@ -0,0 +1,109 @@
+package smile.tasks;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Andre Kullmann
+ */
+public class ChunkingTaskQueueTest extends TestCase {
+
+    private static class SummingResultHandler implements ResultHandler<Integer> {
+
+        public long sum = 0;
+
+        public int resultCount = 0;
+
+        public List<Exception> exceptions = new ArrayList<Exception>();
+
+        public Thread thread;
+
+        @Override
+        public void onResult( Integer result ) {
+            thread = Thread.currentThread();
+            sum += result;
+            resultCount++;
+        }
+
+        @Override
+        public void onException( Exception e ) {
+            exceptions.add( e );
+        }
+    }
+
+    private Callable<Integer> valueCallable( final int i ) {
+
+        return new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                if( i % 1000 == 0 ) {
+                    throw new Exception( "task " + i + " failed" );
+                }
+                return i;
+            }
+
+        };
+    }
+
+    public void testTinyTasks() {
+
+        SummingResultHandler handler = new SummingResultHandler();
+
+        ChunkingTaskQueue<Integer> queue = new ChunkingTaskQueue<Integer>( "chunking", 8, 4, 100, TimeUnit.MICROSECONDS, 256, handler );
+
+        long sum = 0;
+        for( int i=1; i<=100000; i++ ) {
+            queue.submit( valueCallable( i ) );
+            if( i % 1000 != 0 ) {
+                sum += i;
+            }
+        }
+
+        queue.await();
+
+        assertEquals( 99900, handler.resultCount );
+        assertEquals( 100, handler.exceptions.size() );
+        assertEquals( sum, handler.sum );
+        assertSame( Thread.currentThread(), handler.thread );
+
+        // tiny tasks are grouped
+        assertTrue( queue.toString(), queue.getChunkSize() > 1 );
+        assertTrue( queue.toString(), queue.getChunkSize() <= 256 );
+
+        // a chunk which is not full is submitted by await
+        queue.submit( valueCallable( 1 ) );
+        queue.await();
+        assertEquals( 99901, handler.resultCount );
+
+        queue.cancel();
+    }
+
+    public void testSlowTasksAreNotGrouped() {
+
+        SummingResultHandler handler = new SummingResultHandler();
+
+        ChunkingTaskQueue<Integer> queue = new ChunkingTaskQueue<Integer>( "chunking", 8, 4, 100, TimeUnit.MICROSECONDS, 256, handler );
+
+        for( int i=1; i<=50; i++ ) {
+            queue.submit( new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Thread.sleep( 2 );
+                    return 1;
+                }
+            });
+        }
+
+        queue.await();
+
+        assertEquals( 50, handler.resultCount );
+        assertEquals( 1, queue.getChunkSize() );
+
+        queue.cancel();
+    }
+}
@@ -0,0 +1,190 @@
+package smile.tasks;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Andre Kullmann
+ */
+public class DirectoryTaskQueueTest extends TestCase {
+
+    private static class SquareCallable implements Callable<Integer>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+
+        private SquareCallable( int n ) {
+            this.n = n;
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            Thread.sleep( 1 );
+            return n * n;
+        }
+    }
+
+    private static class ResultCollector implements ResultHandler<Integer> {
+
+        private final List<Integer> results = new ArrayList<Integer>();
+
+        private final List<Exception> exceptions = new ArrayList<Exception>();
+
+        @Override
+        public void onResult( Integer result ) {
+            results.add( result );
+        }
+
+        @Override
+        public void onException( Exception e ) {
+            exceptions.add( e );
+        }
+    }
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile( "smile-directory-", "" );
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll( directory );
+    }
+
+    private static void deleteAll( File file ) {
+        File[] files = file.listFiles();
+        if( files != null ) {
+            for( File f : files ) {
+                deleteAll( f );
+            }
+        }
+        file.delete();
+    }
+
+    public void testSharedBacklog() throws Exception {
+
+        // a second node which only works, like another process on the host
+        DirectoryTaskQueue<Integer> other = new DirectoryTaskQueue<Integer>( 1, directory, 2, new ResultCollector() );
+
+        ResultCollector handler = new ResultCollector();
+        DirectoryTaskQueue<Integer> queue = new DirectoryTaskQueue<Integer>( 64, directory, 2, handler );
+
+        try {
+            long sum = 0;
+            for( int i=0; i<500; i++ ) {
+                queue.submit( new SquareCallable( i ) );
+                sum += i * i;
+            }
+
+            queue.await();
+
+            assertEquals( 0, handler.exceptions.size() );
+            assertEquals( 500, handler.results.size() );
+
+            long actual = 0;
+            for( Integer result : handler.results ) {
+                actual += result;
+            }
+            assertEquals( sum, actual );
+
+            assertTrue( other.getWorkerPool().getExecuted() > 0 );
+            assertTrue( queue.getWorkerPool().getExecuted() > 0 );
+            assertEquals( 500, other.getWorkerPool().getExecuted() + queue.getWorkerPool().getExecuted() );
+        } finally {
+            queue.cancel();
+            other.cancel();
+        }
+
+        assertTrue( queue.getWorkerPool().awaitTermination( 10, TimeUnit.SECONDS ) );
+        assertTrue( other.getWorkerPool().awaitTermination( 10, TimeUnit.SECONDS ) );
+        assertEquals( 0, new File( directory, "nodes" ).list().length );
+    }
+
+    public void testStaleClaimIsRecovered() throws Exception {
+
+        ResultCollector handler = new ResultCollector();
+
+        // submits only, the task stays in the backlog
+        DirectoryTaskQueue<Integer> queue = new DirectoryTaskQueue<Integer>( "submitter", 4, directory, 0, 1, TimeUnit.SECONDS, handler );
+
+        try {
+            queue.submit( new SquareCallable( 7 ) );
+
+            // a node claims the task and crashes
+            File pending = new File( directory, "pending" );
+            String name = pending.list()[0];
+            File claimed = new File( new File( directory, "claimed" ), "crashed" );
+            assertTrue( claimed.mkdirs() );
+            assertTrue( new File( pending, name ).renameTo( new File( claimed, name ) ) );
+            File heartbeat = new File( new File( directory, "nodes" ), "crashed" );
+            assertTrue( heartbeat.createNewFile() );
+            assertTrue( heartbeat.setLastModified( System.currentTimeMillis() - 60000 ) );
+
+            DirectoryTaskQueue<Integer> worker = new DirectoryTaskQueue<Integer>( "worker", 1, directory, 1, 1, TimeUnit.SECONDS, new ResultCollector() );
+
+            try {
+                queue.await();
+
+                assertEquals( 1, handler.results.size() );
+                assertEquals( 49, handler.results.get( 0 ).intValue() );
+                assertEquals( 1, queue.getWorkerPool().getRecovered() + worker.getWorkerPool().getRecovered() );
+                assertFalse( heartbeat.exists() );
+            } finally {
+                worker.cancel();
+            }
+        } finally {
+            queue.cancel();
+        }
+    }
+
+    public void testUnsupportedOperationsFailFast() throws Exception {
+
+        ResultCollector handler = new ResultCollector();
+        DirectoryTaskQueue<Integer> queue = new DirectoryTaskQueue<Integer>( 4, directory, 1, handler );
+
+        try {
+            try {
+                queue.submit( "key", new SquareCallable( 1 ) );
+                fail( "keyed submit on a serializing worker pool" );
+            } catch( UnsupportedOperationException e ) {
+                assertTrue( e.getMessage(), e.getMessage().startsWith( "keyed submit" ) );
+            }
+
+            try {
+                queue.submit( new SquareCallable( 2 ), 1, TimeUnit.SECONDS );
+                fail( "timed submit on a serializing worker pool" );
+            } catch( UnsupportedOperationException e ) {
+                assertTrue( e.getMessage(), e.getMessage().startsWith( "timed submit" ) );
+            }
+
+            try {
+                queue.setAdaptiveLimit( new AdaptiveLimit() );
+                fail( "adaptive limit on a serializing worker pool" );
+            } catch( UnsupportedOperationException e ) {
+                assertTrue( e.getMessage(), e.getMessage().startsWith( "adaptive limit" ) );
+            }
+            assertNull( queue.getAdaptiveLimit() );
+
+            // no permit is taken, the queue still works
+            assertEquals( 4, queue.getSemaphore().availablePermits() );
+
+            queue.submit( new SquareCallable( 3 ) );
+            queue.await();
+
+            assertEquals( 1, handler.results.size() );
+            assertEquals( 9, handler.results.get( 0 ).intValue() );
+        } finally {
+            queue.cancel();
+        }
+    }
+}
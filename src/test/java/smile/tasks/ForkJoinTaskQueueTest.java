@@ -0,0 +1,189 @@
+package smile.tasks;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author Andre Kullmann
+ */
+public class ForkJoinTaskQueueTest extends TestCase {
+
+    private class ResultAsListResultHandler<T> implements ResultHandler<T> {
+
+        public Thread thread;
+
+        public List<T> results = new ArrayList<T>();
+
+        public List<Exception> exceptions = new ArrayList<Exception>();
+
+        @Override
+        public void onResult(T result) {
+            thread = Thread.currentThread();
+            results.add( result );
+        }
+
+        @Override
+        public void onException(Exception e) {
+            thread = Thread.currentThread();
+            exceptions.add( e );
+        }
+    }
+
+    private static class Sum extends RecursiveTask<Long> {
+
+        private final long from;
+
+        private final long to;
+
+        private Sum( long from, long to ) {
+            this.from = from;
+            this.to   = to;
+        }
+
+        @Override
+        protected Long compute() {
+
+            if( to - from <= 1000 ) {
+                long sum = 0;
+                for( long i=from; i<to; i++ ) {
+                    sum += i;
+                }
+                return sum;
+            }
+
+            long middle = (from + to) / 2;
+            Sum left = new Sum( from, middle );
+            left.fork();
+            return new Sum( middle, to ).compute() + left.join();
+        }
+    }
+
+    public void testSubmit() {
+
+        ResultAsListResultHandler<Long> handler = new ResultAsListResultHandler<Long>();
+
+        ForkJoinTaskQueue<Long> queue = new ForkJoinTaskQueue<Long>( 10, 2, handler );
+
+        for( int i=0; i<100; i++ ) {
+            queue.submit( new Callable<Long>() {
+
+                @Override
+                public Long call() throws Exception {
+                    return Thread.currentThread().getId();
+                }
+            } );
+        }
+
+        queue.await();
+
+        assertEquals( 100, handler.results.size() );
+        assertEquals( 0, handler.exceptions.size() );
+        assertSame( Thread.currentThread(), handler.thread );
+        assertFalse( new HashSet<Long>( handler.results ).contains( Thread.currentThread().getId() ) );
+    }
+
+    public void testForkedSubtasksWithFullCapacity() {
+
+        ResultAsListResultHandler<Long> handler = new ResultAsListResultHandler<Long>();
+
+        ForkJoinTaskQueue<Long> queue = new ForkJoinTaskQueue<Long>( 2, 2, handler );
+
+        for( int i=0; i<20; i++ ) {
+            queue.submit( new Sum( 0, 100000 ) );
+        }
+
+        queue.await();
+
+        assertEquals( 20, handler.results.size() );
+        for( Long sum : handler.results ) {
+            assertEquals( 100000L * 99999L / 2, sum.longValue() );
+        }
+    }
+
+    public void testCancel() {
+
+        ResultAsListResultHandler<Long> handler = new ResultAsListResultHandler<Long>();
+
+        ForkJoinTaskQueue<Long> queue = new ForkJoinTaskQueue<Long>( 100, 1, handler );
+
+        for( int i=0; i<50; i++ ) {
+            queue.submit( new Callable<Long>() {
+
+                @Override
+                public Long call() throws Exception {
+                    Thread.sleep( 20 );
+                    return 1L;
+                }
+            } );
+        }
+
+        queue.cancel();
+        queue.await();
+
+        assertTrue( handler.results.size() + handler.exceptions.size() < 50 );
+    }
+
+    public void testCancelWithQueuedRanges() throws Exception {
+
+        ResultAsListResultHandler<Long> handler = new ResultAsListResultHandler<Long>();
+
+        final ForkJoinTaskQueue<Long> queue = new ForkJoinTaskQueue<Long>( 10, 1, handler );
+
+        final CountDownLatch started = new CountDownLatch( 1 );
+
+        // occupies the only worker thread, so the ranges stay in the pool
+        queue.submit( new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                started.countDown();
+                Thread.sleep( 10000 );
+                return 1L;
+            }
+        } );
+
+        assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch mapping = new CountDownLatch( 1 );
+
+        Thread mapper = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.parallelMap( new Integer[1000], new Integer[1000], new Function<Integer, Integer>() {
+                        @Override
+                        public Integer apply( Integer i ) throws Exception {
+                            mapping.countDown();
+                            Thread.sleep( 1 );
+                            return 1;
+                        }
+                    } );
+                } catch( Throwable t ) {
+                    failure.set( t );
+                }
+            }
+        } );
+        mapper.start();
+
+        assertTrue( mapping.await( 5, TimeUnit.SECONDS ) );
+
+        queue.cancel();
+
+        mapper.join( 5000 );
+        assertFalse( mapper.isAlive() );
+
+        assertTrue( String.valueOf( failure.get() ), failure.get().getCause() instanceof CancellationException );
+
+        // only the running task keeps its permit
+        assertEquals( 9, queue.getSemaphore().availablePermits() );
+    }
+}
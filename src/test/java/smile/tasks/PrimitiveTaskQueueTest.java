@@ -0,0 +1,104 @@
+package smile.tasks;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Callable;
+
+/**
+ * @author Andre Kullmann
+ */
+public class PrimitiveTaskQueueTest extends TestCase {
+
+    private static class SummingResultHandler implements LongResultHandler, DoubleResultHandler {
+
+        public long longSum = 0;
+
+        public double doubleSum = 0;
+
+        public int resultCount = 0;
+
+        public int exceptionCount = 0;
+
+        @Override
+        public void onResult( long result ) {
+            longSum += result;
+            resultCount++;
+        }
+
+        @Override
+        public void onResult( double result ) {
+            doubleSum += result;
+            resultCount++;
+        }
+
+        @Override
+        public void onException( Exception e ) {
+            exceptionCount++;
+        }
+    }
+
+    private LongCallable squareCallable( final long i ) {
+
+        return new LongCallable() {
+
+            @Override
+            public long callLong() throws Exception {
+                if( i % 100 == 0 ) {
+                    throw new Exception( "task " + i + " failed" );
+                }
+                return i * i;
+            }
+
+        };
+    }
+
+    public void testLong() {
+
+        SummingResultHandler handler = new SummingResultHandler();
+
+        LongTaskQueue queue = new LongTaskQueue( 16, 4, handler );
+
+        long sum = 0;
+        for( long i=1; i<=1000; i++ ) {
+            queue.submit( squareCallable( i ) );
+            if( i % 100 != 0 ) {
+                sum += i * i;
+            }
+        }
+
+        // a boxed callable is unboxed for the handler
+        queue.submit( new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return 7L;
+            }
+        });
+
+        queue.await();
+
+        assertEquals( 991, handler.resultCount );
+        assertEquals( 10, handler.exceptionCount );
+        assertEquals( sum + 7, handler.longSum );
+    }
+
+    public void testDouble() {
+
+        SummingResultHandler handler = new SummingResultHandler();
+
+        DoubleTaskQueue queue = new DoubleTaskQueue( 16, 4, handler );
+
+        for( int i=0; i<1000; i++ ) {
+            queue.submit( new DoubleCallable() {
+                @Override
+                public double callDouble() throws Exception {
+                    return 0.5;
+                }
+            });
+        }
+
+        queue.await();
+
+        assertEquals( 1000, handler.resultCount );
+        assertEquals( 500.0, handler.doubleSum, 0.0 );
+    }
+}
@@ -0,0 +1,105 @@
+package smile.tasks;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Andre Kullmann
+ */
+public class ProcessTaskQueueTest extends TestCase {
+
+    /**
+     * Returns the name of the jvm which executes it, a negative n halts the jvm.
+     */
+    private static class JvmNameCallable implements Callable<String>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+
+        private JvmNameCallable( int n ) {
+            this.n = n;
+        }
+
+        @Override
+        public String call() throws Exception {
+            if( n < 0 ) {
+                Thread.sleep( 100 );
+                Runtime.getRuntime().halt( 3 );
+            }
+            return ManagementFactory.getRuntimeMXBean().getName();
+        }
+    }
+
+    private static class ResultCollector implements ResultHandler<String> {
+
+        private final List<String> results = new ArrayList<String>();
+
+        private final List<Exception> exceptions = new ArrayList<Exception>();
+
+        @Override
+        public void onResult( String result ) {
+            results.add( result );
+        }
+
+        @Override
+        public void onException( Exception e ) {
+            exceptions.add( e );
+        }
+    }
+
+    public void testProcesses() throws Exception {
+
+        ResultCollector handler = new ResultCollector();
+
+        ProcessTaskQueue<String> queue = new ProcessTaskQueue<String>( "process", 16, 2, 2, Collections.<String>emptyList(), handler );
+
+        try {
+            for( int i=0; i<1000; i++ ) {
+                queue.submit( new JvmNameCallable( i ) );
+            }
+
+            queue.await();
+
+            assertEquals( 1000, handler.results.size() );
+            assertEquals( 0, handler.exceptions.size() );
+
+            Set<String> jvms = new HashSet<String>( handler.results );
+            assertEquals( 2, jvms.size() );
+            assertFalse( jvms.contains( ManagementFactory.getRuntimeMXBean().getName() ) );
+
+            // a crashed child fails its tasks in flight and is restarted
+            handler.results.clear();
+            queue.submit( new JvmNameCallable( -1 ) );
+            queue.await();
+
+            assertEquals( 1, handler.exceptions.size() );
+            assertTrue( handler.exceptions.get( 0 ) instanceof ExecutionException );
+            assertTrue( handler.exceptions.get( 0 ).getCause() instanceof IOException );
+
+            for( int i=0; i<100; i++ ) {
+                queue.submit( new JvmNameCallable( i ) );
+            }
+
+            queue.await();
+
+            assertEquals( 100, handler.results.size() );
+            assertEquals( 1, queue.getWorkerPool().getRestarts() );
+        } finally {
+            queue.cancel();
+        }
+
+        assertTrue( queue.getWorkerPool().awaitTermination( 10, TimeUnit.SECONDS ) );
+    }
+}
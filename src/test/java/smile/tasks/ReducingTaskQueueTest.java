@@ -0,0 +1,134 @@
+package smile.tasks;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * @author Andre Kullmann
+ */
+public class ReducingTaskQueueTest extends TestCase {
+
+    private static class ResultAsListResultHandler<T> implements ResultHandler<T> {
+
+        public List<T> results = new ArrayList<T>();
+
+        public List<Exception> exceptions = new ArrayList<Exception>();
+
+        @Override
+        public void onResult( T result ) {
+            results.add( result );
+        }
+
+        @Override
+        public void onException( Exception e ) {
+            exceptions.add( e );
+        }
+    }
+
+    private static final Reducer<Long, long[]> SUM = new Reducer<Long, long[]>() {
+
+        @Override
+        public long[] create() {
+            return new long[1];
+        }
+
+        @Override
+        public long[] reduce( long[] accumulator, Long result ) {
+            accumulator[0] += result;
+            return accumulator;
+        }
+
+        @Override
+        public long[] merge( long[] left, long[] right ) {
+            left[0] += right[0];
+            return left;
+        }
+    };
+
+    private Callable<Long> valueCallable( final long i ) {
+
+        return new Callable<Long>() {
+
+            @Override
+            public Long call() throws Exception {
+                if( i % 100 == 0 ) {
+                    throw new Exception( "task " + i + " failed" );
+                }
+                return i;
+            }
+
+        };
+    }
+
+    public void testSum() {
+
+        ResultAsListResultHandler<long[]> handler = new ResultAsListResultHandler<long[]>();
+
+        ReducingTaskQueue<Long, long[]> queue = new ReducingTaskQueue<Long, long[]>( 16, 4, SUM, handler );
+
+        long sum = 0;
+        for( long i=1; i<=10000; i++ ) {
+            queue.submit( valueCallable( i ) );
+            if( i % 100 != 0 ) {
+                sum += i;
+            }
+        }
+
+        queue.await();
+
+        assertEquals( 1, handler.results.size() );
+        assertEquals( sum, handler.results.get( 0 )[0] );
+        assertEquals( 100, handler.exceptions.size() );
+
+        // the next round starts with empty accumulators
+        queue.open();
+        for( long i=1; i<=10; i++ ) {
+            queue.submit( valueCallable( i ) );
+        }
+        queue.await();
+
+        assertEquals( 2, handler.results.size() );
+        assertEquals( 55, handler.results.get( 1 )[0] );
+    }
+
+    public void testDedup() {
+
+        ResultAsListResultHandler<Set<Long>> handler = new ResultAsListResultHandler<Set<Long>>();
+
+        Reducer<Long, Set<Long>> distinct = new Reducer<Long, Set<Long>>() {
+
+            @Override
+            public Set<Long> create() {
+                return new HashSet<Long>();
+            }
+
+            @Override
+            public Set<Long> reduce( Set<Long> accumulator, Long result ) {
+                accumulator.add( result );
+                return accumulator;
+            }
+
+            @Override
+            public Set<Long> merge( Set<Long> left, Set<Long> right ) {
+                left.addAll( right );
+                return left;
+            }
+        };
+
+        ReducingTaskQueue<Long, Set<Long>> queue = new ReducingTaskQueue<Long, Set<Long>>( 16, 4, distinct, handler );
+
+        for( long i=1; i<=5000; i++ ) {
+            queue.submit( valueCallable( i % 99 + 1 ) );
+        }
+
+        queue.await();
+
+        assertEquals( 99, handler.results.get( 0 ).size() );
+        assertTrue( handler.exceptions.isEmpty() );
+    }
+}
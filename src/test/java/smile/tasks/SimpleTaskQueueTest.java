@@ -1,129 +1,926 @@
 package smile.tasks;
 
-import junit.framework.TestCase;
-
+import smile.tasks.journal.TaskJournal;
+import smile.tasks.metrics.ForwardingProbe;
+import smile.tasks.metrics.TaskQueueProbe;
+import smile.tasks.metrics.TaskQueueStats;
+import smile.threads.WaitStrategy;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.ObjectName;
 
 /**
  * @author Andre Kullmann
  */
-public class SimpleTaskQueueTest extends TestCase {
+public class SimpleTaskQueueTest extends AbstractTaskQueueTest {
+
+    @Override
+    protected <T> AbstractTaskQueue<T> newQueue(int capacity, int threads, ResultHandler<T> handler) {
+        return new SimpleTaskQueue<T>( capacity, threads, handler );
+    }
+
+    private Callable<Long> threadIdCallable() {
+
+        return new Callable<Long>() {
+
+            @Override
+            public Long call() throws Exception {
+                return Thread.currentThread().getId();
+            }
+
+        };
+    }
+
+    public void testS() {
+
+        ResultAsListResultHandler<Long> handler = new ResultAsListResultHandler<Long>();
+
+        SimpleTaskQueue<Long> queue = new SimpleTaskQueue<Long>( 100, 2, handler );
+
+        for( int i=0; i<100; i++ ) {
+            queue.submit( threadIdCallable() );
+        }
+
+        queue.await();
+
+        assertEquals( 100, handler.resultCount );
+        assertEquals( 0, handler.exceptionCount );
+
+        assertEquals( 2, new HashSet<Long>( handler.results ).size() );
+    }
+
+    public void testSubmitAllDistributed() {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        DistributedTaskQueue<String> queue = new DistributedTaskQueue<String>( 10, 2, handler );
+
+        List<Callable<String>> callables = new ArrayList<Callable<String>>();
+        for( int i=0; i<1000; i++ ) {
+            callables.add( stringResultCallable( "Test " + i ) );
+        }
+
+        assertEquals( 1000, queue.submitAll( callables ) );
+
+        queue.await();
+
+        assertEquals( 1000, handler.resultCount );
+        assertEquals( 0, handler.exceptionCount );
+    }
+
+    public void testDistributedWithoutWatcherThreads() {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        DistributedTaskQueue<String> queue = new DistributedTaskQueue<String>( "Distributed Test", 1000, 2, handler );
+
+        for( int i=0; i<1000; i++ ) {
+            queue.submit( new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    Thread.sleep(1);
+                    return "Test";
+                }
+            } );
+        }
+
+        for( Thread thread : Thread.getAllStackTraces().keySet() ) {
+            assertFalse( thread.getName(), thread.getName().startsWith( "Distributed Test Watcher" ) );
+        }
+
+        queue.await();
+
+        assertEquals( 1000, handler.resultCount );
+        assertEquals( 0, handler.exceptionCount );
+    }
+
+    public void testOrderedBatch() {
+
+        BatchAsListResultHandler<Integer> handler = new BatchAsListResultHandler<Integer>();
 
-    private Callable<String> stringResultCallable( final String name ) {
+        DistributedTaskQueue<Integer> queue = new DistributedTaskQueue<Integer>( 10, 4, handler );
+        queue.setOrdered( true );
 
-        return new Callable<String>() {
+        List<Integer> expected = new ArrayList<Integer>();
+        for( int i=0; i<100; i++ ) {
+            expected.add( i );
+            queue.submit( sleepingCallable( i, i % 5 == 0 ? 10 : 0 ) );
+        }
+
+        queue.await();
+
+        assertEquals( expected, handler.results );
+    }
+
+    public void testCancelWithQueuedLanes() throws InterruptedException {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        SimpleTaskQueue<String> queue = new SimpleTaskQueue<String>( 10, 1, handler );
+        queue.enableMetrics( 1 );
+
+        final CountDownLatch started = new CountDownLatch( 1 );
 
+        // occupies the only worker thread, so the lanes stay in the worker queue
+        queue.submit( new Callable<String>() {
             @Override
             public String call() throws Exception {
-                return name;
+                started.countDown();
+                Thread.sleep( 10000 );
+                return "blocking";
+            }
+        } );
+
+        assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+        for( int i=0; i<3; i++ ) {
+            queue.submit( "key a", stringResultCallable( "a " + i ) );
+            queue.submit( "key b", stringResultCallable( "b " + i ) );
+        }
+
+        assertEquals( 3, queue.getSemaphore().availablePermits() );
+
+        queue.cancel();
+
+        // the running task keeps its permit, the 6 keyed tasks give theirs back, the scheduled lanes don't count
+        assertEquals( 9, queue.getSemaphore().availablePermits() );
+        assertEquals( 6, queue.stats().getCancelled() );
+    }
+
+    public void testAdaptiveLimit() {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( 32, 32, handler );
+        queue.setAdaptiveLimit( new AdaptiveLimit() );
+
+        assertEquals( 32, queue.getLimit() );
+
+        for( int i=0; i<2000; i++ ) {
+            queue.submit( sleepingCallable( i, 1 ) );
+        }
+
+        // the tasks get 20 times slower, e.g. an overloaded database
+        for( int i=0; i<500; i++ ) {
+            queue.submit( sleepingCallable( i, 20 ) );
+        }
+
+        assertTrue( queue.getAdaptiveLimit().toString(), queue.getLimit() < 32 );
+        assertTrue( queue.getAdaptiveLimit().getThroughput() > 0 );
+
+        queue.await();
+
+        assertEquals( 2500, handler.resultCount );
+
+        queue.open();
+        queue.setAdaptiveLimit( null );
+        assertEquals( 32, queue.getLimit() );
+    }
+
+    public void testAdaptiveLimitShrinkWithSubmitAll() throws InterruptedException {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( 10, 10, handler );
+
+        final AtomicInteger limit = new AtomicInteger( 10 );
+        queue.setAdaptiveLimit( new AdaptiveLimit() {
+            @Override
+            int update(int currentLimit, int maxLimit, int inFlight) {
+                return limit.get();
+            }
+        } );
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        for( int i=0; i<10; i++ ) {
+            final int n = i;
+            queue.submit( new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    release.await();
+                    return n;
+                }
+            } );
+        }
+
+        // the limit shrinks while all 10 tasks are in flight, the semaphore owes 8 permits
+        limit.set( 2 );
+
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep( 100 );
+                } catch( InterruptedException e ) {
+                    // release anyway
+                }
+                release.countDown();
+            }
+        }.start();
+
+        List<Callable<Integer>> callables = new ArrayList<Callable<Integer>>();
+        for( int i=0; i<4; i++ ) {
+            callables.add( sleepingCallable( 10 + i, 0 ) );
+        }
+
+        assertEquals( 4, queue.submitAll( callables ) );
+
+        assertEquals( 2, queue.getLimit() );
+        assertTrue( queue.toString(), queue.getLength() >= 0 && queue.getLength() <= 2 );
+
+        queue.await();
+
+        assertEquals( 14, handler.resultCount );
+        assertEquals( 0, queue.getLength() );
+        assertEquals( 2, queue.getSemaphore().availablePermits() );
+    }
+
+    private Callable<Integer> countingCallable( final int i, final AtomicInteger calls, final boolean fail ) {
+
+        return new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                calls.incrementAndGet();
+                if( fail ) {
+                    throw new Exception( "task " + i + " failed" );
+                }
+                return i;
             }
 
         };
     }
 
-    private Callable<Long> threadIdCallable() {
+    public void testJournal() throws Exception {
+
+        File file = File.createTempFile( "smile-journal", ".log" );
+        file.delete();
+
+        try {
+            // first run, every tenth task fails
+            ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+            SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( 16, 4, handler );
+            AtomicInteger calls = new AtomicInteger();
+
+            TaskJournal journal = new TaskJournal( file );
+            queue.setJournal( journal );
+
+            for( int i=0; i<200; i++ ) {
+                assertNotNull( queue.submitOnce( i, countingCallable( i, calls, i % 10 == 0 ) ) );
+            }
+
+            queue.await();
+            journal.close();
+
+            assertEquals( 200, calls.get() );
+            assertEquals( 180, handler.resultCount );
+            assertEquals( 20, handler.exceptionCount );
+
+            // second run, only the failed tasks are executed again
+            handler = new ResultAsListResultHandler<Integer>();
+            queue   = new SimpleTaskQueue<Integer>( 16, 4, handler );
+            calls   = new AtomicInteger();
+
+            journal = new TaskJournal( file );
+            queue.setJournal( journal );
+
+            int skipped = 0;
+            for( int i=0; i<200; i++ ) {
+                if( queue.submitOnce( i, countingCallable( i, calls, false ) ) == null ) {
+                    skipped++;
+                }
+            }
+
+            queue.await();
+
+            assertEquals( 180, skipped );
+            assertEquals( 20, calls.get() );
+            assertEquals( 20, handler.resultCount );
+            assertEquals( 200, journal.getCompletedCount() );
+
+            journal.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    private Callable<Long> weightedCallable( final long weight, final AtomicLong inFlight, final AtomicLong maxInFlight ) {
 
         return new Callable<Long>() {
 
             @Override
             public Long call() throws Exception {
-                return Thread.currentThread().getId();
+                long current = inFlight.addAndGet( weight );
+                for( long max = maxInFlight.get(); current > max && !maxInFlight.compareAndSet( max, current ); max = maxInFlight.get() ) {
+                    // retry
+                }
+                Thread.sleep( 1 );
+                inFlight.addAndGet( -weight );
+                return weight;
             }
 
         };
     }
 
-    private class ResultAsListResultHandler<T> implements ResultHandler<T> {
+    public void testMemoryBudget() {
 
-        public int resultCount = 0;
+        ResultAsListResultHandler<Long> handler = new ResultAsListResultHandler<Long>();
 
-        public int exceptionCount = 0;
+        SimpleTaskQueue<Long> queue = new SimpleTaskQueue<Long>( 64, 8, handler );
+        queue.setMemoryBudget( 1000 );
 
-        public List<T> results = new ArrayList<T>();
+        AtomicLong inFlight    = new AtomicLong();
+        AtomicLong maxInFlight = new AtomicLong();
 
-        public List<Exception> exceptions = new ArrayList<Exception>();
+        for( int i=0; i<400; i++ ) {
+            long weight = i % 50 == 0 ? 5000 : i % 10 == 0 ? 600 : 1;
+            // a weight greater than the budget runs alone
+            queue.submit( weightedCallable( Math.min( weight, 1000 ), inFlight, maxInFlight ), weight );
+        }
 
-        @Override
-        public void onResult(T result) {
-            resultCount += 1;
-            results.add( result );
+        queue.await();
+
+        assertEquals( 400, handler.resultCount );
+        assertTrue( String.valueOf( maxInFlight.get() ), maxInFlight.get() <= 1000 );
+        assertEquals( 1000, queue.getAvailableMemoryBudget() );
+
+        // small tasks are only limited by the capacity
+        queue.open();
+        maxInFlight.set( 0 );
+        for( int i=0; i<400; i++ ) {
+            queue.submit( weightedCallable( 1, inFlight, maxInFlight ), 1 );
         }
+        queue.await();
+        assertTrue( String.valueOf( maxInFlight.get() ), maxInFlight.get() > 1 );
+    }
 
-        @Override
-        public void onException(Exception e) {
-            e.printStackTrace();
-            exceptionCount += 1;
-            exceptions.add( e );
+    public void testHeapPressureThrottleResumesWithoutCollection() {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( 20, 4, handler );
+
+        final double[] current = new double[] { 0.9 };
+
+        // no collection comes, only the current usage changes
+        HeapPressureThrottle throttle = new HeapPressureThrottle( 0.85, 0.70, 200, TimeUnit.MILLISECONDS, false ) {
+            @Override
+            double currentOccupancy() {
+                return current[0];
+            }
+        };
+
+        try {
+            queue.setHeapPressureThrottle( throttle );
+
+            throttle.update( 0.9 );
+            assertTrue( throttle.isThrottled() );
+
+            // above the low water mark the throttle stays on after the pause
+            queue.submit( sleepingCallable( 1, 0 ) );
+            assertTrue( throttle.isThrottled() );
+
+            current[0] = 0.5;
+
+            long start = System.currentTimeMillis();
+            queue.submit( sleepingCallable( 2, 0 ) );
+            assertTrue( System.currentTimeMillis() - start >= 150 );
+            assertFalse( throttle.isThrottled() );
+
+            // no more pauses
+            start = System.currentTimeMillis();
+            for( int i=0; i<10; i++ ) {
+                queue.submit( sleepingCallable( i, 0 ) );
+            }
+            assertTrue( System.currentTimeMillis() - start < 150 );
+
+            queue.await();
+
+            assertEquals( 12, handler.resultCount );
+            assertEquals( 1, throttle.getThrottleCount() );
+        } finally {
+            throttle.close();
         }
     }
 
-    public void testT() {
+    public void testHeapPressureThrottleRestoresThresholds() {
 
-        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+        List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        List<Long> thresholds = new ArrayList<Long>();
+        for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+            if( pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() ) {
+                pools.add( pool );
+                thresholds.add( pool.getCollectionUsageThreshold() );
+            }
+        }
 
-        SimpleTaskQueue<String> queue = new SimpleTaskQueue<String>( 100, 1, handler );
+        HeapPressureThrottle throttle = new HeapPressureThrottle( 0.85, 0.70, 100, TimeUnit.MILLISECONDS );
+        throttle.close();
 
-        for( int i=0; i<100; i++ ) {
-            queue.submit( stringResultCallable( "Test " + i ) );
+        for( int i=0; i<pools.size(); i++ ) {
+            assertEquals( pools.get( i ).getName(), thresholds.get( i ).longValue(), pools.get( i ).getCollectionUsageThreshold() );
+        }
+    }
+
+    public void testHeapPressureThrottle() throws InterruptedException {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( 20, 4, handler );
+
+        // no gc notifications, a real collection would switch the throttle off before the relief thread does
+        final HeapPressureThrottle throttle = new HeapPressureThrottle( 0.85, 0.70, 5, TimeUnit.SECONDS, false );
+        final List<String> events = new ArrayList<String>();
+
+        throttle.addListener( new HeapPressureThrottle.Listener() {
+            @Override
+            public void onThrottle( double occupancy ) {
+                events.add( "throttle" );
+            }
+
+            @Override
+            public void onResume( double occupancy, long throttledMillis ) {
+                events.add( "resume" );
+            }
+        });
+
+        try {
+            queue.setHeapPressureThrottle( throttle );
+
+            for( int i=0; i<10; i++ ) {
+                queue.submit( sleepingCallable( i, 20 ) );
+            }
+
+            throttle.update( 0.9 );
+            assertTrue( throttle.isThrottled() );
+
+            Thread relief = new Thread( new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep( 300 );
+                    } catch( InterruptedException e ) {
+                        return;
+                    }
+                    // above the low water mark the throttle stays on
+                    throttle.update( 0.75 );
+                    throttle.update( 0.5 );
+                }
+            });
+
+            long start = System.currentTimeMillis();
+            relief.start();
+
+            // the results in flight are handled before the next task is admitted
+            queue.submit( sleepingCallable( 10, 0 ) );
+
+            assertTrue( System.currentTimeMillis() - start >= 250 );
+            assertEquals( 10, handler.resultCount );
+            assertFalse( throttle.isThrottled() );
+
+            queue.await();
+            relief.join();
+
+            assertEquals( 11, handler.resultCount );
+            assertEquals( Arrays.asList( "throttle", "resume" ), events );
+            assertEquals( 1, throttle.getThrottleCount() );
+        } finally {
+            throttle.close();
+        }
+
+        // the heap doesn't recover, admission is slowed down but not stopped
+        HeapPressureThrottle stuck = new HeapPressureThrottle( 0.85, 0.70, 100, TimeUnit.MILLISECONDS, false ) {
+            @Override
+            double currentOccupancy() {
+                return 0.99;
+            }
+        };
+        try {
+            queue.setHeapPressureThrottle( stuck );
+            stuck.update( 0.99 );
+            queue.open();
+
+            long start = System.currentTimeMillis();
+            queue.submit( sleepingCallable( 11, 0 ) );
+            queue.submit( sleepingCallable( 12, 0 ) );
+            queue.await();
+
+            assertTrue( System.currentTimeMillis() - start >= 180 );
+            assertEquals( 13, handler.resultCount );
+            assertTrue( stuck.isThrottled() );
+        } finally {
+            stuck.close();
+        }
+    }
+
+    public void testMetrics() throws Exception {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( "metrics", 8, 4, handler );
+        queue.enableMetrics( 1 );
+
+        AtomicInteger calls = new AtomicInteger();
+
+        for( int i=0; i<200; i++ ) {
+            queue.submit( i % 20 == 0 ? countingCallable( i, calls, true ) : sleepingCallable( i, 1 ) );
         }
 
         queue.await();
 
-        assertEquals( 100, handler.resultCount );
-        assertEquals( 0, handler.exceptionCount );
+        TaskQueueStats stats = queue.stats();
+
+        assertEquals( 190, stats.getCompleted() );
+        assertEquals( 10, stats.getFailed() );
+        assertEquals( 0, stats.getLength() );
+        assertEquals( 200, stats.getExecution().getCount() );
+        assertEquals( 200, stats.getQueueWait().getCount() );
+        assertEquals( 200, stats.getResultHandler().getCount() );
+        assertTrue( stats.toString(), stats.getExecution().getP50() >= 500000 );
+        assertTrue( stats.toString(), stats.getSubmitBlocked().getCount() > 0 );
+        assertTrue( stats.getWorkerUtilization() > 0 );
+        assertTrue( stats.getThroughput() > 0 );
+
+        ObjectName name = queue.getObjectName();
+        assertEquals( "smile.tasks:type=TaskQueue,name=\"metrics\"", name.toString() );
+        assertEquals( 190L, ManagementFactory.getPlatformMBeanServer().getAttribute( name, "Completed" ) );
+
+        queue.cancel();
+
+        assertFalse( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
     }
 
-    public void testS() {
+    public void testRecycling() {
 
-        ResultAsListResultHandler<Long> handler = new ResultAsListResultHandler<Long>();
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
 
-        SimpleTaskQueue<Long> queue = new SimpleTaskQueue<Long>( 100, 2, handler );
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( "recycling", 16, 4, WaitStrategy.PARK, true, handler );
+        assertTrue( queue.isRecycling() );
 
-        for( int i=0; i<100; i++ ) {
-            queue.submit( threadIdCallable() );
+        AtomicInteger calls = new AtomicInteger();
+        Set<Future<Integer>> futures = Collections.newSetFromMap( new IdentityHashMap<Future<Integer>, Boolean>() );
+
+        long sum = 0;
+        for( int i=0; i<1000; i++ ) {
+            futures.add( queue.submit( countingCallable( i, calls, i % 10 == 0 ) ) );
+            if( i % 10 != 0 ) {
+                sum += i;
+            }
         }
 
         queue.await();
 
-        assertEquals( 100, handler.resultCount );
-        assertEquals( 0, handler.exceptionCount );
+        assertEquals( 1000, calls.get() );
+        assertEquals( 900, handler.resultCount );
+        assertEquals( 100, handler.exceptionCount );
 
-        assertEquals( 2, new HashSet<Long>( handler.results ).size() );
+        long handled = 0;
+        for( Integer result : handler.results ) {
+            handled += result;
+        }
+        assertEquals( sum, handled );
+
+        // at most capacity futures are in flight, all others are reused
+        assertTrue( String.valueOf( futures.size() ), futures.size() <= 16 );
+
+        // a future with a deadline is not reused
+        queue.open();
+        queue.submit( sleepingCallable( 1, 10000 ), 100, TimeUnit.MILLISECONDS );
+        queue.submit( sleepingCallable( 2, 0 ) );
+        queue.await();
+
+        assertEquals( 901, handler.resultCount );
+        assertEquals( 101, handler.exceptionCount );
+        assertTrue( handler.exceptions.get( 100 ) instanceof TimeoutException );
     }
 
-    public void testW() {
+    public void testParallelMap() {
 
         ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
 
-        SimpleTaskQueue<String> queue = new SimpleTaskQueue<String>( 2, 2, handler );
+        SimpleTaskQueue<String> queue = new SimpleTaskQueue<String>( 10, 4, handler );
 
-        long start = System.currentTimeMillis();
+        final Set<Thread> threads = Collections.newSetFromMap( new ConcurrentHashMap<Thread, Boolean>() );
 
-        for( int i=0; i<10; i++ ) {
-            queue.submit( new Callable<String>() {
+        List<Integer> input = new ArrayList<Integer>();
+        for( int i=0; i<100000; i++ ) {
+            input.add( i );
+        }
+
+        List<String> output = queue.parallelMap( input, new Function<Integer, String>() {
+            @Override
+            public String apply( Integer i ) throws Exception {
+                threads.add( Thread.currentThread() );
+                return "Test " + i;
+            }
+        } );
+
+        assertEquals( 100000, output.size() );
+        for( int i=0; i<100000; i++ ) {
+            assertEquals( "Test " + i, output.get( i ) );
+        }
+        assertTrue( threads.size() > 1 );
+
+        // no result is passed to the handler
+        assertEquals( 0, handler.resultCount );
+
+        Integer[] array = queue.parallelMap( new String[] { "1", "22", "333" }, new Integer[3], new Function<String, Integer>() {
+            @Override
+            public Integer apply( String s ) throws Exception {
+                return s.length();
+            }
+        } );
+        assertEquals( Arrays.asList( 1, 2, 3 ), Arrays.asList( array ) );
+
+        assertTrue( queue.parallelMap( new ArrayList<Integer>(), new Function<Integer, Integer>() {
+            @Override
+            public Integer apply( Integer i ) throws Exception {
+                return i;
+            }
+        } ).isEmpty() );
 
+        try {
+            queue.parallelMap( input, new Function<Integer, Integer>() {
                 @Override
-                public String call() throws Exception {
-                    Thread.sleep(500);
-                    return null;
+                public Integer apply( Integer i ) throws Exception {
+                    if( i == 4711 ) {
+                        throw new Exception( "element " + i + " failed" );
+                    }
+                    return i;
                 }
             } );
+            fail( "exception expected" );
+        } catch( RuntimeException e ) {
+            assertEquals( "element 4711 failed", e.getCause().getMessage() );
         }
 
-        long end = System.currentTimeMillis();
+        // the queue is still usable
+        queue.submit( stringResultCallable( "Test" ) );
+        queue.await();
+
+        assertEquals( 1, handler.resultCount );
+    }
+
+    public void testParallelMapBesideSubmitsOnBoundedPool() throws Exception {
 
-        long time = end - start;
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
 
-        assertTrue( time + "", time >= 2000 );
+        // the recycling queue has a bounded worker queue
+        final SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( "recycling", 4, 2, WaitStrategy.PARK, true, handler );
 
+        final List<Integer> input = new ArrayList<Integer>();
+        for( int i=0; i<20000; i++ ) {
+            input.add( i );
+        }
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicInteger maps = new AtomicInteger();
+
+        Thread mapper = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for( int round=0; round<20; round++ ) {
+                        List<Integer> output = queue.parallelMap( input, new Function<Integer, Integer>() {
+                            @Override
+                            public Integer apply( Integer i ) throws Exception {
+                                return i * 2;
+                            }
+                        } );
+                        for( int i=0; i<input.size(); i++ ) {
+                            assertEquals( i * 2, output.get( i ).intValue() );
+                        }
+                        maps.incrementAndGet();
+                    }
+                } catch( Throwable t ) {
+                    failure.set( t );
+                }
+            }
+        } );
+        mapper.start();
+
+        for( int i=0; i<5000; i++ ) {
+            queue.submit( sleepingCallable( i, 0 ) );
+        }
         queue.await();
 
+        mapper.join();
+
+        assertNull( String.valueOf( failure.get() ), failure.get() );
+        assertEquals( 20, maps.get() );
+        assertEquals( 5000, handler.resultCount );
         assertEquals( 0, handler.exceptionCount );
-        assertEquals( 10, handler.resultCount );
+        assertEquals( 4, queue.getSemaphore().availablePermits() );
+    }
+
+    public void testCancelWithQueuedRanges() throws Exception {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        final SimpleTaskQueue<String> queue = new SimpleTaskQueue<String>( 10, 1, handler );
+
+        final CountDownLatch started = new CountDownLatch( 1 );
+
+        // occupies the only worker thread, so the ranges stay in the worker queue
+        queue.submit( new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                Thread.sleep( 10000 );
+                return "blocking";
+            }
+        } );
+
+        assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch mapping = new CountDownLatch( 1 );
+
+        Thread mapper = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.parallelMap( new Integer[1000], new Integer[1000], new Function<Integer, Integer>() {
+                        @Override
+                        public Integer apply( Integer i ) throws Exception {
+                            mapping.countDown();
+                            Thread.sleep( 1 );
+                            return 1;
+                        }
+                    } );
+                } catch( Throwable t ) {
+                    failure.set( t );
+                }
+            }
+        } );
+        mapper.start();
+
+        assertTrue( mapping.await( 5, TimeUnit.SECONDS ) );
+
+        queue.cancel();
+
+        mapper.join( 5000 );
+        assertFalse( mapper.isAlive() );
+
+        assertTrue( String.valueOf( failure.get() ), failure.get().getCause() instanceof CancellationException );
+
+        // only the running task keeps its permit
+        assertEquals( 9, queue.getSemaphore().availablePermits() );
+    }
+
+    public void testRejectedSubmitReleasesPermit() throws Exception {
+
+        ResultAsListResultHandler<String> handler = new ResultAsListResultHandler<String>();
+
+        // without a queue the pool rejects all tasks while its thread is busy
+        ThreadPoolExecutor pool = new ThreadPoolExecutor( 1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>() );
+
+        DistributedTaskQueue<String> queue = new DistributedTaskQueue<String>( "rejecting", 4, 1, pool, handler );
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        pool.execute( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } );
+
+        for( int i=0; i<10; i++ ) {
+            try {
+                queue.submit( stringResultCallable( "Test" ) );
+                fail( "rejection expected" );
+            } catch( RejectedExecutionException e ) {
+                // expected
+            }
+            try {
+                queue.submit( "key", stringResultCallable( "Test" ) );
+                fail( "rejection expected" );
+            } catch( RejectedExecutionException e ) {
+                // expected
+            }
+        }
+
+        assertEquals( 4, queue.getSemaphore().availablePermits() );
+
+        release.countDown();
+        pool.shutdown();
+    }
+
+    /**
+     * Forwards all events, like the java flight recorder probe of the java21 source set.
+     */
+    private static class CountingForwardingProbe implements ForwardingProbe {
+
+        private final TaskQueueProbe next;
+
+        private int completed = 0;
+
+        private CountingForwardingProbe( TaskQueueProbe next ) {
+            this.next = next;
+        }
+
+        @Override
+        public TaskQueueProbe getNext() {
+            return next;
+        }
+
+        @Override
+        public ForwardingProbe withNext( TaskQueueProbe next ) {
+            return new CountingForwardingProbe( next );
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return next != null && next.isEnabled();
+        }
+
+        @Override
+        public void onCompleted( long queueWaitNanos, long executionNanos ) {
+            completed++;
+            if( next != null ) next.onCompleted( queueWaitNanos, executionNanos );
+        }
+
+        @Override
+        public void onFailed( long queueWaitNanos, long executionNanos ) {
+            if( next != null ) next.onFailed( queueWaitNanos, executionNanos );
+        }
+
+        @Override
+        public void onCancelled( int count ) {
+            if( next != null ) next.onCancelled( count );
+        }
+
+        @Override
+        public void onRejected() {
+            if( next != null ) next.onRejected();
+        }
+
+        @Override
+        public void onResultsHandled( int count, long nanos ) {
+            if( next != null ) next.onResultsHandled( count, nanos );
+        }
+
+        @Override
+        public void onSubmitBlocked( long nanos ) {
+            if( next != null ) next.onSubmitBlocked( nanos );
+        }
+    }
+
+    public void testDisableMetricsBehindForwardingProbe() {
+
+        ResultAsListResultHandler<Integer> handler = new ResultAsListResultHandler<Integer>();
+
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( "forwarding", 8, 2, handler );
+        queue.enableMetrics();
+
+        assertEquals( 8, queue.getSampleRate() );
+
+        queue.setProbe( new CountingForwardingProbe( queue.getProbe() ), queue.getSampleRate() );
+
+        queue.disableMetrics();
+
+        // the forwarding probe stays, without the metrics behind it
+        assertTrue( queue.getProbe() instanceof CountingForwardingProbe );
+        assertNull( ( (CountingForwardingProbe) queue.getProbe() ).getNext() );
+        assertNull( queue.getObjectName() );
+        assertEquals( 8, queue.getSampleRate() );
+
+        for( int i=0; i<10; i++ ) {
+            queue.submit( sleepingCallable( i, 0 ) );
+        }
+        queue.await();
 
+        assertEquals( 10, ( (CountingForwardingProbe) queue.getProbe() ).completed );
     }
 
 }
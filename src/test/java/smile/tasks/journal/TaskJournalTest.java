@@ -0,0 +1,96 @@
+package smile.tasks.journal;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * @author Andre Kullmann
+ */
+public class TaskJournalTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile( "smile-journal", ".log" );
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testRecover() throws Exception {
+
+        TaskJournal journal = new TaskJournal( file );
+
+        for( long id=0; id<1000; id++ ) {
+            journal.submitted( id );
+            if( id % 3 == 0 ) {
+                journal.failed( id );
+            } else {
+                journal.completed( id );
+            }
+        }
+        journal.completed( Long.MAX_VALUE );
+        journal.completed( -7 );
+
+        assertEquals( 668, journal.getCompletedCount() );
+
+        journal.close();
+
+        journal = new TaskJournal( file );
+
+        assertEquals( 668, journal.getCompletedCount() );
+
+        for( long id=0; id<1000; id++ ) {
+            assertEquals( id % 3 != 0, journal.isCompleted( id ) );
+        }
+        assertTrue( journal.isCompleted( Long.MAX_VALUE ) );
+        assertTrue( journal.isCompleted( -7 ) );
+
+        // appends after the recovered records
+        journal.completed( 3 );
+        journal.close();
+
+        journal = new TaskJournal( file );
+        assertEquals( 669, journal.getCompletedCount() );
+        assertTrue( journal.isCompleted( 3 ) );
+        journal.close();
+    }
+
+    public void testTornRecord() throws Exception {
+
+        TaskJournal journal = new TaskJournal( file );
+        journal.completed( 1 );
+        journal.completed( 2 );
+        journal.completed( 3 );
+        journal.close();
+
+        // damage the checksum of the second record
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try {
+            raf.seek( 16 + 12 );
+            raf.writeInt( 42 );
+        } finally {
+            raf.close();
+        }
+
+        journal = new TaskJournal( file );
+        assertTrue( journal.isCompleted( 1 ) );
+        assertFalse( journal.isCompleted( 2 ) );
+        assertFalse( journal.isCompleted( 3 ) );
+
+        journal.completed( 4 );
+        journal.close();
+
+        journal = new TaskJournal( file );
+        assertEquals( 2, journal.getCompletedCount() );
+        assertTrue( journal.isCompleted( 4 ) );
+        assertFalse( journal.isCompleted( 3 ) );
+        journal.close();
+    }
+}
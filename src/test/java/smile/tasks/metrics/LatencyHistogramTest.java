@@ -0,0 +1,41 @@
+package smile.tasks.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Andre Kullmann
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    public void testBuckets() {
+
+        for( long value = 0; value < 100000; value++ ) {
+            int index = LatencyHistogram.index( value );
+            assertTrue( value + " <= " + LatencyHistogram.upperBound( index ), value <= LatencyHistogram.upperBound( index ) );
+            assertTrue( index == 0 || value > LatencyHistogram.upperBound( index - 1 ) );
+        }
+
+        int last = LatencyHistogram.index( Long.MAX_VALUE );
+        assertEquals( Long.MAX_VALUE, LatencyHistogram.upperBound( last ) );
+    }
+
+    public void testPercentiles() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for( int i=1; i<=1000; i++ ) {
+            histogram.record( i * 1000L );
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals( 1000, snapshot.getCount() );
+        assertEquals( 500500, snapshot.getMean() );
+        assertEquals( 1000000, snapshot.getMax() );
+
+        // a bucket is at most 12.5% wide
+        assertTrue( snapshot.getP50() >= 500000 && snapshot.getP50() <= 562500 );
+        assertTrue( snapshot.getP99() >= 990000 && snapshot.getP99() <= 1000000 );
+        assertEquals( 0, new LatencyHistogram().getPercentile( 0.99 ) );
+    }
+}
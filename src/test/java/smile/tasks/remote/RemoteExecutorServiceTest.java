@@ -0,0 +1,292 @@
+package smile.tasks.remote;
+
+import junit.framework.TestCase;
+import smile.tasks.DistributedTaskQueue;
+import smile.tasks.ResultHandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts two {@link smile.tasks.remote.TaskWorkerNode} jvms on loopback.
+ *
+ * @author Andre Kullmann
+ */
+public class RemoteExecutorServiceTest extends TestCase {
+
+    private final List<Process> processes = new ArrayList<Process>();
+
+    private final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+
+    /**
+     * System property of the worker jvm, see {@link JvmNameCallable}.
+     */
+    private static final String DELAY = "smile.test.delay";
+
+    private static final byte[] SECRET = "test secret".getBytes();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for( Process process : processes ) {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * @param delay milliseconds each {@link JvmNameCallable} sleeps on the node
+     */
+    private void startWorkerNode( long delay ) throws IOException {
+
+        String java = System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java";
+
+        ProcessBuilder builder = new ProcessBuilder( java, "-D" + DELAY + "=" + delay, "-cp", System.getProperty( "java.class.path" ), TaskWorkerNode.class.getName(), "0", "2" );
+        builder.redirectErrorStream( true );
+        builder.environment().put( TaskWorkerNode.SECRET_ENV, new String( SECRET ) );
+
+        Process process = builder.start();
+        processes.add( process );
+
+        BufferedReader reader = new BufferedReader( new InputStreamReader( process.getInputStream() ) );
+
+        for( String line = reader.readLine(); line != null; line = reader.readLine() ) {
+            if( line.startsWith( TaskWorkerNode.LISTENING ) ) {
+                addresses.add( new InetSocketAddress( "127.0.0.1", Integer.parseInt( line.substring( TaskWorkerNode.LISTENING.length() ).trim() ) ) );
+                return;
+            }
+        }
+
+        throw new IOException( "worker node not started" );
+    }
+
+    /**
+     * Returns the name of the jvm which executes it.
+     */
+    private static class JvmNameCallable implements Callable<String>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+
+        private JvmNameCallable( int n ) {
+            this.n = n;
+        }
+
+        @Override
+        public String call() throws Exception {
+            if( n < 0 ) {
+                throw new IllegalArgumentException( "negative " + n );
+            }
+            Thread.sleep( Long.getLong( DELAY, 0 ) );
+            return ManagementFactory.getRuntimeMXBean().getName() + " " + n;
+        }
+    }
+
+    private static class ResultCollector implements ResultHandler<String> {
+
+        private final List<String> results = new ArrayList<String>();
+
+        private final List<Exception> exceptions = new ArrayList<Exception>();
+
+        @Override
+        public void onResult( String result ) {
+            results.add( result );
+        }
+
+        @Override
+        public void onException( Exception e ) {
+            exceptions.add( e );
+        }
+    }
+
+    public void testRemoteExecution() throws Exception {
+
+        startWorkerNode( 0 );
+        startWorkerNode( 0 );
+
+        ResultCollector handler = new ResultCollector();
+
+        RemoteExecutorService nodes = new RemoteExecutorService( SECRET, addresses );
+
+        DistributedTaskQueue<String> queue = new DistributedTaskQueue<String>( "remote", 64, 4, nodes, handler );
+
+        for( int i=0; i<1000; i++ ) {
+            queue.submit( new JvmNameCallable( i ) );
+        }
+        queue.submit( new JvmNameCallable( -1 ) );
+        queue.submit( new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "not serializable";
+            }
+        });
+
+        queue.await();
+
+        assertEquals( 1000, handler.results.size() );
+
+        Set<String> jvms = new HashSet<String>();
+        Set<String> numbers = new HashSet<String>();
+        for( String result : handler.results ) {
+            jvms.add( result.substring( 0, result.indexOf( ' ' ) ) );
+            numbers.add( result.substring( result.indexOf( ' ' ) + 1 ) );
+        }
+        assertEquals( 2, jvms.size() );
+        assertFalse( jvms.contains( ManagementFactory.getRuntimeMXBean().getName() ) );
+        assertEquals( 1000, numbers.size() );
+
+        assertEquals( 2, handler.exceptions.size() );
+        for( Exception e : handler.exceptions ) {
+            assertTrue( e.toString(), e instanceof ExecutionException );
+            Throwable cause = e.getCause();
+            assertTrue( cause.toString(), cause instanceof IllegalArgumentException || cause instanceof NotSerializableException );
+        }
+
+        nodes.shutdown();
+        assertTrue( nodes.awaitTermination( 5, TimeUnit.SECONDS ) );
+    }
+
+    public void testLostNode() throws Exception {
+
+        startWorkerNode( 0 );
+        startWorkerNode( 0 );
+
+        ResultCollector handler = new ResultCollector();
+
+        RemoteExecutorService nodes = new RemoteExecutorService( SECRET, addresses );
+
+        DistributedTaskQueue<String> queue = new DistributedTaskQueue<String>( "remote", 64, 4, nodes, handler );
+
+        processes.get( 0 ).destroy();
+        processes.get( 0 ).waitFor();
+
+        for( int i=0; i<200; i++ ) {
+            queue.submit( new JvmNameCallable( i ) );
+        }
+
+        queue.await();
+
+        assertEquals( 200, handler.results.size() + handler.exceptions.size() );
+        assertTrue( handler.results.size() > 0 );
+        for( Exception e : handler.exceptions ) {
+            assertTrue( e.getCause().toString(), e.getCause() instanceof IOException );
+        }
+        assertEquals( 1, nodes.getAddresses().size() );
+
+        nodes.shutdownNow();
+    }
+
+    public void testSlowNodeGetsLessWork() throws Exception {
+
+        startWorkerNode( 20 );
+        startWorkerNode( 1 );
+
+        ResultCollector handler = new ResultCollector();
+
+        RemoteExecutorService nodes = new RemoteExecutorService( SECRET, addresses );
+
+        DistributedTaskQueue<String> queue = new DistributedTaskQueue<String>( "remote", 32, 4, nodes, handler );
+
+        for( int i=0; i<600; i++ ) {
+            queue.submit( new JvmNameCallable( i ) );
+        }
+
+        queue.await();
+
+        assertEquals( 600, handler.results.size() );
+
+        List<RemoteExecutorService.NodeStats> stats = nodes.getNodeStats();
+        RemoteExecutorService.NodeStats slow = stats.get( 0 );
+        RemoteExecutorService.NodeStats fast = stats.get( 1 );
+
+        assertEquals( 600, slow.getCompleted() + fast.getCompleted() );
+        assertTrue( stats.toString(), fast.getCompleted() > 3 * slow.getCompleted() );
+        assertTrue( stats.toString(), slow.getLatencyMillis() > fast.getLatencyMillis() );
+        assertEquals( 2, slow.getThreads() );
+        assertEquals( 0, slow.getInFlight() + slow.getQueued() + fast.getInFlight() + fast.getQueued() );
+
+        nodes.shutdown();
+        assertTrue( nodes.awaitTermination( 5, TimeUnit.SECONDS ) );
+    }
+
+    public void testIdleNodeStealsFromSlowNode() throws Exception {
+
+        startWorkerNode( 50 );
+        startWorkerNode( 0 );
+
+        ResultCollector handler = new ResultCollector();
+
+        RemoteExecutorService nodes = new RemoteExecutorService( SECRET, addresses );
+
+        // without latency samples the tasks are spread evenly, so the slow node gets a backlog at once
+        DistributedTaskQueue<String> queue = new DistributedTaskQueue<String>( "remote", 64, 4, nodes, handler );
+
+        for( int i=0; i<64; i++ ) {
+            queue.submit( new JvmNameCallable( i ) );
+        }
+
+        queue.await();
+
+        assertEquals( 0, handler.exceptions.size() );
+        assertEquals( 64, handler.results.size() );
+
+        // each task is executed exactly once
+        Set<String> numbers = new HashSet<String>();
+        for( String result : handler.results ) {
+            numbers.add( result.substring( result.indexOf( ' ' ) + 1 ) );
+        }
+        assertEquals( 64, numbers.size() );
+
+        List<RemoteExecutorService.NodeStats> stats = nodes.getNodeStats();
+        RemoteExecutorService.NodeStats slow = stats.get( 0 );
+        RemoteExecutorService.NodeStats idle = stats.get( 1 );
+
+        assertTrue( stats.toString(), idle.getStolen() > 0 );
+        assertEquals( stats.toString(), idle.getStolen(), slow.getStolenFrom() );
+        assertEquals( 0, slow.getStolen() );
+        assertEquals( 64, slow.getCompleted() + idle.getCompleted() );
+        assertTrue( stats.toString(), idle.getCompleted() > slow.getCompleted() );
+
+        nodes.shutdown();
+        assertTrue( nodes.awaitTermination( 5, TimeUnit.SECONDS ) );
+    }
+
+    public void testWrongSecret() throws Exception {
+
+        TaskWorkerNode node = new TaskWorkerNode( 0, 1, SECRET );
+        try {
+            assertTrue( node.getPort() > 0 );
+
+            ResultCollector handler = new ResultCollector();
+
+            RemoteExecutorService nodes = new RemoteExecutorService( "wrong secret".getBytes(), new InetSocketAddress( "127.0.0.1", node.getPort() ) );
+
+            DistributedTaskQueue<String> queue = new DistributedTaskQueue<String>( "remote", 4, 1, nodes, handler );
+
+            queue.submit( new JvmNameCallable( 1 ) );
+            queue.await();
+
+            assertEquals( 0, handler.results.size() );
+            assertEquals( 1, handler.exceptions.size() );
+            assertTrue( handler.exceptions.get( 0 ).getCause().toString(), handler.exceptions.get( 0 ).getCause() instanceof IOException );
+            assertTrue( nodes.getAddresses().isEmpty() );
+
+            nodes.shutdownNow();
+        } finally {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package smile.threads;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Andre Kullmann
+ */
+public class HashedWheelTimerTest extends TestCase {
+
+    public void testExpireAndCancel() throws InterruptedException {
+
+        HashedWheelTimer timer = new HashedWheelTimer( "test-timer", 5, TimeUnit.MILLISECONDS, 8 );
+
+        try {
+            final AtomicInteger expired = new AtomicInteger();
+            final CountDownLatch latch  = new CountDownLatch( 100 );
+
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    expired.incrementAndGet();
+                    latch.countDown();
+                }
+            };
+
+            long start = System.nanoTime();
+
+            // the delays span several rotations of the wheel
+            for( int i=0; i<100; i++ ) {
+                timer.newTimeout( task, 50 + i, TimeUnit.MILLISECONDS );
+            }
+
+            HashedWheelTimer.Timeout cancelled = timer.newTimeout( task, 50, TimeUnit.MILLISECONDS );
+            assertTrue( cancelled.cancel() );
+            assertFalse( cancelled.cancel() );
+
+            assertTrue( latch.await( 5, TimeUnit.SECONDS ) );
+            assertTrue( System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos( 149 ) );
+
+            Thread.sleep( 50 );
+
+            assertEquals( 100, expired.get() );
+            assertTrue( cancelled.isCancelled() );
+            assertFalse( cancelled.isExpired() );
+        } finally {
+            timer.stop();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package smile.threads;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Andre Kullmann
+ */
+public class MpscRingBufferTest extends TestCase {
+
+    public void testCapacity() {
+
+        assertEquals( 1, new MpscRingBuffer<Object>( 1, WaitStrategy.PARK ).capacity() );
+        assertEquals( 8, new MpscRingBuffer<Object>( 5, WaitStrategy.PARK ).capacity() );
+        assertEquals( 16, new MpscRingBuffer<Object>( 16, WaitStrategy.PARK ).capacity() );
+    }
+
+    public void testOfferAndPoll() {
+
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<Integer>( 4, WaitStrategy.SPIN );
+
+        assertNull( buffer.poll() );
+
+        for( int i=0; i<4; i++ ) {
+            assertTrue( buffer.offer( i ) );
+        }
+        assertFalse( buffer.offer( 4 ) );
+        assertEquals( 4, buffer.size() );
+
+        assertEquals( Integer.valueOf( 0 ), buffer.poll() );
+        assertTrue( buffer.offer( 4 ) );
+
+        List<Integer> list = new ArrayList<Integer>();
+        assertEquals( 4, buffer.drainTo( list ) );
+        assertEquals( "[1, 2, 3, 4]", list.toString() );
+        assertTrue( buffer.isEmpty() );
+    }
+
+    public void testProducers() throws Exception {
+
+        for( WaitStrategy strategy : WaitStrategy.values() ) {
+            producers( strategy );
+        }
+    }
+
+    private void producers( WaitStrategy strategy ) throws Exception {
+
+        final int producers = 4;
+        final int count     = 20000;
+
+        final MpscRingBuffer<Integer> buffer = new MpscRingBuffer<Integer>( 64, strategy );
+
+        for( int p=0; p<producers; p++ ) {
+            Thread thread = new Thread( new Runnable() {
+
+                @Override
+                public void run() {
+                    for( int i=0; i<count; i++ ) {
+                        buffer.put( i );
+                    }
+                }
+            } );
+            thread.setDaemon( true );
+            thread.start();
+        }
+
+        long sum = 0;
+        for( int i=0; i<producers * count; i++ ) {
+            sum += buffer.take();
+        }
+
+        assertEquals( strategy.name(), (long) producers * count * (count-1) / 2, sum );
+        assertNull( buffer.poll() );
+    }
+}
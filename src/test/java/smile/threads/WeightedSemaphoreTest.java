@@ -0,0 +1,58 @@
+package smile.threads;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Andre Kullmann
+ */
+public class WeightedSemaphoreTest extends TestCase {
+
+    public void testTryAcquire() {
+
+        WeightedSemaphore semaphore = new WeightedSemaphore( 10L * Integer.MAX_VALUE );
+
+        assertTrue( semaphore.tryAcquire( 6L * Integer.MAX_VALUE ) );
+        assertFalse( semaphore.tryAcquire( 5L * Integer.MAX_VALUE ) );
+        assertTrue( semaphore.tryAcquire( 4L * Integer.MAX_VALUE ) );
+        assertEquals( 0, semaphore.availablePermits() );
+
+        semaphore.release( 10L * Integer.MAX_VALUE );
+
+        // a weight greater than the budget takes the whole budget
+        assertTrue( semaphore.tryAcquire( Long.MAX_VALUE ) );
+        assertFalse( semaphore.tryAcquire( 1 ) );
+        semaphore.release( Long.MAX_VALUE );
+        assertEquals( 10L * Integer.MAX_VALUE, semaphore.availablePermits() );
+    }
+
+    public void testAcquireBlocks() throws InterruptedException {
+
+        final WeightedSemaphore semaphore = new WeightedSemaphore( 100 );
+        final CountDownLatch acquired = new CountDownLatch( 1 );
+
+        assertTrue( semaphore.tryAcquire( 80 ) );
+
+        Thread waiter = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    semaphore.acquire( 50 );
+                    acquired.countDown();
+                } catch( InterruptedException e ) {
+                    // test fails
+                }
+            }
+        });
+        waiter.start();
+
+        assertFalse( acquired.await( 50, TimeUnit.MILLISECONDS ) );
+
+        semaphore.release( 30 );
+
+        assertTrue( acquired.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( 0, semaphore.availablePermits() );
+    }
+}
@@ -0,0 +1,39 @@
+package smile.tasks;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the shared queue tests against {@link smile.tasks.VirtualThreadTaskQueue}, needs a jdk 21.
+ *
+ * @author Andre Kullmann
+ */
+public class VirtualThreadTaskQueueTest extends AbstractTaskQueueTest {
+
+    @Override
+    protected <T> AbstractTaskQueue<T> newQueue(int capacity, int threads, ResultHandler<T> handler) {
+        // there is no fixed count of worker threads, every task gets its own virtual thread
+        return new VirtualThreadTaskQueue<T>( capacity, handler );
+    }
+
+    public void testRunsOnVirtualThreads() {
+
+        ResultAsListResultHandler<Boolean> handler = new ResultAsListResultHandler<Boolean>();
+
+        AbstractTaskQueue<Boolean> queue = newQueue( 10, 0, handler );
+
+        for( int i=0; i<100; i++ ) {
+            queue.submit( new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() throws Exception {
+                    return Thread.currentThread().isVirtual();
+                }
+            } );
+        }
+
+        queue.await();
+
+        assertEquals( 100, handler.resultCount );
+        assertFalse( handler.results.contains( Boolean.FALSE ) );
+    }
+}
@@ -0,0 +1,138 @@
+package smile.tasks.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import junit.framework.TestCase;
+import smile.tasks.ResultHandler;
+import smile.tasks.SimpleTaskQueue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @author Andre Kullmann
+ */
+public class JfrTaskQueueProbeTest extends TestCase {
+
+    private static class CountingResultHandler implements ResultHandler<Integer> {
+
+        public int resultCount = 0;
+
+        public int exceptionCount = 0;
+
+        @Override
+        public void onResult(Integer result) {
+            resultCount += 1;
+        }
+
+        @Override
+        public void onException(Exception e) {
+            exceptionCount += 1;
+        }
+    }
+
+    private Callable<Integer> callable( final int n ) {
+
+        return new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                if( n % 10 == 0 )
+                    throw new IllegalStateException( "task " + n + " failed" );
+                return n;
+            }
+        };
+    }
+
+    public void testRecordingStream() throws Exception {
+
+        CountingResultHandler handler = new CountingResultHandler();
+
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( "jfr", 8, 2, handler );
+        JfrTaskQueueProbe.enable( queue );
+
+        final AtomicInteger runs     = new AtomicInteger();
+        final AtomicInteger failed   = new AtomicInteger();
+        final AtomicInteger handled  = new AtomicInteger();
+        final CountDownLatch done    = new CountDownLatch( 100 );
+
+        RecordingStream stream = new RecordingStream();
+        try {
+            stream.enable( "smile.tasks.TaskRun" );
+            stream.enable( "smile.tasks.ResultHandled" );
+            stream.onEvent( "smile.tasks.TaskRun", new Consumer<RecordedEvent>() {
+
+                @Override
+                public void accept(RecordedEvent event) {
+                    assertEquals( "jfr", event.getString( "queue" ) );
+                    runs.incrementAndGet();
+                    if( event.getBoolean( "failed" ) ) {
+                        failed.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            } );
+            stream.onEvent( "smile.tasks.ResultHandled", new Consumer<RecordedEvent>() {
+
+                @Override
+                public void accept(RecordedEvent event) {
+                    handled.addAndGet( event.getInt( "count" ) );
+                }
+            } );
+            stream.startAsync();
+
+            // the probe is only enabled while the recording runs
+            long deadline = System.currentTimeMillis() + 5000;
+            while( !queue.getProbe().isEnabled() && System.currentTimeMillis() < deadline ) {
+                Thread.sleep( 10 );
+            }
+            assertTrue( queue.getProbe().isEnabled() );
+
+            for( int i=0; i<100; i++ ) {
+                queue.submit( callable( i ) );
+            }
+
+            queue.await();
+
+            assertTrue( done.await( 30, TimeUnit.SECONDS ) );
+            assertEquals( 100, runs.get() );
+            assertEquals( 10, failed.get() );
+            assertEquals( 90, handler.resultCount );
+            assertEquals( 10, handler.exceptionCount );
+        } finally {
+            stream.close();
+        }
+
+        assertTrue( handled.get() > 0 );
+        assertFalse( queue.getProbe().isEnabled() );
+    }
+
+    public void testKeepsMetrics() {
+
+        SimpleTaskQueue<Integer> queue = new SimpleTaskQueue<Integer>( "jfr metrics", 8, 2, new CountingResultHandler() );
+        queue.enableMetrics( 1 );
+
+        JfrTaskQueueProbe.enable( queue );
+
+        assertEquals( 1, queue.getSampleRate() );
+        assertTrue( queue.getProbe() instanceof JfrTaskQueueProbe );
+        assertNotNull( ( (JfrTaskQueueProbe) queue.getProbe() ).getNext() );
+
+        for( int i=0; i<100; i++ ) {
+            queue.submit( callable( i ) );
+        }
+
+        queue.await();
+
+        assertEquals( 90, queue.stats().getCompleted() );
+        assertEquals( 10, queue.stats().getFailed() );
+
+        queue.disableMetrics();
+
+        assertTrue( queue.getProbe() instanceof JfrTaskQueueProbe );
+        assertNull( ( (JfrTaskQueueProbe) queue.getProbe() ).getNext() );
+    }
+}